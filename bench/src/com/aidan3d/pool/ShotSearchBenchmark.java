@@ -0,0 +1,109 @@
+package com.aidan3d.pool;
+
+import java.util.concurrent.TimeUnit;
+import math.geom2d.Vector2D;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * A JMH benchmark for the computer opponent: how many shots a
+ * <b>ShotSearch</b> gets through in a 200ms decision. Run with
+ * <i>ant bench -Dbench.args=ShotSearch</i> (see <i>build.xml</i>).
+ * <p>
+ * The time per decision is the budget, so the figure to read is
+ * the <i>shotsTried</i> counter: the shots searched over the
+ * iteration, which divided by <i>decisions</i> gives
+ * <b>Shot.getTried()</b> per decision. Each decision starts from
+ * a new search (an empty cache of play-outs), from the standard
+ * table at rest after a firm break.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ShotSearchBenchmark
+{
+    private static final long BUDGET_MILLIS = 200;
+
+    private Table table;                    // At rest after the break
+    private ShotSearch search;
+    private long seed;
+
+
+    @Setup( Level.Trial )
+    public void breakRack()
+    {
+        table = new Table( 275, 50, 250, 6, 2.2, 0.7, 0.1 );
+        table.shoot( new Vector2D( -3.0, -1.5 ) );
+
+        while ( table.ballsAreMoving() )
+            table.step();
+
+    } // end method breakRack
+
+
+    @Setup( Level.Invocation )
+    public void newSearch()
+    {
+        search = new ShotSearch( BUDGET_MILLIS, seed++ );
+
+    } // end method newSearch
+
+
+    @TearDown( Level.Invocation )
+    public void stopSearch()
+    {
+        search.shutdown();
+
+    } // end method stopSearch
+
+
+    @Benchmark
+    public ShotSearch.Shot chooseShot( Counters counters )
+    {
+        ShotSearch.Shot shot = search.chooseShot( table );
+
+        counters.shotsTried += shot.getTried();
+        counters.decisions++;
+
+        return shot;
+
+    } // end method chooseShot
+
+
+    /**
+     * The shots searched, reported by JMH beside the timings.
+     */
+    @State( Scope.Thread )
+    @AuxCounters( AuxCounters.Type.EVENTS )
+    public static class Counters
+    {
+        public long shotsTried;
+        public long decisions;
+
+
+        @Setup( Level.Iteration )
+        public void clear()
+        {
+            shotsTried = 0;
+            decisions = 0;
+
+        } // end method clear
+
+    } // end class Counters
+
+} // end class ShotSearchBenchmark
@@ -0,0 +1,79 @@
+package com.aidan3d.pool;
+
+import java.util.concurrent.TimeUnit;
+import math.geom2d.Vector2D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * JMH micro-benchmarks for the hot paths of the physics core:
+ * one tick of a table in play, and the headless copy the AI
+ * makes for every play-out. Run with <i>ant bench</i> (see
+ * <i>build.xml</i>).
+ * <p>
+ * Each benchmark starts from the standard table a few ticks
+ * after a firm break, so the balls are spread and moving.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class TableBenchmark
+{
+    private Table start;                    // After the break
+    private Table table;                    // Played on
+
+
+    @Setup( Level.Trial )
+    public void breakRack()
+    {
+        start = new Table( 275, 50, 250, 6, 2.2, 0.7, 0.1 );
+        start.shoot( new Vector2D( -3.0, -1.5 ) );
+
+        for ( int i = 0; i < 60; i++ )
+            start.step();
+
+    } // end method breakRack
+
+
+    @Setup( Level.Iteration )
+    public void resetTable()
+    {
+        table = new Table( start );
+
+    } // end method resetTable
+
+
+    @Benchmark
+    public Table step()
+    {
+        // Keep the balls rolling for the whole iteration.
+        if ( !table.ballsAreMoving() )
+            table = new Table( start );
+
+        table.step();
+        return table;
+
+    } // end method step
+
+
+    @Benchmark
+    public Table copy()
+    {
+        return new Table( start );
+
+    } // end method copy
+
+} // end class TableBenchmark
@@ -0,0 +1,138 @@
+package com.aidan3d.pool;
+
+
+/**
+ * An <b>AdaptiveIntegrator</b> advances a <b>Table</b> by one
+ * frame in as many sub-steps as the fastest ball needs.
+ * <p>
+ * A ball that travels further than its own radius in one
+ * step can pass clean through another ball or a cushion rail
+ * ("tunneling"). So the frame is split up until no ball moves
+ * more than a set fraction of a ball radius per sub-step: many
+ * small sub-steps during the break, one plain step once play
+ * has quietened down.
+ * <p>
+ * The worst case is bounded twice over: by a cap on the number
+ * of sub-steps, and by a time budget. If the budget runs out
+ * part-way through a frame, the rest of the frame is taken in
+ * a single stride.
+ */
+public class AdaptiveIntegrator
+{
+    static final double MAX_TRAVEL = 0.5;       // The game's settings: half
+    static final int MAX_SUBSTEPS = 32;         // a radius per sub-step, at
+                                                // most 32 sub-steps a frame
+
+    private final double maxTravel;             // The most a ball may move
+                                                // per sub-step, as a fraction
+                                                // of the ball radius
+
+    private final int maxSubsteps;              // Hard cap per frame
+
+    private final long budgetNanos;             // Time budget per frame
+
+    private int lastSubsteps;                   // Sub-steps the last frame
+                                                // actually took
+
+
+    /**
+     * The three-argument constructor.
+     * @param maxTravel the most a ball may move in one sub-step,
+     * as a fraction of its radius (e.g., 0.5)
+     * @param maxSubsteps the most sub-steps a frame may be split
+     * into
+     * @param budgetNanos how long a frame's sub-steps may take
+     * before the rest of the frame is taken in one stride (use
+     * Long.MAX_VALUE for a headless, repeatable run)
+     */
+    public AdaptiveIntegrator( double maxTravel, int maxSubsteps, long budgetNanos )
+    {
+        if ( maxTravel <= 0.0 || maxSubsteps < 1 )
+        {
+            throw new IllegalArgumentException( "maxTravel must be positive and maxSubsteps at least 1" );
+
+        } // end if-then
+
+        this.maxTravel = maxTravel;
+        this.maxSubsteps = maxSubsteps;
+        this.budgetNanos = budgetNanos;
+
+    } // end three-argument constructor
+
+
+    /**
+     * @return an integrator that steps exactly as the game
+     * does, but with no time budget, so a headless run (a
+     * replay, a search, a cached break) always takes the same
+     * sub-steps
+     */
+    static AdaptiveIntegrator headless()
+    {
+        return new AdaptiveIntegrator( MAX_TRAVEL, MAX_SUBSTEPS, Long.MAX_VALUE );
+
+    } // end method headless
+
+
+    /**
+     * Advance the table by one frame.
+     * @param table the table to advance
+     * @return the number of sub-steps taken
+     */
+    public int tick( Table table )
+    {
+        int substeps = substepsFor( table.getMaxSpeed(), table.getBallRadius() );
+        double stride = 1.0 / substeps;
+        long start = System.nanoTime();
+
+        table.beginFrame();
+
+        for ( int i = 1; i <= substeps; i++ )
+        {
+            table.update();
+
+            // Out of time with sub-steps still to go: take the
+            // rest of the frame in one stride.
+            if ( i < substeps && System.nanoTime() - start > budgetNanos )
+            {
+                table.move( 1.0 - ( i - 1 ) * stride );
+                lastSubsteps = i;
+                return i;
+
+            } // end if-then
+
+            table.move( stride );
+
+        } // end for
+
+        lastSubsteps = substeps;
+        return substeps;
+
+    } // end method tick
+
+
+    /**
+     * @return how many sub-steps a frame needs for the given
+     * top speed (at least one, at most the cap)
+     */
+    int substepsFor( double maxSpeed, double ballRadius )
+    {
+        double needed = Math.ceil( maxSpeed / ( maxTravel * ballRadius ) );
+
+        if ( needed <= 1.0 )
+            return 1;
+
+        return ( int )Math.min( needed, maxSubsteps );
+
+    } // end method substepsFor
+
+
+    /**
+     * @return the number of sub-steps the last frame took
+     */
+    public int getLastSubsteps()
+    {
+        return lastSubsteps;
+
+    } // end method getLastSubsteps
+
+} // end class AdaptiveIntegrator
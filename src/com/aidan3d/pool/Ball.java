@@ -4,7 +4,6 @@
  */
 package com.aidan3d.pool;
 
-import java.awt.Color;
 import math.geom2d.Vector2D;
 
 
@@ -15,6 +14,11 @@ import math.geom2d.Vector2D;
  */
 class Ball extends Circle
 {
+    static final int WHITE = 0xFFFFFF;              // Ball colors, packed
+    static final int BLACK = 0x000000;              // as 0xRRGGBB (the
+    static final int RED = 0xFF0000;                // renderer turns them
+    static final int YELLOW = 0xFFFF00;             // into java.awt.Colors)
+
     private boolean moving;                         // A signal flag: raised
                                                     // if the ball is in motion
 
@@ -33,7 +37,15 @@ class Ball extends Circle
 
     private String id;                              // A human-readable label
 
-    private Color color;
+    private int color;                              // 0xRRGGBB
+
+    private double spinX;                           // Angular velocity, in
+    private double spinY;                           // radians per frame:
+                                                    // x and y make the ball
+                                                    // roll (or screw back),
+
+    private double spinZ;                           // z is side-spin
+                                                    // ("english")
 
 
     /**
@@ -46,14 +58,14 @@ class Ball extends Circle
         pocketed = false;
         mass = 0.0F;
         id = "";
-        color = Color.white;
+        color = WHITE;
     }
 
 
     /**
      *  Five-argument constructor.
      */
-    public Ball(int r, double m, String name, Vector2D d, Color c)
+    public Ball(int r, double m, String name, Vector2D d, int c)
     {
         super( d, r, m );
         moving = false;
@@ -65,12 +77,33 @@ class Ball extends Circle
     } // end five-argument constuctor
 
 
+    /**
+     * The copy constructor.
+     * @param original the ball to copy
+     */
+    Ball( Ball original )
+    {
+        super( original );
+        moving = original.moving;
+        pocketed = original.pocketed;
+        hit = original.hit;
+        mass = original.mass;
+        spinX = original.spinX;
+        spinY = original.spinY;
+        spinZ = original.spinZ;
+        id = original.id;
+        color = original.color;
+
+    } // end copy constructor
+
+
     /**
      * This "getter" retrieves the ball's color,
      * stored in the instance variable "color."
      * @return the value referred to by the instance variable "color"
+     * (packed as 0xRRGGBB)
      */
-    public Color getColor()
+    public int getColor()
     {
         return color;
 
@@ -92,7 +125,8 @@ class Ball extends Circle
     /**
      * Once  a balls "state" is pocketed,
      * it stays that way for the rest of
-     * the game.
+     * the game (unless it is put back on
+     * the table: see respot()).
      */
     public boolean isPocketed()
     {
@@ -115,6 +149,223 @@ class Ball extends Circle
     } // end isPocketed
 
 
+    /**
+     * The ball has dropped into a pocket: it stops dead and
+     * takes no further part in the game.
+     */
+    public void setPocketed()
+    {
+        pocketed = true;
+        moving = false;
+        velocity.zero();
+        spinX = 0.0;
+        spinY = 0.0;
+        spinZ = 0.0;
+
+    } // end method setPocketed
+
+
+    /**
+     * Put the ball back on the table, at rest (e.g., the cue
+     * ball "in hand," or a re-rack).
+     * @param at where its center goes
+     */
+    void respot( Vector2D at )
+    {
+        pocketed = false;
+        moving = false;
+        setCenter( at );
+        velocity.zero();
+        spinX = 0.0;
+        spinY = 0.0;
+        spinZ = 0.0;
+
+    } // end method respot
+
+
+    /**
+     * The shot is over: take away whatever spin is left, so
+     * none of it carries into the next shot.
+     */
+    void stopSpin()
+    {
+        spinX = 0.0;
+        spinY = 0.0;
+        spinZ = 0.0;
+
+    } // end method stopSpin
+
+
+    /**
+     * Leave the ball at rest where a shot, played out
+     * elsewhere, left it.
+     * @param x where its center goes
+     * @param y
+     * @param side what side-spin it still has
+     * @param sunk whether it has been pocketed
+     * @see BreakCache
+     */
+    void settle( double x, double y, double side, boolean sunk )
+    {
+        center.set( x, y );
+        velocity.zero();
+        moving = false;
+        pocketed = sunk;
+        spinX = 0.0;
+        spinY = 0.0;
+        spinZ = side;
+
+    } // end method settle
+
+
+    /**
+     * Put spin on the ball, relative to the way it is going.
+     * @param top 1.0 for natural roll, more for top-spin
+     * ("follow"), less than 0.0 for back-spin ("screw")
+     * @param side side-spin, as radians per frame per unit of
+     * speed (positive spins the ball anticlockwise on screen)
+     */
+    public void setSpin( double top, double side )
+    {
+        // Natural roll turns the ball once per circumference
+        // travelled: a spin of speed / radius about the axis
+        // at right angles to the velocity.
+        spinX = -top * velocity.y / radius;
+        spinY = top * velocity.x / radius;
+        spinZ = side * velocity.length();
+
+    } // end method setSpin
+
+
+    public double getSpinZ()
+    {
+        return spinZ;
+
+    } // end method getSpinZ
+
+
+    double getSpinX()
+    {
+        return spinX;
+    }
+
+
+    double getSpinY()
+    {
+        return spinY;
+    }
+
+
+    /**
+     * @return true if the ball is rolling, sliding or spinning
+     * (a ball that is only spinning will soon start moving)
+     */
+    boolean isAwake()
+    {
+        return !velocity.isZero() || spinX != 0.0 || spinY != 0.0 || spinZ != 0.0;
+
+    } // end method isAwake
+
+
+    /**
+     * Let the bed's friction act on the ball for part of a
+     * frame.
+     * <p>
+     * While the ball's contact point skids across the cloth
+     * ("sliding"), friction pulls both its velocity and its
+     * spin towards natural roll; once they match, the ball
+     * rolls, and only the far smaller rolling resistance slows
+     * it. Side-spin wears off on its own. Nothing is allocated.
+     * @param fraction the fraction of a frame
+     * @param slide sliding friction, in px per frame per frame
+     * @param roll rolling resistance, in px per frame per frame
+     * @param spin side-spin decay, in radians per frame per frame
+     */
+    void applyFriction( double fraction, double slide, double roll, double spin )
+    {
+        double r = radius;
+
+        // The contact point's velocity across the cloth.
+        double slipX = velocity.x - r * spinY;
+        double slipY = velocity.y + r * spinX;
+        double slip = Math.sqrt( slipX * slipX + slipY * slipY );
+        double dv = slide * fraction;
+
+        if ( slip > 1e-9 )
+        {
+            // A solid ball's slip drops 7/2 times as fast as its
+            // speed does (5/2 of that comes from the spin).
+            if ( 3.5 * dv >= slip )
+            {
+                velocity.x -= slipX / 3.5;
+                velocity.y -= slipY / 3.5;
+                spinX = -velocity.y / r;
+                spinY = velocity.x / r;
+            }
+            else
+            {
+                double ux = slipX / slip;
+                double uy = slipY / slip;
+
+                velocity.x -= dv * ux;
+                velocity.y -= dv * uy;
+                spinX -= 2.5 * dv * uy / r;
+                spinY += 2.5 * dv * ux / r;
+
+            } // end nested if-then-else
+        }
+        else
+        {
+            // Rolling: slow down, keeping the spin matched.
+            double speed = velocity.length();
+            double dr = roll * fraction;
+
+            if ( speed <= dr )
+            {
+                velocity.zero();
+            }
+            else
+            {
+                velocity.scale( ( speed - dr ) / speed );
+
+            } // end nested if-then-else
+
+            spinX = -velocity.y / r;
+            spinY = velocity.x / r;
+
+        } // end if-then-else
+
+        double ds = spin * fraction;
+
+        if ( Math.abs( spinZ ) <= ds )
+            spinZ = 0.0;
+        else
+            spinZ -= Math.signum( spinZ ) * ds;
+
+    } // end method applyFriction
+
+
+    /**
+     * The ball has just come off a cushion running along
+     * (tx, ty): side-spin "grips" the rail, kicking the ball
+     * along it and using up some of the spin.
+     * @param tx the cushion's direction (a unit vector)
+     * @param ty
+     * @param transfer the share of the side-spin turned into
+     * speed along the rail (0.0 to 1.0)
+     */
+    void applyEnglish( double tx, double ty, double transfer )
+    {
+        double kick = transfer * radius * spinZ;
+
+        velocity.x += kick * tx;
+        velocity.y += kick * ty;
+        spinZ *= 1.0 - transfer;
+
+    } // end method applyEnglish
+
+
+
     /**
      * This is the traction method for the Ball object.
      * Rolls in after the ball's update() method to
@@ -128,7 +379,20 @@ class Ball extends Circle
         // move when this function is called for
         // in each gameUpdate cycle (i.e., px is
         // a great start).
-        center = center.plus(velocity);
+        center.add( velocity );
+
+    } // end method move
+
+
+    /**
+     * Move the ball part of the way along its velocity,
+     * for sub-stepped updates.
+     * @param fraction the fraction of a frame's travel to
+     * take (e.g., 0.25 for one of four sub-steps)
+     */
+    public void move( double fraction )
+    {
+        center.addScaled( velocity, fraction );
 
     } // end method move
 
@@ -0,0 +1,98 @@
+package com.aidan3d.pool;
+
+
+/**
+ * A <b>BallFrame</b> is a picture of where every ball was at
+ * the end of one simulation tick: just positions and "sunk"
+ * flags, in flat arrays, in the same order as the table's
+ * list of balls.
+ * <p>
+ * Frames are handed from the simulation thread to the render
+ * thread through a <b>FrameExchange</b>. They are recycled
+ * rather than re-made, so a frame must only be read while it is
+ * the one the exchange last handed out.
+ */
+final class BallFrame
+{
+    private final double[] x;
+    private final double[] y;
+    private final boolean[] pocketed;
+    private int count;
+    private long tick;                      // Which simulation tick
+                                            // this picture is of
+
+
+    /**
+     * The one-argument constructor.
+     * @param capacity the most balls the frame can hold
+     */
+    BallFrame( int capacity )
+    {
+        x = new double[ capacity ];
+        y = new double[ capacity ];
+        pocketed = new boolean[ capacity ];
+
+    } // end one-argument constructor
+
+
+    /**
+     * Record one ball (called by the simulation thread while
+     * it fills the frame).
+     */
+    void set( int i, double ballX, double ballY, boolean sunk )
+    {
+        x[ i ] = ballX;
+        y[ i ] = ballY;
+        pocketed[ i ] = sunk;
+
+    } // end method set
+
+
+    void setCount( int count )
+    {
+        this.count = count;
+    }
+
+
+    void setTick( long tick )
+    {
+        this.tick = tick;
+    }
+
+
+    int getCount()
+    {
+        return count;
+    }
+
+
+    long getTick()
+    {
+        return tick;
+    }
+
+
+    int getCapacity()
+    {
+        return x.length;
+    }
+
+
+    double getX( int i )
+    {
+        return x[ i ];
+    }
+
+
+    double getY( int i )
+    {
+        return y[ i ];
+    }
+
+
+    boolean isPocketed( int i )
+    {
+        return pocketed[ i ];
+    }
+
+} // end class BallFrame
@@ -0,0 +1,663 @@
+package com.aidan3d.pool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * A <b>BreakCache</b> remembers how breaks turn out, for the
+ * <b>ReplayExporter</b>. The break is the dearest shot to play
+ * (every ball in one dense pack) and the most repeated one
+ * (every rack starts the same), so once a break has been played
+ * out its outcome, and a picture of every tick along the way,
+ * is kept: a replay of the same break again draws the stored
+ * pictures rather than running the physics. (The live game
+ * plays every break out, tick by tick, as it is drawn.)
+ * <p>
+ * A break is keyed by the rack (see <b>ZobristHash</b>), the
+ * table it is on, and exactly how the cue ball was struck. A
+ * hit is only taken if every ball starts exactly where the
+ * stored break started, so the outcome is the one the physics
+ * would give, to the last bit.
+ * <p>
+ * The cache has two tiers:<br>
+ * &nbsp&nbsp a) &nbsp memory, least recently used first out
+ * once the outcomes held pass a size in bytes;<br>
+ * &nbsp&nbsp b) &nbsp optionally, a directory with one file
+ * per break (<i>0123456789abcdef.break</i>), which outlives the
+ * process and is never evicted. Big-endian layout: the magic
+ * number and format version; the key; the ball and tick
+ * counts; the hits along the way; then each ball's start,
+ * end, side-spin and the tick it was sunk on (-1 if never);
+ * then each tick's positions, as floats.
+ * <p>
+ * With <i>verify</i> on, every hit is played out for real
+ * after all, and checked against the stored outcome;
+ * a mismatch (e.g., a stale file from before a physics change)
+ * is logged and the stored outcome replaced.
+ * <p>
+ * Any number of threads may share a cache.
+ */
+final class BreakCache
+{
+    private static final String SUFFIX = ".break";
+    private static final int MAGIC = 0x42524B43;        // "BRKC"
+    private static final int VERSION = 3;               // 2: no spin left
+                                                        // at rest; 3: breaks
+                                                        // sub-stepped
+    private static final int MAX_TICKS = 5000;          // A break still going
+                                                        // after this is not
+                                                        // cached
+
+    private final long maxBytes;                        // Memory tier's size
+    private final Path directory;                       // Disk tier (or null)
+    private final boolean verify;
+
+    private final LinkedHashMap<Long, Outcome> outcomes;   // Oldest use first
+    private long bytes;                                     // Held in memory
+
+    private long hits;
+    private long diskHits;
+    private long misses;
+    private long mismatches;
+
+
+    /**
+     * The three-argument constructor.
+     * @param maxBytes how much the outcomes held in memory may
+     * take up
+     * @param directory where outcomes are kept between runs, or
+     * null to keep them in memory only
+     * @param verify true to check every hit against the physics
+     */
+    BreakCache( long maxBytes, Path directory, boolean verify )
+    {
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+        this.verify = verify;
+
+        outcomes = new LinkedHashMap<>( 16, 0.75F, true );
+
+    } // end three-argument constructor
+
+
+    /**
+     * Play out a break that has just been struck: from the
+     * cache if it has been played before, otherwise for real
+     * (and the outcome kept).
+     * @param table the table (it is left at rest where the
+     * break ends)
+     * @return the break's outcome, or null if the table is not
+     * at the start of a break (it is left alone), or the break
+     * ran too long to keep (it is left part-way through)
+     * @throws IOException if the disk tier cannot be used
+     */
+    Outcome play( Table table ) throws IOException
+    {
+        if ( !table.isBreakShot() )
+            return null;
+
+        long key = table.getShotKey();
+        BallFrame start = new BallFrame( table.getBallCount() );
+
+        table.writeFrame( start );
+
+        Outcome outcome = find( key, start );
+
+        if ( outcome == null )
+        {
+            // Play it on the table itself: it ends up
+            // exactly where the physics leaves it.
+            outcome = record( table, start );
+
+            if ( outcome != null )
+                keep( key, outcome );
+
+            return outcome;
+
+        } // end if-then
+
+        if ( verify )
+        {
+            // Play it for real after all, and compare.
+            Outcome live = record( table, start );
+
+            if ( live == null || !live.sameEnd( outcome ) )
+            {
+                synchronized ( this )
+                {
+                    mismatches++;
+                }
+
+                Logger.getLogger( BreakCache.class.getName() ).log( Level.WARNING,
+                    "Cached break {0} does not match the physics; replacing it", Long.toHexString( key ) );
+
+                if ( live == null )
+                    forget( key );
+                else
+                    keep( key, live );
+
+            } // end if-then
+
+            return live;
+
+        } // end if-then
+
+        table.settle( outcome );
+
+        return outcome;
+
+    } // end method play
+
+
+    /**
+     * Look a break up, in memory then on disk.
+     * @return the outcome, or null if there is none for this
+     * key and start
+     */
+    private Outcome find( long key, BallFrame start ) throws IOException
+    {
+        Outcome outcome;
+
+        synchronized ( this )
+        {
+            outcome = outcomes.get( key );
+
+        } // end synchronized
+
+        if ( outcome == null && directory != null )
+        {
+            outcome = read( key );
+
+            if ( outcome != null && outcome.startsAt( start ) )
+            {
+                synchronized ( this )
+                {
+                    diskHits++;
+                }
+
+                hold( key, outcome );
+
+            } // end if-then
+
+        } // end if-then
+
+        boolean hit = outcome != null && outcome.startsAt( start );
+
+        synchronized ( this )
+        {
+            if ( hit )
+                hits++;
+            else
+                misses++;
+
+        } // end synchronized
+
+        return hit ? outcome : null;
+
+    } // end method find
+
+
+    /**
+     * Keep an outcome, in memory and on disk.
+     */
+    private void keep( long key, Outcome outcome ) throws IOException
+    {
+        hold( key, outcome );
+
+        if ( directory != null )
+            write( key, outcome );
+
+    } // end method keep
+
+
+    /**
+     * Hold an outcome in memory, evicting the least recently
+     * used past the size limit.
+     */
+    private synchronized void hold( long key, Outcome outcome )
+    {
+        Outcome old = outcomes.put( key, outcome );
+
+        if ( old != null )
+            bytes -= old.getBytes();
+
+        bytes += outcome.getBytes();
+
+        Iterator<Outcome> oldest = outcomes.values().iterator();
+
+        // (Always keep the newest, however big.)
+        while ( bytes > maxBytes && outcomes.size() > 1 )
+        {
+            bytes -= oldest.next().getBytes();
+            oldest.remove();
+
+        } // end while
+
+    } // end method hold
+
+
+    private void forget( long key ) throws IOException
+    {
+        synchronized ( this )
+        {
+            Outcome old = outcomes.remove( key );
+
+            if ( old != null )
+                bytes -= old.getBytes();
+
+        } // end synchronized
+
+        if ( directory != null )
+            Files.deleteIfExists( pathFor( key ) );
+
+    } // end method forget
+
+
+    /**
+     * Play a break out on a table, keeping each frame.
+     * @return the outcome, or null if the balls were still
+     * moving after <i>MAX_TICKS</i>
+     */
+    private static Outcome record( Table table, BallFrame start )
+    {
+        int n = table.getBallCount();
+        BallFrame frame = new BallFrame( n );
+        float[] frameX = new float[ 256 * n ];
+        float[] frameY = new float[ 256 * n ];
+        int[] sunkAt = new int[ n ];
+        int ticks = 0;
+        int ballHits = 0;
+        int wallHits = 0;
+
+        // Frame by frame, sub-stepped as the game plays it.
+        AdaptiveIntegrator integrator = AdaptiveIntegrator.headless();
+
+        Arrays.fill( sunkAt, -1 );
+
+        while ( table.ballsAreMoving() && ticks < MAX_TICKS )
+        {
+            integrator.tick( table );
+            ballHits += table.getFrameBallHits();
+            wallHits += table.getFrameWallHits();
+            table.writeFrame( frame );
+
+            if ( ( ticks + 1 ) * n > frameX.length )
+            {
+                frameX = Arrays.copyOf( frameX, frameX.length * 2 );
+                frameY = Arrays.copyOf( frameY, frameY.length * 2 );
+
+            } // end if-then
+
+            for ( int i = 0; i < n; i++ )
+            {
+                frameX[ ticks * n + i ] = ( float )frame.getX( i );
+                frameY[ ticks * n + i ] = ( float )frame.getY( i );
+
+                if ( sunkAt[ i ] < 0 && frame.isPocketed( i ) )
+                    sunkAt[ i ] = ticks;
+
+            } // end for
+
+            ticks++;
+
+        } // end while
+
+        if ( table.ballsAreMoving() )
+            return null;
+
+        Outcome outcome = new Outcome( n, ticks, ballHits, wallHits );
+
+        for ( int i = 0; i < n; i++ )
+        {
+            outcome.startX[ i ] = start.getX( i );
+            outcome.startY[ i ] = start.getY( i );
+            outcome.endX[ i ] = frame.getX( i );
+            outcome.endY[ i ] = frame.getY( i );
+            outcome.endSpin[ i ] = table.getBallSpin( i );
+            outcome.sunkAt[ i ] = sunkAt[ i ];
+
+        } // end for
+
+        System.arraycopy( frameX, 0, outcome.frameX, 0, ticks * n );
+        System.arraycopy( frameY, 0, outcome.frameY, 0, ticks * n );
+
+        return outcome;
+
+    } // end method record
+
+
+    private Path pathFor( long key )
+    {
+        return directory.resolve( String.format( "%016x", key ) + SUFFIX );
+    }
+
+
+    /**
+     * Read a break from the disk tier.
+     * @return the outcome, or null if there is no (sound) file
+     * for it
+     */
+    private Outcome read( long key ) throws IOException
+    {
+        ByteBuffer buffer;
+
+        try
+        {
+            buffer = ByteBuffer.wrap( Files.readAllBytes( pathFor( key ) ) );
+        }
+        catch ( NoSuchFileException ex )
+        {
+            return null;
+
+        } // end try-catch
+
+        try
+        {
+            if ( buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != key )
+                return null;
+
+            int n = buffer.getInt();
+            int ticks = buffer.getInt();
+
+            if ( n < 0 || ticks < 0 || n * 44L + ( long )ticks * n * 8L + 8L > buffer.remaining() )
+                return null;
+
+            Outcome outcome = new Outcome( n, ticks, buffer.getInt(), buffer.getInt() );
+
+            for ( int i = 0; i < n; i++ )
+            {
+                outcome.startX[ i ] = buffer.getDouble();
+                outcome.startY[ i ] = buffer.getDouble();
+                outcome.endX[ i ] = buffer.getDouble();
+                outcome.endY[ i ] = buffer.getDouble();
+                outcome.endSpin[ i ] = buffer.getDouble();
+                outcome.sunkAt[ i ] = buffer.getInt();
+
+            } // end for
+
+            buffer.asFloatBuffer().get( outcome.frameX ).get( outcome.frameY );
+
+            return outcome;
+        }
+        catch ( RuntimeException ex )       // Truncated or corrupt:
+        {                                   // play it out again
+            return null;
+
+        } // end try-catch
+
+    } // end method read
+
+
+    /**
+     * Write a break to the disk tier, atomically.
+     */
+    private void write( long key, Outcome outcome ) throws IOException
+    {
+        int n = outcome.startX.length;
+        ByteBuffer buffer = ByteBuffer.allocate( 32 + n * 44 + outcome.frameX.length * 8 );
+
+        buffer.putInt( MAGIC ).putInt( VERSION ).putLong( key );
+        buffer.putInt( n ).putInt( outcome.ticks ).putInt( outcome.ballHits ).putInt( outcome.wallHits );
+
+        for ( int i = 0; i < n; i++ )
+        {
+            buffer.putDouble( outcome.startX[ i ] ).putDouble( outcome.startY[ i ] );
+            buffer.putDouble( outcome.endX[ i ] ).putDouble( outcome.endY[ i ] );
+            buffer.putDouble( outcome.endSpin[ i ] ).putInt( outcome.sunkAt[ i ] );
+
+        } // end for
+
+        buffer.asFloatBuffer().put( outcome.frameX ).put( outcome.frameY );
+        buffer.position( buffer.capacity() );
+        buffer.flip();
+
+        Path target = pathFor( key );
+
+        Files.createDirectories( directory );
+
+        // Write to the side, then swap in, so a reader never
+        // sees half a file.
+        Path temporary = Files.createTempFile( directory, target.getFileName().toString(), ".tmp" );
+
+        try
+        {
+            try ( FileChannel channel = FileChannel.open( temporary, StandardOpenOption.WRITE ) )
+            {
+                while ( buffer.hasRemaining() )
+                    channel.write( buffer );
+
+            } // end try
+
+            try
+            {
+                Files.move( temporary, target, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING );
+            }
+            catch ( AtomicMoveNotSupportedException ex )
+            {
+                Files.move( temporary, target, StandardCopyOption.REPLACE_EXISTING );
+
+            } // end try-catch
+        }
+        finally
+        {
+            Files.deleteIfExists( temporary );
+
+        } // end try-finally
+
+    } // end method write
+
+
+    /**
+     * @return breaks found (in memory or on disk)
+     */
+    synchronized long getHits()
+    {
+        return hits;
+    }
+
+
+    /**
+     * @return breaks found only on disk
+     */
+    synchronized long getDiskHits()
+    {
+        return diskHits;
+    }
+
+
+    /**
+     * @return breaks that had to be played out
+     */
+    synchronized long getMisses()
+    {
+        return misses;
+    }
+
+
+    /**
+     * @return hits that did not match the physics (only
+     * counted with <i>verify</i> on)
+     */
+    synchronized long getMismatches()
+    {
+        return mismatches;
+    }
+
+
+    /**
+     * @return the bytes the memory tier holds
+     */
+    synchronized long getBytes()
+    {
+        return bytes;
+    }
+
+
+    /**
+     * How one break turned out: where every ball started and
+     * ended, and where they all were after each tick along the
+     * way. An outcome never changes once made, so it may be
+     * shared freely.
+     */
+    static final class Outcome
+    {
+        private final int ticks;
+        private final int ballHits;
+        private final int wallHits;
+        private final double[] startX;
+        private final double[] startY;
+        private final double[] endX;
+        private final double[] endY;
+        private final double[] endSpin;         // Side-spin left at rest
+        private final int[] sunkAt;             // Tick, or -1
+        private final float[] frameX;           // Tick-major: tick t,
+        private final float[] frameY;           // ball i at [ t * n + i ]
+
+        private Outcome( int n, int ticks, int ballHits, int wallHits )
+        {
+            this.ticks = ticks;
+            this.ballHits = ballHits;
+            this.wallHits = wallHits;
+
+            startX = new double[ n ];
+            startY = new double[ n ];
+            endX = new double[ n ];
+            endY = new double[ n ];
+            endSpin = new double[ n ];
+            sunkAt = new int[ n ];
+            frameX = new float[ ticks * n ];
+            frameY = new float[ ticks * n ];
+
+        } // end four-argument constructor
+
+
+        /**
+         * Fill in a frame with where the balls were after one
+         * tick of the break.
+         * @param tick from 0 (after the first tick) to
+         * <b>getTicks()</b> - 1 (the balls at rest)
+         * @param frame the frame to fill in
+         */
+        void writeFrame( int tick, BallFrame frame )
+        {
+            int n = Math.min( startX.length, frame.getCapacity() );
+
+            for ( int i = 0; i < n; i++ )
+            {
+                frame.set( i, frameX[ tick * startX.length + i ], frameY[ tick * startX.length + i ],
+                    sunkAt[ i ] >= 0 && sunkAt[ i ] <= tick );
+
+            } // end for
+
+            frame.setCount( n );
+
+        } // end method writeFrame
+
+
+        /**
+         * @return true if a table's balls (as a frame) are
+         * exactly where this break started
+         */
+        boolean startsAt( BallFrame start )
+        {
+            if ( start.getCount() != startX.length )
+                return false;
+
+            for ( int i = 0; i < startX.length; i++ )
+            {
+                if ( start.getX( i ) != startX[ i ] || start.getY( i ) != startY[ i ] )
+                    return false;
+
+            } // end for
+
+            return true;
+
+        } // end method startsAt
+
+
+        /**
+         * @return true if another outcome ends exactly as this
+         * one does
+         */
+        boolean sameEnd( Outcome other )
+        {
+            return ticks == other.ticks && Arrays.equals( endX, other.endX )
+                && Arrays.equals( endY, other.endY ) && Arrays.equals( endSpin, other.endSpin )
+                && Arrays.equals( sunkAt, other.sunkAt );
+
+        } // end method sameEnd
+
+
+        /**
+         * @return roughly what this outcome takes up in memory
+         */
+        long getBytes()
+        {
+            return 64L + startX.length * 44L + frameX.length * 8L;
+        }
+
+
+        int getTicks()
+        {
+            return ticks;
+        }
+
+
+        int getBallCount()
+        {
+            return startX.length;
+        }
+
+
+        int getBallHits()
+        {
+            return ballHits;
+        }
+
+
+        int getWallHits()
+        {
+            return wallHits;
+        }
+
+
+        double getEndX( int i )
+        {
+            return endX[ i ];
+        }
+
+
+        double getEndY( int i )
+        {
+            return endY[ i ];
+        }
+
+
+        double getEndSpin( int i )
+        {
+            return endSpin[ i ];
+        }
+
+
+        boolean isSunk( int i )
+        {
+            return sunkAt[ i ] >= 0;
+        }
+
+    } // end class Outcome
+
+} // end class BreakCache
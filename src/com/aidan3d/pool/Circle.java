@@ -11,8 +11,18 @@ import math.geom2d.Vector2D;
  */
 public class Circle
 {
-    protected Vector2D center;
-    protected Vector2D velocity;            // We do some motion-related
+    static final boolean TRACE = Boolean.getBoolean( "pool.trace" );
+                                            // Run with -Dpool.trace=true
+                                            // to have every collision
+                                            // check reported on the
+                                            // console (far too slow for
+                                            // headless rollouts)
+
+    protected final Vec2 center;            // Mutable, and updated in
+                                            // place: Vector2D objects
+                                            // are only made at the
+                                            // get/set boundary
+    protected final Vec2 velocity;          // We do some motion-related
                                             // collision detection, and
                                             // this may be handy...
     protected double radius;
@@ -28,21 +38,35 @@ public class Circle
      */
     public Circle( Vector2D obj, double r, double m )
     {
-        center = obj;
+        center = new Vec2( obj );
         radius = r;
-        velocity = new Vector2D( 0.0, 0.0 );
+        velocity = new Vec2();
         mass = 0.0F;
 
     } //end two-argument constructor
 
 
+    /**
+     * The copy constructor.
+     * @param original the circle to copy
+     */
+    protected Circle( Circle original )
+    {
+        center = new Vec2( original.center.x, original.center.y );
+        velocity = new Vec2( original.velocity.x, original.velocity.y );
+        radius = original.radius;
+        mass = original.mass;
+
+    } // end copy constructor
+
+
     /**
      * 
      * @param c the circle's center
      */
     public void setCenter( Vector2D c )
     {
-        center = c;
+        center.set( c );
 
     } // end method setCenter
 
@@ -56,18 +80,33 @@ public class Circle
 
     public void setVelocity( Vector2D v )
     {
-        velocity = v;
+        velocity.set( v );
     
     } // end method setVelocity
 
 
+    /**
+     * @return a copy of the circle's center (use
+     * <b>getCenterVec()</b> on the simulation's hot paths)
+     */
     public Vector2D getCenter()
     {
-        return center;
+        return center.toVector2D();
 
     } // end method getCenter
 
 
+    /**
+     * @return the circle's center itself: live and mutable,
+     * so read it, don't keep it
+     */
+    Vec2 getCenterVec()
+    {
+        return center;
+
+    } // end method getCenterVec
+
+
     public double getRadius()
     {
         return radius;
@@ -75,13 +114,27 @@ public class Circle
     } // end method getRadius
 
 
+    /**
+     * @return a copy of the circle's velocity (use
+     * <b>getVelocityVec()</b> on the simulation's hot paths)
+     */
     public Vector2D getVelocity()
     {
-        return velocity;
+        return velocity.toVector2D();
 
     } // end method getVelocity
 
 
+    /**
+     * @return the circle's velocity itself: live and mutable
+     */
+    Vec2 getVelocityVec()
+    {
+        return velocity;
+
+    } // end method getVelocityVec
+
+
     /**
      * 
      * @param enemy a Circle object, potentially impinging
@@ -105,22 +158,16 @@ public class Circle
                                                 // location
 
 
-        // Run a thread from the current Circle
-        // object to it's "detected" potential
-        // incurrer (the Circle object referred
-        // to by "enemy")
-        Vector2D pathToEnemy = new Vector2D();
-
-
         // The "red carpet" or "golden thread" joining the
-        // current Circle object with its  neigbor.
-        pathToEnemy = center.minus( enemy.center );
+        // current Circle object with its  neigbor (squared,
+        // so no square root is needed).
+        double pathToEnemySq = center.distanceSq( enemy.center );
 
 
         // Draw a line in the virtual sand ( mark the baize).
         threshold = (radius + enemy.radius );
         
-        if ( pathToEnemy.norm() < threshold )
+        if ( pathToEnemySq < threshold * threshold )
             underAttack = true;
 
         // Let the call know that we've been struck
@@ -146,12 +193,14 @@ public class Circle
                                       // airpsace.
 
  
-        // Get the length in the horizontal
-        // direction.
-        Vector2D pathToEnemy = enemy.getVector().minus( center );
-        System.out.printf("Distance to cushion (%s): %f.%n", enemy.toString(), pathToEnemy.norm() );
+        // Is the line (end-points and all) within
+        // our radius?
+        double distanceSq = enemy.distanceSq( center.x, center.y );
+
+        if ( TRACE )
+            System.out.printf("Distance to cushion (%s): %f.%n", enemy.toString(), Math.sqrt( distanceSq ) );
         
-        if ( ( enemy.getVector().angle() - pathToEnemy.angle() ) <  Math.asin( radius / pathToEnemy.norm() ))
+        if ( distanceSq < radius * radius )
         {
             underAttack = true;
         
@@ -175,7 +224,9 @@ public class Circle
         if ( circleCircleCollision( obj ) ) 
         {
             status = true;
-            System.out.printf("%s has been HIT by %s%n", this.toString(), obj.toString() );
+
+            if ( TRACE )
+                System.out.printf("%s has been HIT by %s%n", this.toString(), obj.toString() );
 
         } // end if-then
         
@@ -199,7 +250,9 @@ public class Circle
         if ( circleLineCollision( obj ) )
         {
             status = true;
-            System.out.printf( "%s has been HIT by a Line. %n", this.toString() );
+
+            if ( TRACE )
+                System.out.printf( "%s has been HIT by a Line. %n", this.toString() );
         
         } // end if-then
         
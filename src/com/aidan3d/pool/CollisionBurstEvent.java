@@ -0,0 +1,39 @@
+package com.aidan3d.pool;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * A Java Flight Recorder event committed for every tick in
+ * which at least one collision was detected (a "burst" of
+ * hits, such as the break). Quiet ticks never commit one,
+ * so a recording shows exactly when the table was busy.
+ * <p>
+ * Disabled by default; enable it by the name
+ * <i>com.aidan3d.pool.CollisionBurst</i>.
+ * @see FlightEvents
+ */
+@Name( "com.aidan3d.pool.CollisionBurst" )
+@Label( "Collision Burst" )
+@Category( { "Pool", "Simulation" } )
+@Description( "A simulation tick in which balls struck each other or a rail" )
+@Enabled( false )
+@StackTrace( false )
+class CollisionBurstEvent extends Event
+{
+    @Label( "Ball Hits" )
+    int ballHits;                                   // Ball <-> ball hits
+
+    @Label( "Wall Hits" )
+    int wallHits;                                   // Ball <-> rail hits
+
+    @Label( "Ball Count" )
+    int ballCount;                                  // Balls on the table
+
+} // end class CollisionBurstEvent
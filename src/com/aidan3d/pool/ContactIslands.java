@@ -0,0 +1,275 @@
+package com.aidan3d.pool;
+
+import java.util.List;
+
+
+/**
+ * <b>ContactIslands</b> groups the balls on a table, tick by
+ * tick, into "islands": sets of balls that are moving, or are
+ * close enough to a moving ball that they could be touched by
+ * it during this tick.
+ * <p>
+ * A ball at rest, with no moving ball near it, is "asleep" and
+ * belongs to no island; nothing can happen to it this tick, so
+ * the collision pass leaves it alone. A sleeping ball that a
+ * moving ball comes near is pulled into that ball's island (it
+ * "wakes"). Building the islands costs one cheap distance test
+ * per moving ball per other ball, and the exact collision tests
+ * then only run inside each island: the work per tick grows
+ * with the number of moving balls, not with the number on the
+ * table.
+ * <p>
+ * The arrays are kept and reused from tick to tick, so nothing
+ * is allocated once the table has been running for a tick.
+ */
+final class ContactIslands
+{
+    private int[] parent;                   // Union-find forest
+    private int[] rank;
+    private boolean[] awake;                // Moving (or spinning)
+    private boolean[] member;               // In some island this tick
+    private double[] reach;                 // Radius plus this tick's
+                                            // travel
+
+    private int[] members;                  // Ball indices, grouped by
+    private int[] islandStart;              // island: island k holds
+    private int[] islandSize;               // members[ start .. start+size )
+    private int[] islandOf;                 // Root -> island number
+
+    private int islandCount;
+    private int awakeCount;
+
+
+    /**
+     * The no-argument constructor.
+     */
+    ContactIslands()
+    {
+        ensureCapacity( 16 );
+
+    } // end no-argument constructor
+
+
+    /**
+     * Work out this tick's islands.
+     * @param balls the table's balls
+     */
+    void build( List<Ball> balls )
+    {
+        int n = balls.size();
+        ensureCapacity( n );
+
+        awakeCount = 0;
+
+        for ( int i = 0; i < n; i++ )
+        {
+            Ball b = balls.get( i );
+
+            parent[ i ] = i;
+            rank[ i ] = 0;
+            member[ i ] = false;
+            awake[ i ] = !b.isPocketed() && b.isAwake();
+            reach[ i ] = b.getRadius() + ( awake[ i ] ? b.getVelocityVec().length() : 0.0 );
+
+            if ( awake[ i ] )
+            {
+                member[ i ] = true;
+                awakeCount++;
+
+            } // end if-then
+
+        } // end for
+
+        // Link every moving ball with any ball it could reach.
+        for ( int i = 0; i < n; i++ )
+        {
+            if ( !awake[ i ] )
+                continue;
+
+            Vec2 ci = balls.get( i ).getCenterVec();
+
+            for ( int j = 0; j < n; j++ )
+            {
+                // Pairs of moving balls are linked once, from the
+                // lower index; sunk balls are out of the game.
+                if ( j == i || ( awake[ j ] && j < i ) || balls.get( j ).isPocketed() )
+                    continue;
+
+                double limit = reach[ i ] + reach[ j ];
+
+                if ( ci.distanceSq( balls.get( j ).getCenterVec() ) < limit * limit )
+                {
+                    union( i, j );
+                    member[ j ] = true;         // Wakes, if asleep
+
+                } // end if-then
+
+            } // end inner for
+
+        } // end outer for
+
+        group( n );
+
+    } // end method build
+
+
+    /**
+     * Sort the island members into contiguous runs, one per
+     * island (a counting sort on each member's root).
+     */
+    private void group( int n )
+    {
+        islandCount = 0;
+
+        for ( int i = 0; i < n; i++ )
+        {
+            islandOf[ i ] = -1;
+
+        } // end for
+
+        for ( int i = 0; i < n; i++ )
+        {
+            if ( !member[ i ] )
+                continue;
+
+            int root = find( i );
+
+            if ( islandOf[ root ] < 0 )
+            {
+                islandOf[ root ] = islandCount;
+                islandSize[ islandCount ] = 0;
+                islandCount++;
+
+            } // end if-then
+
+            islandSize[ islandOf[ root ] ]++;
+
+        } // end for
+
+        int start = 0;
+
+        for ( int k = 0; k < islandCount; k++ )
+        {
+            islandStart[ k ] = start;
+            start += islandSize[ k ];
+            islandSize[ k ] = 0;                // Refilled below
+
+        } // end for
+
+        for ( int i = 0; i < n; i++ )
+        {
+            if ( !member[ i ] )
+                continue;
+
+            int k = islandOf[ find( i ) ];
+
+            members[ islandStart[ k ] + islandSize[ k ]++ ] = i;
+
+        } // end for
+
+    } // end method group
+
+
+    private int find( int i )
+    {
+        while ( parent[ i ] != i )
+        {
+            parent[ i ] = parent[ parent[ i ] ];        // Path halving
+            i = parent[ i ];
+
+        } // end while
+
+        return i;
+
+    } // end method find
+
+
+    private void union( int a, int b )
+    {
+        int ra = find( a );
+        int rb = find( b );
+
+        if ( ra == rb )
+            return;
+
+        if ( rank[ ra ] < rank[ rb ] )
+        {
+            parent[ ra ] = rb;
+        }
+        else if ( rank[ ra ] > rank[ rb ] )
+        {
+            parent[ rb ] = ra;
+        }
+        else
+        {
+            parent[ rb ] = ra;
+            rank[ ra ]++;
+
+        } // end if-then-else-if
+
+    } // end method union
+
+
+    private void ensureCapacity( int n )
+    {
+        if ( parent != null && parent.length >= n )
+            return;
+
+        parent = new int[ n ];
+        rank = new int[ n ];
+        awake = new boolean[ n ];
+        member = new boolean[ n ];
+        reach = new double[ n ];
+        members = new int[ n ];
+        islandStart = new int[ n ];
+        islandSize = new int[ n ];
+        islandOf = new int[ n ];
+
+    } // end method ensureCapacity
+
+
+    /**
+     * @return the number of islands this tick
+     */
+    int getIslandCount()
+    {
+        return islandCount;
+    }
+
+
+    /**
+     * @return how many balls are in island k
+     */
+    int getIslandSize( int k )
+    {
+        return islandSize[ k ];
+    }
+
+
+    /**
+     * @return the table index of the m-th ball of island k
+     */
+    int getMember( int k, int m )
+    {
+        return members[ islandStart[ k ] + m ];
+    }
+
+
+    /**
+     * @return true if ball i was moving at the start of the tick
+     */
+    boolean isAwake( int i )
+    {
+        return awake[ i ];
+    }
+
+
+    /**
+     * @return how many balls were moving at the start of the tick
+     */
+    int getAwakeCount()
+    {
+        return awakeCount;
+    }
+
+} // end class ContactIslands
@@ -0,0 +1,393 @@
+package com.aidan3d.pool;
+
+import java.awt.Component;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import math.geom2d.Vector2D;
+
+
+/**
+ * <b>CueInput</b> turns the mouse and keyboard into aiming and
+ * shots:<br>
+ * &nbsp&nbsp a) &nbsp the cue points from the cue ball towards
+ * the mouse; <i>Left</i> and <i>Right</i> turn it half a degree
+ * at a time;<br>
+ * &nbsp&nbsp b) &nbsp press a mouse button to lock the aim,
+ * drag back to set the power, and let go to shoot; or set the
+ * power with <i>Up</i> and <i>Down</i> and shoot with
+ * <i>Space</i>;<br>
+ * &nbsp&nbsp c) &nbsp <i>W</i> / <i>S</i> add follow / screw,
+ * <i>A</i> / <i>D</i> side-spin.
+ * <p>
+ * The event thread only records what the player did. A mouse
+ * can report movement far faster than the game ticks, so moves
+ * just overwrite the latest aim (packed into one volatile long,
+ * so it is never torn). Whichever thread owns the table then
+ * calls <b>applyAim()</b> once per tick and acts on the newest
+ * aim alone. Shots are <b>submit()</b>ted to the table as
+ * commands, so no shot is ever lost and neither thread waits on
+ * the other.
+ * <p>
+ * Latency is measured from the input event to the first frame
+ * drawn after the table has seen it.
+ */
+final class CueInput
+{
+    private static final double NUDGE = Math.toRadians( 0.5 );  // Per key press
+    static final double MIN_POWER = 0.5;                        // Pixels per
+    static final double MAX_POWER = 6.0;                        // frame
+    private static final double POWER_STEP = 0.25;
+    private static final double DRAG_SCALE = 20.0;              // Drag pixels per
+                                                                // unit of power
+    private static final double SPIN_STEP = 0.25;               // Follow / screw
+    private static final double SIDE_STEP = 0.05;               // English
+
+    private final Table table;
+    private final IdleGate[] gates;                 // Woken by any input
+
+    private volatile long aimPoint;                 // Mouse x, y (packed)
+    private volatile int nudges;                    // Keyboard turns since
+                                                    // the mouse last moved
+    private volatile double power;
+    private volatile double top;
+    private volatile double side;
+    private volatile long changed;                  // Bumped on each change
+    private volatile long changedNanos;             // ...and when it happened
+    private volatile boolean locked;                // Not the player's turn
+
+    // Event thread only.
+    private boolean dragging;
+    private int pressX;
+    private int pressY;
+
+    // Table-owning thread only.
+    private long applied;                           // Last change acted on
+    private long deferred;                          // Last change seen that
+                                                    // had to wait
+
+    // Render thread only (it reads appliedNanos).
+    private volatile long appliedNanos;             // Input time of the last
+                                                    // change the table saw
+    private long latencyCount;
+    private long latencyTotal;
+    private long latencyMax;
+
+
+    /**
+     * The constructor.
+     * @param table the table the player is playing on
+     * @param gates the idle gates of the threads that act on
+     * input, woken whenever there is some
+     */
+    CueInput( Table table, IdleGate... gates )
+    {
+        this.table = table;
+        this.gates = gates;
+        power = 3.0;
+        top = 1.0;
+
+    } // end constructor
+
+
+    /**
+     * Listen to a component's mouse and keyboard.
+     * @param component the game panel
+     */
+    void attach( Component component )
+    {
+        MouseAdapter mouse = new MouseAdapter()
+        {
+            @Override
+            public void mouseMoved( MouseEvent e )
+            {
+                aimAt( e.getX(), e.getY() );
+
+            } // end method mouseMoved
+
+            @Override
+            public void mousePressed( MouseEvent e )
+            {
+                e.getComponent().requestFocusInWindow();  // For the keys
+                dragging = true;
+                pressX = e.getX();
+                pressY = e.getY();
+
+            } // end method mousePressed
+
+            @Override
+            public void mouseDragged( MouseEvent e )
+            {
+                double dx = e.getX() - pressX;
+                double dy = e.getY() - pressY;
+
+                setPower( Math.sqrt( dx * dx + dy * dy ) / DRAG_SCALE );
+
+            } // end method mouseDragged
+
+            @Override
+            public void mouseReleased( MouseEvent e )
+            {
+                if ( dragging )
+                {
+                    dragging = false;
+                    shoot();
+
+                } // end if-then
+
+            } // end method mouseReleased
+        };
+
+        component.addMouseListener( mouse );
+        component.addMouseMotionListener( mouse );
+
+        component.addKeyListener( new KeyAdapter()
+        {
+            @Override
+            public void keyPressed( KeyEvent e )
+            {
+                switch ( e.getKeyCode() )
+                {
+                    case KeyEvent.VK_LEFT:  nudges--; changed(); break;
+                    case KeyEvent.VK_RIGHT: nudges++; changed(); break;
+                    case KeyEvent.VK_UP:    setPower( power + POWER_STEP ); break;
+                    case KeyEvent.VK_DOWN:  setPower( power - POWER_STEP ); break;
+                    case KeyEvent.VK_W:     top += SPIN_STEP; changed(); break;
+                    case KeyEvent.VK_S:     top -= SPIN_STEP; changed(); break;
+                    case KeyEvent.VK_A:     side -= SIDE_STEP; changed(); break;
+                    case KeyEvent.VK_D:     side += SIDE_STEP; changed(); break;
+                    case KeyEvent.VK_SPACE: shoot(); break;
+                    default:                break;
+
+                } // end switch
+
+            } // end method keyPressed
+        } );
+
+        // The keys only reach a focused component: take the
+        // focus as soon as the panel is on screen (if its window
+        // is not focused yet, it gets the focus once it is).
+        component.setFocusable( true );
+        component.addHierarchyListener( new HierarchyListener()
+        {
+            @Override
+            public void hierarchyChanged( HierarchyEvent e )
+            {
+                if ( ( e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED ) != 0
+                    && e.getComponent().isShowing() )
+                    e.getComponent().requestFocusInWindow();
+
+            } // end method hierarchyChanged
+        } );
+
+    } // end method attach
+
+
+    /**
+     * Point the cue at a spot on the screen (event thread).
+     */
+    private void aimAt( int x, int y )
+    {
+        if ( dragging )
+            return;                                 // Aim is locked
+
+        aimPoint = ( ( long )x << 32 ) | ( y & 0xFFFFFFFFL );
+        nudges = 0;
+        changed();
+
+    } // end method aimAt
+
+
+    private void setPower( double p )
+    {
+        power = Math.max( MIN_POWER, Math.min( MAX_POWER, p ) );
+        changed();
+
+    } // end method setPower
+
+
+    private void changed()
+    {
+        changedNanos = System.nanoTime();
+        changed++;                                  // Event thread is the
+                                                    // only writer
+        wake();
+
+    } // end method changed
+
+
+    private void wake()
+    {
+        for ( IdleGate gate : gates )
+            gate.poke();
+
+    } // end method wake
+
+
+    /**
+     * Queue a shot along the current aim (event thread).
+     */
+    private void shoot()
+    {
+        // (The table wakes the loops that run it.)
+        table.submit( new Shot( aimPoint, nudges, power, top, side, System.nanoTime() ) );
+
+    } // end method shoot
+
+
+    /**
+     * Point the cue along the newest aim: one update, however
+     * many moves came in. Call once per tick, after the table's
+     * commands (the shots) have run, from the thread that owns
+     * the table. An aim changed while the balls are moving (or
+     * the controls are locked) is kept, and applied once the
+     * table is at rest and the player's again. Only a change
+     * acted on at the first chance is timed: one that had to
+     * wait would time the wait, not the game loop.
+     */
+    void applyAim()
+    {
+        long version = changed;
+
+        if ( version == applied )
+            return;
+
+        if ( table.ballsAreMoving() || locked )
+        {
+            deferred = version;
+            return;
+
+        } // end if-then
+
+        long at = changedNanos;
+
+        table.aimCue( velocity( table, aimPoint, nudges, power ) );
+
+        if ( version != deferred )
+            appliedNanos = at;
+
+        applied = version;
+
+    } // end method applyAim
+
+
+    /**
+     * @return the cue ball's velocity for an aim
+     */
+    private static Vector2D velocity( Table table, long point, int turns, double speed )
+    {
+        Vector2D cue = table.getCueCenter();
+        double x = ( int )( point >> 32 );
+        double y = ( int )point;
+        double angle = Math.atan2( y - cue.y(), x - cue.x() ) + turns * NUDGE;
+
+        return new Vector2D( speed * Math.cos( angle ), speed * Math.sin( angle ) );
+
+    } // end method velocity
+
+
+    /**
+     * A frame has been drawn (render thread): if it is the
+     * first to show an input the table has acted on, record
+     * how long that input took to reach the screen.
+     */
+    void frameDrawn()
+    {
+        long at = appliedNanos;
+
+        if ( at == 0L )
+            return;
+
+        appliedNanos = 0L;
+
+        long latency = System.nanoTime() - at;
+
+        latencyCount++;
+        latencyTotal += latency;
+        latencyMax = Math.max( latencyMax, latency );
+
+    } // end method frameDrawn
+
+
+    /**
+     * @return the mean input-to-frame latency, in milliseconds
+     * (0 before any input)
+     */
+    double getAverageLatencyMillis()
+    {
+        return latencyCount == 0 ? 0.0 : latencyTotal / ( latencyCount * 1.0e6 );
+    }
+
+
+    /**
+     * @return the worst input-to-frame latency, in milliseconds
+     */
+    double getMaxLatencyMillis()
+    {
+        return latencyMax / 1.0e6;
+    }
+
+
+    double getPower()
+    {
+        return power;
+    }
+
+
+    /**
+     * Lock the controls (while the computer takes its turn) or
+     * unlock them: shots asked for while they are locked are
+     * dropped.
+     * @param locked true to lock
+     */
+    void setLocked( boolean locked )
+    {
+        this.locked = locked;
+
+    } // end method setLocked
+
+
+    /**
+     * One shot, as the player asked for it.
+     */
+    private final class Shot implements TableCommand
+    {
+        final long point;                           // Aim, as packed x, y
+        final int nudges;
+        final double power;
+        final double top;
+        final double side;
+        final long nanos;                           // When it was asked for
+
+        Shot( long point, int nudges, double power, double top, double side, long nanos )
+        {
+            this.point = point;
+            this.nudges = nudges;
+            this.power = power;
+            this.top = top;
+            this.side = side;
+            this.nanos = nanos;
+
+        } // end six-argument constructor
+
+        /**
+         * A shot only counts once the balls have stopped, and
+         * on the player's turn.
+         */
+        @Override
+        public void apply( Table table )
+        {
+            if ( table.ballsAreMoving() || locked )
+                return;
+
+            table.shoot( velocity( table, point, nudges, power ), top, side );
+            appliedNanos = nanos;
+
+        } // end method apply
+
+    } // end class Shot
+
+} // end class CueInput
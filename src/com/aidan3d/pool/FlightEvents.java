@@ -0,0 +1,98 @@
+package com.aidan3d.pool;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+
+
+/**
+ * Keeps a cached "is anybody listening?" flag for each of
+ * the pool game's Flight Recorder events.
+ * <p>
+ * The hot loops (<b>Table.update()</b> and
+ * <b>PoolPanel.customizeGameRender()</b>) check these flags
+ * before they create an event object, so nothing at all is
+ * allocated while the events are switched off (which they
+ * are, by default). The flags are refreshed whenever a
+ * recording starts, stops or is closed.
+ */
+final class FlightEvents
+{
+    private static volatile boolean ticks;          // SimulationTickEvent on?
+    private static volatile boolean bursts;         // CollisionBurstEvent on?
+    private static volatile boolean frames;         // RenderFrameEvent on?
+
+    static
+    {
+        // Nothing to listen to on a JVM built without JFR.
+        if ( FlightRecorder.isAvailable() )
+        {
+            FlightRecorder.addListener( new FlightRecorderListener()
+            {
+                @Override
+                public void recordingStateChanged( Recording recording )
+                {
+                    refresh();
+
+                } // end method recordingStateChanged
+            } );
+
+            refresh();
+
+        } // end if-then
+
+    } // end static initializer
+
+
+    /**
+     * Not to be instantiated: a holder for static flags.
+     */
+    private FlightEvents()
+    {
+    }
+
+
+    /**
+     * Re-read the enabled state of each event type from the
+     * Flight Recorder.
+     */
+    private static void refresh()
+    {
+        ticks = EventType.getEventType( SimulationTickEvent.class ).isEnabled();
+        bursts = EventType.getEventType( CollisionBurstEvent.class ).isEnabled();
+        frames = EventType.getEventType( RenderFrameEvent.class ).isEnabled();
+
+    } // end method refresh
+
+
+    /**
+     * @return true if a recording wants simulation ticks
+     */
+    static boolean ticksEnabled()
+    {
+        return ticks;
+
+    } // end method ticksEnabled
+
+
+    /**
+     * @return true if a recording wants collision bursts
+     */
+    static boolean burstsEnabled()
+    {
+        return bursts;
+
+    } // end method burstsEnabled
+
+
+    /**
+     * @return true if a recording wants render frames
+     */
+    static boolean framesEnabled()
+    {
+        return frames;
+
+    } // end method framesEnabled
+
+} // end class FlightEvents
@@ -0,0 +1,93 @@
+package com.aidan3d.pool;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A <b>FrameExchange</b> passes <b>BallFrame</b>s from the
+ * simulation thread to the render thread without either one
+ * ever waiting on a lock ("triple buffering").
+ * <p>
+ * There are three frames. The simulation thread owns one (the
+ * "back" frame) and fills it in; the render thread owns another
+ * (the "front" frame) and draws from it; the third sits in the
+ * middle. Publishing swaps the back frame with the middle one,
+ * and taking the latest swaps the front frame with the middle
+ * one, each in a single atomic step. Neither side can ever see
+ * a frame the other is writing, so there are no torn reads; the
+ * renderer just skips any frames it was too slow to draw.
+ * <p>
+ * Exactly one thread may publish and exactly one may take.
+ */
+final class FrameExchange
+{
+    private static final int INDEX = 0x3;               // The middle frame's
+    private static final int FRESH = 0x4;               // index, and a flag:
+                                                        // "not yet taken"
+
+    private final BallFrame[] frames;
+    private final AtomicInteger middle;                 // Index | FRESH
+
+    private int back;                                   // Producer's own
+    private int front;                                  // Consumer's own
+    private boolean taken;                              // Consumer has had
+                                                        // at least one frame
+
+
+    /**
+     * The one-argument constructor.
+     * @param capacity the most balls a frame must hold
+     */
+    FrameExchange( int capacity )
+    {
+        frames = new BallFrame[] {
+            new BallFrame( capacity ), new BallFrame( capacity ), new BallFrame( capacity ) };
+
+        back = 0;
+        middle = new AtomicInteger( 1 );
+        front = 2;
+
+    } // end one-argument constructor
+
+
+    /**
+     * @return the frame the simulation thread should fill in
+     * next (simulation thread only)
+     */
+    BallFrame back()
+    {
+        return frames[ back ];
+
+    } // end method back
+
+
+    /**
+     * Hand the filled-in back frame over, taking the middle
+     * frame as the new back frame (simulation thread only).
+     */
+    void publish()
+    {
+        back = middle.getAndSet( back | FRESH ) & INDEX;
+
+    } // end method publish
+
+
+    /**
+     * @return the newest published frame, or the one returned
+     * last time if nothing newer has been published (render
+     * thread only); null if nothing has been published yet
+     */
+    BallFrame latest()
+    {
+        if ( ( middle.get() & FRESH ) != 0 )
+        {
+            front = middle.getAndSet( front ) & INDEX;
+            taken = true;
+
+        } // end if-then
+
+        return taken ? frames[ front ] : null;
+
+    } // end method latest
+
+} // end class FrameExchange
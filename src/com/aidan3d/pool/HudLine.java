@@ -0,0 +1,232 @@
+package com.aidan3d.pool;
+
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.Arrays;
+
+
+/**
+ * A <b>HudLine</b> is one line of heads-up text (e.g., the
+ * FPS/UPS read-out) that is re-drawn every frame without making
+ * any garbage:<br>
+ * &nbsp&nbsp a) &nbsp the text is built, each frame, into a
+ * reusable char buffer, numbers included (no Strings, no
+ * <b>DecimalFormat</b>);<br>
+ * &nbsp&nbsp b) &nbsp it is laid out into a <b>GlyphVector</b>
+ * only when it differs from what was drawn last; otherwise the
+ * cached glyphs are drawn again.
+ * <p>
+ * Numbers are written as <i>DecimalFormat( "0.##" )</i> would
+ * write them: up to two decimal places, rounded half-even,
+ * trailing zeroes dropped.
+ * <p>
+ * A line belongs to the render thread.
+ */
+final class HudLine
+{
+    private final Font font;
+
+    private char[] next;                    // Being built this frame
+    private int nextLength;
+    private char[] shown;                   // Laid out in glyphs
+    private int shownLength;
+
+    private GlyphVector glyphs;             // Null until first drawn
+    private FontRenderContext glyphContext; // What they were laid out for
+
+
+    /**
+     * The two-argument constructor.
+     * @param font the font to draw in
+     * @param capacity the longest line expected (it grows if
+     * need be)
+     */
+    HudLine( Font font, int capacity )
+    {
+        this.font = font;
+
+        next = new char[ capacity ];
+        shown = new char[ capacity ];
+        shownLength = -1;
+
+    } // end two-argument constructor
+
+
+    /**
+     * Start building this frame's text.
+     * @return this line
+     */
+    HudLine begin()
+    {
+        nextLength = 0;
+        return this;
+
+    } // end method begin
+
+
+    /**
+     * Add some fixed text (a constant, so nothing is made).
+     * @return this line
+     */
+    HudLine text( String s )
+    {
+        ensure( s.length() );
+        s.getChars( 0, s.length(), next, nextLength );
+        nextLength += s.length();
+
+        return this;
+
+    } // end method text
+
+
+    /**
+     * Add a whole number.
+     * @return this line
+     */
+    HudLine number( long value )
+    {
+        ensure( 20 );
+
+        if ( value < 0L )
+            next[ nextLength++ ] = '-';
+
+        // Digits, least significant first, then reversed. The
+        // value is never negated (-Long.MIN_VALUE overflows):
+        // a negative value's remainders are the digits negated.
+        int first = nextLength;
+
+        do
+        {
+            next[ nextLength++ ] = ( char )( '0' + Math.abs( value % 10L ) );
+            value /= 10L;
+
+        } while ( value != 0L );
+
+        for ( int i = first, j = nextLength - 1; i < j; i++, j-- )
+        {
+            char c = next[ i ];
+            next[ i ] = next[ j ];
+            next[ j ] = c;
+
+        } // end for
+
+        return this;
+
+    } // end method number
+
+
+    /**
+     * Add a number, to two decimal places at most.
+     * @return this line
+     */
+    HudLine number( double value )
+    {
+        if ( Double.isNaN( value ) || Double.isInfinite( value ) )
+            return text( "?" );
+
+        // Round to hundredths half-even, on the double's exact
+        // value (as DecimalFormat does): 0.125 gives 0.12, but
+        // 0.005 (really 0.005000000000000000104...) gives 0.01.
+        // The product is inexact, so which side of the half the
+        // value lies is settled by a fused multiply-add, whose
+        // one rounding cannot change the sign.
+        double magnitude = Math.abs( value );
+        long hundredths = ( long )Math.floor( magnitude * 100.0 );
+        double aboveHalf = Math.fma( magnitude, 100.0, -( hundredths + 0.5 ) );
+
+        if ( aboveHalf > 0.0 || ( aboveHalf == 0.0 && ( hundredths & 1L ) != 0L ) )
+            hundredths++;
+
+        if ( Double.doubleToRawLongBits( value ) < 0L )
+            text( "-" );                    // DecimalFormat keeps the
+                                            // sign of -0.001 ("-0")
+
+        number( hundredths / 100L );
+
+        int fraction = ( int )( hundredths % 100L );
+
+        if ( fraction != 0 )
+        {
+            ensure( 3 );
+            next[ nextLength++ ] = '.';
+            next[ nextLength++ ] = ( char )( '0' + fraction / 10 );
+
+            if ( fraction % 10 != 0 )
+                next[ nextLength++ ] = ( char )( '0' + fraction % 10 );
+
+        } // end if-then
+
+        return this;
+
+    } // end method number
+
+
+    /**
+     * Draw the line, laying it out again only if its text has
+     * changed.
+     * @param g the buffer on to which we splash pixels
+     * @param x where the text's baseline starts
+     * @param y
+     */
+    void draw( Graphics g, int x, int y )
+    {
+        if ( !( g instanceof Graphics2D ) )
+        {
+            g.setFont( font );
+            g.drawChars( next, 0, nextLength, x, y );
+            return;
+
+        } // end if-then
+
+        Graphics2D g2 = ( Graphics2D )g;
+        FontRenderContext context = g2.getFontRenderContext();
+
+        if ( glyphs == null || !sameText() || !context.equals( glyphContext ) )
+        {
+            // Swap the buffers: what was built is now shown.
+            char[] swap = shown;
+            shown = next;
+            shownLength = nextLength;
+            next = swap;
+
+            glyphs = font.layoutGlyphVector( context, shown, 0, shownLength, Font.LAYOUT_LEFT_TO_RIGHT );
+            glyphContext = context;
+
+        } // end if-then
+
+        g2.drawGlyphVector( glyphs, x, y );
+
+    } // end method draw
+
+
+    /**
+     * @return true if this frame's text is what is on show
+     */
+    private boolean sameText()
+    {
+        if ( nextLength != shownLength )
+            return false;
+
+        for ( int i = 0; i < nextLength; i++ )
+        {
+            if ( next[ i ] != shown[ i ] )
+                return false;
+
+        } // end for
+
+        return true;
+
+    } // end method sameText
+
+
+    private void ensure( int more )
+    {
+        if ( nextLength + more > next.length )
+            next = Arrays.copyOf( next, Math.max( next.length * 2, nextLength + more ) );
+
+    } // end method ensure
+
+} // end class HudLine
@@ -0,0 +1,135 @@
+package com.aidan3d.pool;
+
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * An <b>IdleGate</b> lets a loop thread (the game loop, or the
+ * simulation thread) sleep while there is nothing for it to do:
+ * no ball moving and no input from the player. Once the table
+ * has been still, with no input, for a few passes of the loop
+ * (so the last frame and the aim guide are on screen), each
+ * <b>await()</b> parks the thread until <b>poke()</b> is called,
+ * or a refresh interval has passed.
+ * <p>
+ * Input calls <b>poke()</b>, which wakes the thread at once, so
+ * play resumes at full rate with no lag. Each waiting thread
+ * has a gate of its own.
+ */
+final class IdleGate
+{
+    private static final int SETTLE_PASSES = 10;    // Still passes before
+                                                    // we idle (time for
+                                                    // the aim guide)
+
+    private final long refreshNanos;                // Longest sleep
+
+    private volatile long pokes;                    // Bumped by poke()
+    private volatile Thread waiter;
+
+    // Waiting thread only.
+    private long seen;                              // pokes, last look
+    private int stillPasses;
+    private long idleNanos;                         // Total time parked
+    private long passes;                            // Calls to await()
+
+
+    /**
+     * The one-argument constructor.
+     * @param refreshNanos the longest the thread sleeps before
+     * going round its loop anyway (e.g., to tick a clock)
+     */
+    IdleGate( long refreshNanos )
+    {
+        this.refreshNanos = refreshNanos;
+
+    } // end one-argument constructor
+
+
+    /**
+     * Something has happened (input, or the window needs
+     * drawing): wake the waiting thread.
+     */
+    synchronized void poke()
+    {
+        pokes++;
+
+        Thread t = waiter;
+
+        if ( t != null )
+            LockSupport.unpark( t );
+
+    } // end method poke
+
+
+    /**
+     * Called once per pass of the loop: returns at once while
+     * there is work, and parks while there is none.
+     * @param busy true if the balls are moving
+     * @return true if the thread slept
+     */
+    boolean await( boolean busy )
+    {
+        long poked = pokes;
+
+        passes++;
+
+        if ( busy || poked != seen )
+        {
+            seen = poked;
+            stillPasses = 0;
+            return false;
+
+        } // end if-then
+
+        if ( ++stillPasses <= SETTLE_PASSES )
+            return false;
+
+        // Register before the last look at pokes: a poke()
+        // after that look will find us, and unpark() lets the
+        // park below fall straight through.
+        waiter = Thread.currentThread();
+
+        long began = System.nanoTime();
+
+        if ( pokes == seen )
+            LockSupport.parkNanos( this, refreshNanos );
+
+        waiter = null;
+        idleNanos += System.nanoTime() - began;
+
+        return true;
+
+    } // end method await
+
+
+    /**
+     * @return whether the last pass found nothing to do, and
+     * nothing has poked the gate since (so input is never held
+     * up waiting for the next <b>await()</b>)
+     */
+    boolean isIdle()
+    {
+        return stillPasses > SETTLE_PASSES && pokes == seen;
+    }
+
+
+    /**
+     * @return how many times <b>await()</b> has been called
+     */
+    long getPasses()
+    {
+        return passes;
+    }
+
+
+    /**
+     * @return the total time the thread has spent parked, in
+     * milliseconds
+     */
+    long getIdleMillis()
+    {
+        return idleNanos / 1000000L;
+    }
+
+} // end class IdleGate
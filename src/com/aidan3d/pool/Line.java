@@ -8,6 +8,11 @@ import math.geom2d.Vector2D;
  * (think of a line as a point "running" between two
  * terminal "posts" from the "start" (or beginning point)
  * to the "end" (or end-point)).
+ * <p>
+ * A Line may instead be a circular arc (see <b>arc()</b>),
+ * for curved cushions and round or novelty tables. An arc's
+ * start and end are its end-points, and its vector is the
+ * chord between them.
  */
 public class Line
 {
@@ -19,6 +24,16 @@ public class Line
     
     private Vector2D normalDirection;               // The normal of lineAsVector
 
+    private boolean arc;                            // A circular arc, rather
+                                                    // than a straight segment
+    private double arcCenterX;
+    private double arcCenterY;
+    private double arcRadius;
+    private double arcFrom;                         // Start angle, radians
+    private double arcSweep;                        // Always positive (the
+                                                    // arc runs the way y
+                                                    // turns into x)
+
 
     Line( Point2D s, Point2D e )
     {
@@ -37,6 +52,41 @@ public class Line
     }
 
 
+    /**
+     * Make a cushion that is a circular arc.
+     * @param center the arc's center
+     * @param radius the arc's radius
+     * @param from the angle, in radians, at which it starts
+     * (measured as <i>Math.atan2( y, x )</i> is, on screen)
+     * @param sweep the angle it turns through (either way)
+     * @return the arc
+     */
+    static Line arc( Point2D center, double radius, double from, double sweep )
+    {
+        if ( sweep < 0.0 )
+        {
+            from += sweep;
+            sweep = -sweep;
+
+        } // end if-then
+
+        Line line = new Line(
+            new Point2D( center.x() + radius * Math.cos( from ), center.y() + radius * Math.sin( from ) ),
+            new Point2D( center.x() + radius * Math.cos( from + sweep ),
+                center.y() + radius * Math.sin( from + sweep ) ) );
+
+        line.arc = true;
+        line.arcCenterX = center.x();
+        line.arcCenterY = center.y();
+        line.arcRadius = radius;
+        line.arcFrom = from;
+        line.arcSweep = Math.min( sweep, 2.0 * Math.PI );
+
+        return line;
+
+    } // end method arc
+
+
     public void setStart( Vector2D s )
     {
         start = s;
@@ -76,7 +126,150 @@ public class Line
         return vector;
         
     } // end method getVector
- 
+
+
+    boolean isArc()
+    {
+        return arc;
+    }
+
+
+    double getArcCenterX()
+    {
+        return arcCenterX;
+    }
+
+
+    double getArcCenterY()
+    {
+        return arcCenterY;
+    }
+
+
+    double getArcRadius()
+    {
+        return arcRadius;
+    }
+
+
+    double getArcFrom()
+    {
+        return arcFrom;
+    }
+
+
+    double getArcSweep()
+    {
+        return arcSweep;
+    }
+
+
+    /**
+     * @return whether an angle (as from <b>Math.atan2()</b>)
+     * lies within the arc
+     */
+    boolean arcContains( double angle )
+    {
+        double turn = ( angle - arcFrom ) % ( 2.0 * Math.PI );
+
+        if ( turn < 0.0 )
+            turn += 2.0 * Math.PI;
+
+        return turn <= arcSweep;
+
+    } // end method arcContains
+
+
+    /**
+     * @return the squared distance from a point to the nearest
+     * point of this cushion: its end-points included, so a
+     * ball rounding the end of a rail is handled correctly
+     */
+    double distanceSq( double x, double y )
+    {
+        double qx;
+        double qy;
+
+        if ( arc )
+        {
+            double angle = Math.atan2( y - arcCenterY, x - arcCenterX );
+
+            if ( !arcContains( angle ) )
+            {
+                // Past the arc: the nearer end-point.
+                double ds = sq( x - start.x() ) + sq( y - start.y() );
+                double de = sq( x - end.x() ) + sq( y - end.y() );
+
+                return Math.min( ds, de );
+
+            } // end if-then
+
+            qx = arcCenterX + arcRadius * Math.cos( angle );
+            qy = arcCenterY + arcRadius * Math.sin( angle );
+        }
+        else
+        {
+            double dx = vector.x();
+            double dy = vector.y();
+            double lengthSq = dx * dx + dy * dy;
+            double t = lengthSq == 0.0 ? 0.0
+                : ( ( x - start.x() ) * dx + ( y - start.y() ) * dy ) / lengthSq;
+
+            t = Math.max( 0.0, Math.min( 1.0, t ) );
+            qx = start.x() + t * dx;
+            qy = start.y() + t * dy;
+
+        } // end if-then-else
+
+        return sq( x - qx ) + sq( y - qy );
+
+    } // end method distanceSq
+
+
+    /**
+     * @return the smallest rectangle holding the whole cushion,
+     * as { minX, minY, maxX, maxY }
+     */
+    double[] getBounds()
+    {
+        double minX = Math.min( start.x(), end.x() );
+        double minY = Math.min( start.y(), end.y() );
+        double maxX = Math.max( start.x(), end.x() );
+        double maxY = Math.max( start.y(), end.y() );
+
+        if ( arc )
+        {
+            // Any of the four compass points the arc passes.
+            for ( int quarter = 0; quarter < 4; quarter++ )
+            {
+                double angle = quarter * Math.PI / 2.0;
+
+                if ( arcContains( angle ) )
+                {
+                    double x = arcCenterX + arcRadius * Math.cos( angle );
+                    double y = arcCenterY + arcRadius * Math.sin( angle );
+
+                    minX = Math.min( minX, x );
+                    minY = Math.min( minY, y );
+                    maxX = Math.max( maxX, x );
+                    maxY = Math.max( maxY, y );
+
+                } // end if-then
+
+            } // end for
+
+        } // end if-then
+
+        return new double[] { minX, minY, maxX, maxY };
+
+    } // end method getBounds
+
+
+    private static double sq( double d )
+    {
+        return d * d;
+    }
+
 
     /**
      * Send out a Vector2D object (a
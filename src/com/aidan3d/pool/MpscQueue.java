@@ -0,0 +1,102 @@
+package com.aidan3d.pool;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * An <b>MpscQueue</b> is a lock-free queue for many producer
+ * threads and one consumer: any thread may <b>offer()</b>, but
+ * only the thread that owns the queue may <b>poll()</b>.
+ * <p>
+ * The items are kept in a singly-linked list, with the consumer
+ * at the old end and the producers at the new. A producer swaps
+ * its node in as the new head (one atomic exchange: it never
+ * retries, and never waits on another producer), then links the
+ * old head to it. The consumer walks the links, so it needs no
+ * atomics at all.
+ * <p>
+ * Between the swap and the link, a producer's item (and any
+ * offered after it) is briefly out of the consumer's sight: a
+ * <b>poll()</b> then finds nothing, and the item turns up on a
+ * later one. Items are never lost or reordered.
+ */
+final class MpscQueue<E>
+{
+    private final AtomicReference<Node<E>> head;   // Newest (producers)
+    private Node<E> tail;                          // Last taken, emptied
+                                                   // (consumer only)
+
+
+    /**
+     * The constructor: an empty queue.
+     */
+    MpscQueue()
+    {
+        tail = new Node<>( null );
+        head = new AtomicReference<>( tail );
+
+    } // end constructor
+
+
+    /**
+     * Add an item (any thread).
+     * @param item the item, not null
+     */
+    void offer( E item )
+    {
+        if ( item == null )
+            throw new NullPointerException( "item" );
+
+        Node<E> node = new Node<>( item );
+
+        head.getAndSet( node ).next = node;
+
+    } // end method offer
+
+
+    /**
+     * Take the oldest item (owner thread only).
+     * @return the item, or null if there is none
+     */
+    E poll()
+    {
+        Node<E> next = tail.next;
+
+        if ( next == null )
+            return null;
+
+        E item = next.item;
+
+        // The node taken becomes the new (empty) tail.
+        next.item = null;
+        tail = next;
+
+        return item;
+
+    } // end method poll
+
+
+    /**
+     * @return true if no item can be taken yet (owner thread
+     * only)
+     */
+    boolean isEmpty()
+    {
+        return tail.next == null;
+    }
+
+
+    private static final class Node<E>
+    {
+        E item;
+        volatile Node<E> next;
+
+        Node( E item )
+        {
+            this.item = item;
+
+        } // end one-argument constructor
+
+    } // end class Node
+
+} // end class MpscQueue
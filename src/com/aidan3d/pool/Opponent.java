@@ -0,0 +1,235 @@
+package com.aidan3d.pool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * An <b>Opponent</b> takes turns with the player, choosing its
+ * shots with a <b>ShotSearch</b>. The turn rules are the usual
+ * ones, kept simple:<br>
+ * &nbsp&nbsp a) &nbsp whoever sinks an object ball (without
+ * scratching) plays again; otherwise the turn passes;<br>
+ * &nbsp&nbsp b) &nbsp after a scratch the cue ball goes back on
+ * its spot;<br>
+ * &nbsp&nbsp c) &nbsp once every object ball is down the balls
+ * are racked again, and the player breaks.
+ * <p>
+ * The thread that owns the table calls <b>update()</b> once per
+ * tick. When it is the computer's turn, the search runs on a
+ * thread of its own, from a copy of the table, and sends its
+ * shot back as a command; the player's controls are locked
+ * meanwhile.
+ */
+final class Opponent
+{
+    private final ShotSearch search;
+    private final CueInput player;                  // Locked on our turn
+    private final ExecutorService thinker;          // Runs the search
+
+    private volatile boolean computersTurn;         // Read by the renderer
+
+    // Table-owning thread only.
+    private boolean thinking;                       // A search is under way
+    private boolean wasMoving;                      // Last tick's state
+    private int sunkBefore;                         // Object balls down when
+                                                    // the shot was played
+
+
+    /**
+     * The two-argument constructor.
+     * @param search chooses the computer's shots
+     * @param player the player's controls
+     */
+    Opponent( ShotSearch search, CueInput player )
+    {
+        this.search = search;
+        this.player = player;
+
+        thinker = Executors.newSingleThreadExecutor( new ThreadFactory()
+        {
+            @Override
+            public Thread newThread( Runnable r )
+            {
+                Thread t = new Thread( r, "pool-opponent" );
+                t.setDaemon( true );
+                return t;
+
+            } // end method newThread
+        } );
+
+    } // end two-argument constructor
+
+
+    /**
+     * Call once per tick, after the table has been stepped,
+     * from the thread that owns the table: once a shot has
+     * come to rest, settle whose turn it is, and start the
+     * computer thinking if it is its turn.
+     * @param table the table being played on
+     * @return true if balls at rest were moved (a re-rack, or
+     * the cue ball back on its spot), so need drawing again
+     */
+    boolean update( Table table )
+    {
+        if ( table.ballsAreMoving() )
+        {
+            wasMoving = true;
+            return false;
+
+        } // end if-then
+
+        boolean moved = false;
+
+        if ( wasMoving )
+        {
+            wasMoving = false;
+            moved = shotOver( table );
+
+        } // end if-then
+
+        sunkBefore = table.countPocketed();
+
+        if ( computersTurn && !thinking )
+            think( table );
+
+        return moved;
+
+    } // end method update
+
+
+    /**
+     * The balls have stopped: apply the turn rules.
+     * @return true if any ball was put back on the table
+     */
+    private boolean shotOver( Table table )
+    {
+        int sunk = table.countPocketed();
+        boolean scratch = table.isCuePocketed();
+        boolean moved = scratch;
+
+        if ( sunk == table.getBallCount() - 1 )
+        {
+            table.reset();
+            computersTurn = false;
+            moved = true;
+        }
+        else
+        {
+            if ( scratch )
+                table.placeBall( 0, table.getCueSpot() );
+
+            if ( scratch || sunk <= sunkBefore )
+                computersTurn = !computersTurn;
+
+        } // end if-then-else
+
+        player.setLocked( computersTurn );
+
+        return moved;
+
+    } // end method shotOver
+
+
+    /**
+     * Start the search on the thinker thread. Its answer comes
+     * back as a command, so it is played on the table's own
+     * thread.
+     */
+    private void think( final Table table )
+    {
+        final Table position = new Table( table );  // Headless: the
+                                                    // search reads it
+                                                    // on its own thread
+
+        thinking = true;
+
+        try
+        {
+            thinker.execute( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    ShotSearch.Shot shot = null;
+
+                    try
+                    {
+                        shot = search.chooseShot( position );
+                    }
+                    catch ( RuntimeException ex )
+                    {
+                        Logger.getLogger( Opponent.class.getName() ).log( Level.WARNING,
+                            "The computer could not choose a shot; passing the turn", ex );
+
+                    } // end try-catch
+
+                    table.submit( play( shot ) );
+
+                } // end method run
+            } );
+        }
+        catch ( RejectedExecutionException ex )
+        {
+            // Shut down: the game is over.
+
+        } // end try-catch
+
+    } // end method think
+
+
+    /**
+     * @param shot the chosen shot, or null if there is none
+     * @return the command that plays it (or, with no shot,
+     * hands the turn back to the player)
+     */
+    private TableCommand play( final ShotSearch.Shot shot )
+    {
+        return new TableCommand()
+        {
+            @Override
+            public void apply( Table table )
+            {
+                thinking = false;
+
+                if ( shot == null )
+                {
+                    computersTurn = false;
+                    player.setLocked( false );
+                }
+                else if ( !table.ballsAreMoving() )
+                {
+                    table.shoot( shot.toVelocity(), 1.0, 0.0 );
+
+                } // end if-then-else
+
+            } // end method apply
+        };
+
+    } // end method play
+
+
+    /**
+     * @return true while the computer is to play
+     */
+    boolean isComputersTurn()
+    {
+        return computersTurn;
+    }
+
+
+    /**
+     * Stop the search threads.
+     */
+    void shutdown()
+    {
+        thinker.shutdownNow();
+        search.shutdown();
+
+    } // end method shutdown
+
+} // end class Opponent
@@ -20,6 +20,11 @@ public class Pool extends javax.swing.JFrame
     private static final int DEFAULT_FPS = 60;  // the frame rate
     private static long period;
 
+    private long timeShown = -1L;               // The seconds in jtTime
+                                                // (it is only re-set,
+                                                // and re-laid out, when
+                                                // they change)
+
 
     /**
      * This is the <i>PlanetSim</i> no-argument constructor.
@@ -44,6 +49,12 @@ public class Pool extends javax.swing.JFrame
      */
     public void setTimeSpent( long t )
     {
+        // Called every tick, but the seconds only change
+        // once a second.
+        if ( t == timeShown )
+            return;
+
+        timeShown = t;
         jtTime.setText( "Time spent: " + t + "  secs." );
 
 
@@ -168,6 +179,11 @@ public class Pool extends javax.swing.JFrame
      */
     public static void main(String args[])
     {
+        StartupTimer.begin();
+
+        // Build the pool table while Swing starts up.
+        PoolPanel.prepareTable();
+
         int fps = DEFAULT_FPS;  // set as a default, or in the command-line-
                                 // parameter if run from the command line
 
@@ -194,12 +210,14 @@ public class Pool extends javax.swing.JFrame
          * default look and feel. For details see
          * http://download.oracle.com/javase/tutorial/uiswing/lookandfeel/plaf.html
          */
+        /*
+         * Name Nimbus directly, rather than listing every installed
+         * look and feel (which loads them all) to find it; with
+         * -Dpool.nimbus=false, keep the default and skip it entirely.
+         */
         try {
-            for (javax.swing.UIManager.LookAndFeelInfo info : javax.swing.UIManager.getInstalledLookAndFeels()) {
-                if ("Nimbus".equals(info.getName())) {
-                    javax.swing.UIManager.setLookAndFeel(info.getClassName());
-                    break;
-                }
+            if (!"false".equals(System.getProperty("pool.nimbus"))) {
+                javax.swing.UIManager.setLookAndFeel("javax.swing.plaf.nimbus.NimbusLookAndFeel");
             }
         } catch (ClassNotFoundException ex) {
             java.util.logging.Logger.getLogger(Pool.class.getName()).log(java.util.logging.Level.SEVERE, null, ex);
@@ -226,6 +244,7 @@ public class Pool extends javax.swing.JFrame
         java.awt.EventQueue.invokeLater(new Runnable() {
             public void run() {
                 new Pool().setVisible(true);
+                StartupTimer.windowShown();
             } // end method run
         });
 
@@ -10,6 +10,17 @@ import java.awt.Color;                      // used for the color enumerations
                                             // (e.g., .white)
 import java.awt.Font;
 import java.awt.FontMetrics;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A <b>PoolPanel</b> is a <b>GamePanel</b> is a Swing <b>JPanel</b>.
@@ -25,29 +36,39 @@ import java.awt.FontMetrics;
  */
 public class PoolPanel extends GamePanel
 {
-    private final int TABLE_WIDTH = 250;              // The pool table's width
+    private static final int TABLE_WIDTH = 250;       // The pool table's width
                                                       // (and half of the depth)
 
-    private final int BALL_RADIUS = 6;                // The pool balls' radii
+    private static final int BALL_RADIUS = 6;         // The pool balls' radii
 
-    private final double POCKET_MULTIPLIER = 2.2F;    // A multiplier to adjust
+    private static final double POCKET_MULTIPLIER = 2.2F; // A multiplier to adjust
                                                       // the pocket size
 
-    private final double JAW_MULTIPLIER = 0.7F;       // A multiplier to adjust
+    private static final double JAW_MULTIPLIER = 0.7F; // A multiplier to adjust
                                                       // the jaw size (the
                                                       // "bumpers" forming the
                                                       // terminii of the pockets'
                                                       // mouths
     
-    private final double BED_FRICTION = 0.1F;         // Effectively, the
+    private static final double BED_FRICTION = 0.1F;  // Effectively, the
                                                       // coefficient of
                                                       // restitution between
                                                       // ball and baize
 
+    private static final long IDLE_REFRESH = 1000000000L; // Longest idle sleep,
+                                                      // in ns (the clock on
+                                                      // the HUD counts in
+                                                      // seconds)
+    private static final int HOOK_CHECK_UPDATES = 600; // Updates by which
+                                                      // insideGameLoop()
+                                                      // must have run
+
 
 
     private final Font poolFont;
     private final FontMetrics metrics;
+    private final HudLine fpsLine;                    // The heads-up text,
+    private final HudLine latencyLine;                // drawn garbage-free
     
     private final Pool poolTop;                       // Refers to the
                                                       // "calling"
@@ -59,10 +80,53 @@ public class PoolPanel extends GamePanel
                                                       // object (composition)
 
     private final Table poolTable;
+    private final TableRenderer renderer;             // Draws it (render
+                                                      // thread only)
+
+    private static FutureTask<Table> preparedTable;   // Built in the
+                                                      // background while
+                                                      // Swing starts up
+
+    private final AdaptiveIntegrator integrator;      // Splits each frame
+                                                      // into sub-steps
+                                                      // when the balls
+                                                      // move quickly
+
+    private final CueInput cueInput;                  // Mouse and keyboard
+                                                      // aiming and shots
+
+    private final Opponent opponent;                  // The computer's turns
+                                                      // (with -Dpool.opponent=
+                                                      // ms per decision);
+                                                      // null to play alone
+
+    private final IdleGate idle;                      // Parks the game loop
+                                                      // while the table is
+                                                      // still and nobody
+                                                      // is playing
+
+    private final SimulationLoop simulation;          // Runs the physics on
+                                                      // its own thread (with
+                                                      // -Dpool.simThread=true);
+                                                      // null when the game
+                                                      // loop does it
+    
+    private final ShotLog shotLog;                    // Where every shot is
+                                                      // recorded (with
+                                                      // -Dpool.shotLog=dir);
+                                                      // null otherwise
     
     long poolGameStartTime;
     long poolGameTimeSpentInGame;
 
+    private long framesRendered;                      // A running count,
+                                                      // reported to the
+                                                      // Flight Recorder
+
+    private long updates;                             // Game updates, until
+                                                      // the idle hook has
+                                                      // been checked
+
 
     /**
      * The no-argument constructor. It calls the two-argument
@@ -94,13 +158,50 @@ public class PoolPanel extends GamePanel
         setBackground(Color.white);
         setPreferredSize( new java.awt.Dimension( PWIDTH, PHEIGHT ) );
         
-        // Build the pool table.
-        poolTable = new Table( ( PWIDTH / 2 ) - ( TABLE_WIDTH / 2 ), ( PHEIGHT / 2 ) - TABLE_WIDTH,
-            TABLE_WIDTH, BALL_RADIUS,  POCKET_MULTIPLIER, JAW_MULTIPLIER, BED_FRICTION );
+        // The table may already have been built (see
+        // prepareTable()).
+        poolTable = takeTable();
+        renderer = new TableRenderer( poolTable );
         
+        // No ball moves more than half its radius per
+        // sub-step, and sub-stepping may take up to a
+        // quarter of a frame.
+        integrator = new AdaptiveIntegrator( AdaptiveIntegrator.MAX_TRAVEL,
+            AdaptiveIntegrator.MAX_SUBSTEPS, period / 4 );
+
+        // Aim with the mouse, shoot on release (or with
+        // the keyboard: see CueInput).
+        // While nothing moves, the game loop (and the
+        // simulation thread) sleep until there is input,
+        // waking once a second to keep the clock going.
+        idle = new IdleGate( IDLE_REFRESH );
+        IdleGate simulationIdle = new IdleGate( IDLE_REFRESH );
+
+        cueInput = new CueInput( poolTable, idle, simulationIdle );
+        poolTable.wakeOnCommands( idle, simulationIdle );
+        cueInput.attach( this );
+        wakeOnWindowChanges();
+
+        // Play against the computer, if asked to.
+        Long thinkMillis = Long.getLong( "pool.opponent" );
+
+        opponent = thinkMillis != null
+            ? new Opponent( new ShotSearch( thinkMillis, System.nanoTime() ), cueInput ) : null;
+
+        simulation = Boolean.getBoolean( "pool.simThread" )
+            ? new SimulationLoop( poolTable, integrator, cueInput, opponent, simulationIdle, period )
+            : null;
+
+        shotLog = openShotLog( System.getProperty( "pool.shotLog" ) );
+
+        if ( shotLog != null )
+            poolTable.setShotLog( shotLog, System.currentTimeMillis() );
+
         // Set up the message font.
         poolFont = new Font( "SansSerif", Font.BOLD, 12 );
         metrics = this.getFontMetrics(poolFont );
+        fpsLine = new HudLine( poolFont, 48 );
+        latencyLine = new HudLine( poolFont, 64 );
         
         poolTop = poolGame;                           // A copy of "what we're
                                                       // sending" to the "super"
@@ -108,6 +209,148 @@ public class PoolPanel extends GamePanel
     } // end two-argument constructor
 
 
+    /**
+     * Load a table definition (see <b>TableDefinitionParser</b>
+     * for the file format).
+     * @param path the definition's text file, or null
+     * @return the definition, or null if there is none or it
+     * could not be loaded (we fall back on the standard table)
+     */
+    private static TableDefinition loadDefinition( String path )
+    {
+        if ( path == null )
+            return null;
+
+        try
+        {
+            return new TableDefinitionCache().load( Paths.get( path ) );
+        }
+        catch ( IOException ex )
+        {
+            Logger.getLogger( PoolPanel.class.getName() ).log( Level.WARNING,
+                "Could not load table definition " + path + "; using the standard table", ex );
+            return null;
+
+        } // end try-catch
+
+    } // end method loadDefinition
+
+
+    /**
+     * Start building the pool table on a background thread,
+     * so it is ready by the time Swing has started up and the
+     * panel is created. Call this early in <b>main()</b>; the
+     * panel builds the table itself if nobody did.
+     */
+    static synchronized void prepareTable()
+    {
+        if ( preparedTable != null )
+            return;
+
+        preparedTable = new FutureTask<>( new Callable<Table>()
+        {
+            @Override
+            public Table call()
+            {
+                return buildTable();
+
+            } // end method call
+        } );
+
+        Thread builder = new Thread( preparedTable, "pool-table-builder" );
+        builder.setDaemon( true );
+        builder.start();
+
+    } // end method prepareTable
+
+
+    /**
+     * @return the table prepareTable() built, or a new one
+     */
+    private static synchronized Table takeTable()
+    {
+        FutureTask<Table> prepared = preparedTable;
+        preparedTable = null;
+
+        if ( prepared != null )
+        {
+            try
+            {
+                return prepared.get();
+            }
+            catch ( InterruptedException ex )
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch ( ExecutionException ex )
+            {
+                Logger.getLogger( PoolPanel.class.getName() ).log( Level.WARNING,
+                    "Building the table in the background failed; trying again", ex.getCause() );
+
+            } // end try-catch
+
+        } // end if-then
+
+        return buildTable();
+
+    } // end method takeTable
+
+
+    /**
+     * Build the pool table: from the definition file named by
+     * -Dpool.table=..., if there is one, otherwise from the
+     * constants above.
+     */
+    private static Table buildTable()
+    {
+        TableDefinition definition = loadDefinition( System.getProperty( "pool.table" ) );
+        Table table;
+
+        if ( definition != null )
+        {
+            table = new Table( ( PWIDTH / 2 ) - ( definition.getWidth() / 2 ),
+                ( PHEIGHT / 2 ) - definition.getWidth(), definition );
+        }
+        else
+        {
+            table = new Table( ( PWIDTH / 2 ) - ( TABLE_WIDTH / 2 ), ( PHEIGHT / 2 ) - TABLE_WIDTH,
+                TABLE_WIDTH, BALL_RADIUS,  POCKET_MULTIPLIER, JAW_MULTIPLIER, BED_FRICTION );
+
+        } // end if-then-else
+
+        StartupTimer.tableReady();
+
+        return table;
+
+    } // end method buildTable
+
+
+    /**
+     * Open the shot log, if one was asked for.
+     * @param path the log's directory, or null
+     * @return the log, or null if none was asked for (or it
+     * could not be opened)
+     */
+    private static ShotLog openShotLog( String path )
+    {
+        if ( path == null )
+            return null;
+
+        try
+        {
+            return new ShotLog( Paths.get( path ) );
+        }
+        catch ( IOException ex )
+        {
+            Logger.getLogger( PoolPanel.class.getName() ).log( Level.WARNING,
+                "Could not open shot log " + path + "; shots will not be recorded", ex );
+            return null;
+
+        } // end try-catch
+
+    } // end method openShotLog
+
+
     /**
      * This is the initialization method that should be overridden 
      * by the derived class. This method will only be called once:
@@ -130,18 +373,65 @@ public class PoolPanel extends GamePanel
         // first.
         if ( !super.gameOver )
         {
+            RenderFrameEvent frameEvent = null;       // Only created when
+                                                      // a recording is on
+            
+            if ( FlightEvents.framesEnabled() )
+            {
+                frameEvent = new RenderFrameEvent();
+                frameEvent.begin();
+            
+            } // end if-then
+
             dbg.setColor( Color.black );
             dbg.fillRect( 0, 0, super.getWidth(), super.getHeight() );
 
             dbg.setColor( Color.green );
             dbg.setFont(poolFont );
 
-            // Report the average FPS and UPS at top left.
-            dbg.drawString( "Average FPS/UPS: " + df.format( getAverageFPS() ) + "/"
-                    + df.format( getAverageUPS() ), 20, 25 );
+            // Report the average FPS and UPS at top left
+            // (see HudLine: no Strings are made per frame).
+            fpsLine.begin().text( "Average FPS/UPS: " ).number( getAverageFPS() )
+                .text( "/" ).number( getAverageUPS() ).draw( dbg, 20, 25 );
+
+            // Input-to-frame latency: should stay under a
+            // frame (red if, on average, it doesn't).
+            if ( cueInput.getAverageLatencyMillis() > period / 1.0e6 )
+                dbg.setColor( Color.red );
+
+            latencyLine.begin().text( "Input latency avg/max (ms): " )
+                .number( cueInput.getAverageLatencyMillis() ).text( "/" )
+                .number( cueInput.getMaxLatencyMillis() ).text( "   Power: " )
+                .number( cueInput.getPower() ).draw( dbg, 20, 45 );
+
+            if ( opponent != null && opponent.isComputersTurn() )
+            {
+                dbg.setColor( Color.yellow );
+                dbg.drawString( "Computer to play", 20, 65 );
+
+            } // end if-then
 
             // Display a basic representation of the pool table.
-            poolTable.draw( dbg );
+            renderer.draw( dbg, simulation != null ? simulation.latest() : null );
+            framesRendered++;
+            cueInput.frameDrawn();
+
+            if ( framesRendered == 1 )
+                StartupTimer.frameDrawn();
+
+            if ( frameEvent != null )
+            {
+                frameEvent.end();
+
+                if ( frameEvent.shouldCommit() )
+                {
+                    frameEvent.frame = framesRendered;
+                    frameEvent.ballCount = poolTable.getBallCount();
+                    frameEvent.commit();
+                
+                } // end nested if-then
+
+            } // end nested if-then
 
         } // end if-then
         
@@ -162,25 +452,46 @@ public class PoolPanel extends GamePanel
         // commenced (grab it from the "super").
         poolTop.setTimeSpent(  super.getTimeSpentInGame() );
 
+        checkIdleHook();
+
+        // Carry out what the controllers (the player's
+        // shots, say) have sent the table, unless the
+        // simulation thread is doing that.
+        boolean commanded = simulation == null && poolTable.runCommands();
+
+        // Idle: nothing is moving and nobody has touched
+        // the controls, so there is nothing to update.
+        if ( idle.isIdle() && !commanded )
+            return;
+
+        // Aim the cue.
+        if ( simulation == null )
+            cueInput.applyAim();
+
 
         // Check whether anything actually needs
         // to be done, based on all balls having
-        // stopped moving
-        if ( poolTable.ballsAreMoving() )
+        // stopped moving (the simulation thread, if
+        // there is one, looks after itself)
+        if ( simulation == null && poolTable.ballsAreMoving() )
         {
             
             // Let the user know that we are
             // updating the game state:
             System.out.println( "Updating..." );
             // Update velocities of all balls, and thusly
-            // update the displacement points of all balls.
-            poolTable.update();
-
-            // Throw the balls around on the baize.
-            poolTable.move();
+            // update the displacement points of all balls;
+            // then throw the balls around on the baize (in
+            // as many sub-steps as the fastest ball needs).
+            integrator.tick( poolTable );
             
         } // end if-then
 
+        // Once a shot is over, settle whose turn it is (and
+        // let the computer take its own).
+        if ( simulation == null && opponent != null )
+            opponent.update( poolTable );
+
     } // end method customizeGameUpdate
 
 
@@ -190,15 +501,95 @@ public class PoolPanel extends GamePanel
      * "move-update" cycle runner)
      */
     @Override
-    protected void preGameLoop() {}
+    protected void preGameLoop()
+    {
+        if ( simulation != null )
+            simulation.start();
+
+    } // end method preGameLoop
 
 
     /**
      * This method runs as soon as we are "within"
-     * the game loop.
+     * the game loop: while the table is still and
+     * there is no input, it holds the loop here
+     * (see IdleGate) rather than letting it spin.
+     * <p>
+     * The loop itself is <b>GamePanel</b>'s, so this
+     * relies on it calling the hook on the game loop
+     * thread, once per pass, before the update:<br>
+     * &nbsp&nbsp a) &nbsp called less often, the loop
+     * just idles later, or (never called) not at
+     * all, which <b>checkIdleHook()</b> reports;<br>
+     * &nbsp&nbsp b) &nbsp input during a park wakes it
+     * at once, and input between passes is never
+     * skipped, as <b>IdleGate.isIdle()</b> is false
+     * from the moment the gate is poked.
      */
     @Override
-    protected void insideGameLoop() {}
+    protected void insideGameLoop()
+    {
+        idle.await( poolTable.ballsAreMoving() );
+
+    } // end method insideGameLoop
+
+
+    /**
+     * Check, once, that <b>GamePanel</b> really does
+     * call <b>insideGameLoop()</b>: if a few seconds'
+     * worth of updates have gone by without it, log
+     * that the game loop will never idle.
+     */
+    private void checkIdleHook()
+    {
+        if ( updates < 0L || ++updates < HOOK_CHECK_UPDATES )
+            return;
+
+        updates = -1L;                                // Checked
+
+        if ( idle.getPasses() == 0L )
+        {
+            Logger.getLogger( PoolPanel.class.getName() ).log( Level.WARNING,
+                "GamePanel has not called insideGameLoop() in {0} updates: "
+                + "the game loop will not idle", HOOK_CHECK_UPDATES );
+
+        } // end if-then
+
+    } // end method checkIdleHook
+
+
+    /**
+     * Wake the game loop when the window is shown,
+     * resized or brought back to the front, so the
+     * table is redrawn even while idle.
+     */
+    private void wakeOnWindowChanges()
+    {
+        addComponentListener( new ComponentAdapter()
+        {
+            @Override
+            public void componentResized( ComponentEvent e )
+            {
+                idle.poke();
+            }
+
+            @Override
+            public void componentShown( ComponentEvent e )
+            {
+                idle.poke();
+            }
+        } );
+
+        addFocusListener( new FocusAdapter()
+        {
+            @Override
+            public void focusGained( FocusEvent e )
+            {
+                idle.poke();
+            }
+        } );
+
+    } // end method wakeOnWindowChanges
 
 
     /**
@@ -208,6 +599,38 @@ public class PoolPanel extends GamePanel
      * <i>"You've Won!"</i> might be displayed.
      */
     @Override
-    protected void postGameLoop() {}
+    protected void postGameLoop()
+    {
+        // The simulation thread appends to the shot log as shots
+        // end, so it must be gone before the log is closed (the
+        // log allows one appending thread only). If it will not
+        // stop, leave the log open: the operating system still
+        // writes its pages back.
+        boolean stopped = simulation == null || simulation.stop();
+
+        if ( opponent != null )
+            opponent.shutdown();
+
+        if ( !stopped )
+            return;
+
+        poolTable.dispose();
+
+        if ( shotLog != null )
+        {
+            try
+            {
+                shotLog.close();
+            }
+            catch ( IOException ex )
+            {
+                Logger.getLogger( PoolPanel.class.getName() ).log( Level.WARNING,
+                    "Could not flush the shot log", ex );
+
+            } // end try-catch
+
+        } // end if-then
+
+    } // end method postGameLoop
     
 } //end class PoolPanel
@@ -0,0 +1,36 @@
+package com.aidan3d.pool;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * A Java Flight Recorder event spanning one call to
+ * <b>PoolPanel.customizeGameRender()</b>, i.e., the time
+ * taken to splash one frame into the <b>GamePanel</b>'s
+ * back buffer.
+ * <p>
+ * Disabled by default; enable it by the name
+ * <i>com.aidan3d.pool.RenderFrame</i>.
+ * @see FlightEvents
+ */
+@Name( "com.aidan3d.pool.RenderFrame" )
+@Label( "Render Frame" )
+@Category( { "Pool", "Rendering" } )
+@Description( "One frame drawn by the pool panel" )
+@Enabled( false )
+@StackTrace( false )
+class RenderFrameEvent extends Event
+{
+    @Label( "Frame" )
+    long frame;                                     // A running frame count
+
+    @Label( "Ball Count" )
+    int ballCount;                                  // Balls drawn this frame
+
+} // end class RenderFrameEvent
@@ -0,0 +1,743 @@
+package com.aidan3d.pool;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import math.geom2d.Vector2D;
+
+
+/**
+ * The <b>ReplayExporter</b> turns a recorded match into video
+ * frames, off screen, for highlight reels. The match is played
+ * back on a headless table, tick by tick, and each tick's
+ * <b>BallFrame</b> is handed to a pool of threads that draw it
+ * into an image of their own and write it to disk:<br>
+ * &nbsp&nbsp a) &nbsp as <i>frame-000000.png</i>,
+ * <i>frame-000001.png</i>, ... (fast, light compression);
+ * or<br>
+ * &nbsp&nbsp b) &nbsp (with <i>-raw</i>) as one
+ * <i>frames.raw</i> file of packed <i>bgr24</i> frames, each
+ * written straight from the image's pixels to its own place in
+ * the file, ready for e.g. <i>ffmpeg -f rawvideo -pix_fmt bgr24
+ * -s WxH -r 60 -i frames.raw</i>.
+ * <p>
+ * Only a few frames are ever waiting to be drawn: once the
+ * queue is full, the thread playing the match draws the next
+ * frame itself, so memory stays bounded however long the match.
+ * <p>
+ * Usage: <i>java [-Dpool.table=file.pool]
+ * com.aidan3d.pool.ReplayExporter [-log dir -match id]
+ * [-minutes m] [-out dir] [-raw] [-threads n] [-fps f] [-breaks
+ * dir] [-verify] [-check]</i>. The table is the one the game
+ * plays on (the same <i>pool.table</i> property picks it).
+ * Without a shot log, random shots are played until <i>m</i>
+ * minutes of play (at <i>f</i> frames per second) have been
+ * exported. The report says how much faster than real time the
+ * export ran. With <i>-check</i> nothing is exported: a few
+ * seeded matches are logged and replayed, and the process exits
+ * with status 1 unless every replay ends exactly where its
+ * match did (the <i>test</i> target in <i>build.xml</i> runs
+ * this).
+ * <p>
+ * Breaks come from a <b>BreakCache</b>, kept in memory, and in
+ * <i>dir</i> between runs if given; <i>-verify</i> checks every
+ * cached break against the physics.
+ */
+public final class ReplayExporter implements Closeable
+{
+    private static final int MAX_TICKS = 5000;          // Per shot
+    private static final float PNG_QUALITY = 0.75F;     // Light, fast
+                                                        // deflate
+    private static final long BREAK_CACHE_BYTES = 16L << 20;   // Breaks kept
+                                                                // in memory
+
+    private static final int CHECK_MATCHES = 3;         // Round trips, and
+    private static final int CHECK_SHOTS = 40;          // shots in each
+
+    private final Table table;                          // Drawn, never played
+    private final Path directory;
+    private final FileChannel raw;                      // Null for PNG
+    private final int left;                             // The area each frame
+    private final int top;                              // covers
+    private final int width;
+    private final int height;
+    private final long frameBytes;
+    private final ThreadPoolExecutor pool;
+    private final ThreadLocal<Painter> painters;
+    private final AtomicReference<IOException> failure;
+    private final AdaptiveIntegrator integrator;        // Frames, sub-stepped
+                                                        // as the game does
+    private BreakCache breaks;                          // Null: every break
+                                                        // is played out
+    private long frames;
+
+
+    /**
+     * The four-argument constructor.
+     * @param table the table the match was played on (it is
+     * copied, and only drawn)
+     * @param directory where to put the frames, or null to
+     * play matches back without drawing anything (e.g., to
+     * check a replay)
+     * @param raw true for one file of raw frames, false for PNGs
+     * @param threads how many threads draw frames
+     * @throws IOException if the directory or raw file cannot be
+     * made
+     */
+    public ReplayExporter( Table table, Path directory, boolean raw, int threads ) throws IOException
+    {
+        this.table = new Table( table );
+        this.directory = directory;
+
+        integrator = AdaptiveIntegrator.headless();
+
+        TableRenderer bounds = new TableRenderer( this.table );
+
+        left = bounds.getLeft();
+        top = bounds.getTop();
+        width = bounds.getWidth();
+        height = bounds.getHeight();
+        frameBytes = 3L * width * height;
+
+        if ( directory != null )
+            Files.createDirectories( directory );
+
+        this.raw = ( raw && directory != null )
+            ? FileChannel.open( directory.resolve( "frames.raw" ), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING )
+            : null;
+
+        // The PNG encoder's stream works in memory, not
+        // through a temporary file.
+        ImageIO.setUseCache( false );
+
+        final AtomicInteger count = new AtomicInteger();
+
+        pool = new ThreadPoolExecutor( threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>( 2 * threads ), new ThreadFactory()
+            {
+                @Override
+                public Thread newThread( Runnable r )
+                {
+                    Thread t = new Thread( r, "pool-replay-" + count.incrementAndGet() );
+                    t.setDaemon( true );
+                    return t;
+
+                } // end method newThread
+            }, new ThreadPoolExecutor.CallerRunsPolicy() );
+
+        painters = new ThreadLocal<Painter>()
+        {
+            @Override
+            protected Painter initialValue()
+            {
+                return new Painter();
+
+            } // end method initialValue
+        };
+
+        failure = new AtomicReference<>();
+
+    } // end four-argument constructor
+
+
+    /**
+     * Export one frame: drawn and written in the background
+     * (or here, if the background is busy).
+     * @param frame the balls' positions; the exporter keeps it,
+     * so pass a new frame each time
+     * @throws IOException if an earlier frame could not be
+     * written
+     */
+    void submit( final BallFrame frame ) throws IOException
+    {
+        IOException failed = failure.get();
+
+        if ( failed != null )
+            throw failed;
+
+        final long index = frames++;
+
+        if ( directory == null )
+            return;                                 // Not drawing
+
+        pool.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    painters.get().paint( index, frame );
+                }
+                catch ( IOException ex )
+                {
+                    failure.compareAndSet( null, ex );
+
+                } // end try-catch
+
+            } // end method run
+        } );
+
+    } // end method submit
+
+
+    /**
+     * Take breaks from a cache: a break played before is drawn
+     * from the ticks it kept, with no physics at all.
+     * @param breaks the cache, or null to play every break out
+     */
+    void setBreakCache( BreakCache breaks )
+    {
+        this.breaks = breaks;
+
+    } // end method setBreakCache
+
+
+    /**
+     * Play a table until the balls stop, exporting every frame.
+     * Frames are sub-stepped just as the game sub-steps them
+     * (but with no time budget), so a replay ends where the
+     * game did.
+     * @param playing the table (it is played on)
+     * @throws IOException if a frame could not be written
+     */
+    public void playOut( Table playing ) throws IOException
+    {
+        BreakCache.Outcome cached = breaks == null ? null : breaks.play( playing );
+
+        if ( cached != null )
+        {
+            for ( int tick = 0; tick < cached.getTicks(); tick++ )
+            {
+                BallFrame frame = new BallFrame( cached.getBallCount() );
+                cached.writeFrame( tick, frame );
+                frame.setTick( frames );
+                submit( frame );
+
+            } // end for
+
+            return;
+
+        } // end if-then
+
+        for ( int tick = 0; tick < MAX_TICKS && playing.ballsAreMoving(); tick++ )
+        {
+            integrator.tick( playing );
+
+            BallFrame frame = new BallFrame( playing.getBallCount() );
+            playing.writeFrame( frame );
+            frame.setTick( frames );
+            submit( frame );
+
+        } // end for
+
+    } // end method playOut
+
+
+    /**
+     * Play back a logged match: the opening break, then each
+     * shot in turn, with any balls placed by hand, and any
+     * re-racks, in between.
+     * <p>
+     * The game starts logging during the break (see
+     * <b>Table.setShotLog()</b>), so when the table given is
+     * still breaking, that break is the match's first record:
+     * it is played out as it stands, not struck again.
+     * @param log the shot log
+     * @param matchId which match
+     * @param playing the table as it was when the match's log
+     * began (it is played on)
+     * @return the number of records (shots, placements and
+     * re-racks) played
+     * @throws IOException if the log cannot be read, or a
+     * frame written
+     */
+    public int replay( ShotLogReader log, long matchId, Table playing ) throws IOException
+    {
+        ShotRecord shot = new ShotRecord();
+        int played = 0;
+
+        if ( playing.ballsAreMoving() )
+        {
+            playOut( playing );
+            played++;                               // Record 1: the break
+
+        } // end if-then
+
+        while ( log.find( matchId, played + 1, shot ) )
+        {
+            if ( shot.isShot() )
+            {
+                playing.shoot( new Vector2D( shot.getCueVx(), shot.getCueVy() ), shot.getTop(), shot.getSide() );
+                playOut( playing );
+            }
+            else
+            {
+                if ( shot.isReset() )
+                    playing.reset();
+                else
+                    playing.placeBall( shot.getPlacedBall(), new Vector2D( shot.getCueVx(), shot.getCueVy() ) );
+
+                // Show the balls where they now sit.
+                BallFrame frame = new BallFrame( playing.getBallCount() );
+                playing.writeFrame( frame );
+                frame.setTick( frames );
+                submit( frame );
+
+            } // end if-then-else
+
+            played++;
+
+        } // end while
+
+        return played;
+
+    } // end method replay
+
+
+    /**
+     * @return the frames exported so far
+     */
+    public long getFrameCount()
+    {
+        return frames;
+    }
+
+
+    /**
+     * Wait for every frame to be written, and close the files.
+     * @throws IOException if any frame could not be written
+     */
+    @Override
+    public void close() throws IOException
+    {
+        pool.shutdown();
+
+        try
+        {
+            pool.awaitTermination( Long.MAX_VALUE, TimeUnit.NANOSECONDS );
+        }
+        catch ( InterruptedException ex )
+        {
+            Thread.currentThread().interrupt();
+
+        } // end try-catch
+
+        if ( raw != null )
+            raw.close();
+
+        IOException failed = failure.get();
+
+        if ( failed != null )
+            throw failed;
+
+    } // end method close
+
+
+    /**
+     * One thread's image, renderer and encoder, reused for
+     * every frame it draws.
+     */
+    private final class Painter
+    {
+        private final TableRenderer renderer;
+        private final BufferedImage image;
+        private final Graphics2D g;
+        private final ByteBuffer pixels;            // The image's own bytes
+        private final ImageWriter png;
+        private final ImageWriteParam pngParam;
+        private final Bytes encoded;
+
+        Painter()
+        {
+            renderer = new TableRenderer( table );
+            image = new BufferedImage( width, height, BufferedImage.TYPE_3BYTE_BGR );
+            pixels = ByteBuffer.wrap( ( ( DataBufferByte )image.getRaster().getDataBuffer() ).getData() );
+
+            // Draw in the table's own (screen) coordinates.
+            g = image.createGraphics();
+            g.translate( -left, -top );
+
+            png = ImageIO.getImageWritersByFormatName( "png" ).next();
+            pngParam = png.getDefaultWriteParam();
+
+            if ( pngParam.canWriteCompressed() )
+            {
+                pngParam.setCompressionMode( ImageWriteParam.MODE_EXPLICIT );
+                pngParam.setCompressionQuality( PNG_QUALITY );
+
+            } // end if-then
+
+            encoded = new Bytes();
+
+        } // end no-argument constructor
+
+
+        void paint( long index, BallFrame frame ) throws IOException
+        {
+            g.setColor( Color.black );
+            g.fillRect( left, top, width, height );
+            renderer.drawFrame( g, frame );
+
+            if ( raw != null )
+            {
+                // Each frame has its own slot in the file, so
+                // the threads never wait on one another.
+                ByteBuffer out = pixels.duplicate();
+                long at = index * frameBytes;
+
+                while ( out.hasRemaining() )
+                    at += raw.write( out, at );
+
+                return;
+
+            } // end if-then
+
+            encoded.reset();
+
+            try ( ImageOutputStream stream = new MemoryCacheImageOutputStream( encoded ) )
+            {
+                png.setOutput( stream );
+                png.write( null, new IIOImage( image, null, null ), pngParam );
+
+            } // end try-with-resources
+
+            Path file = directory.resolve( String.format( "frame-%06d.png", index ) );
+
+            try ( FileChannel out = FileChannel.open( file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ) )
+            {
+                ByteBuffer bytes = encoded.contents();
+
+                while ( bytes.hasRemaining() )
+                    out.write( bytes );
+
+            } // end try-with-resources
+
+        } // end method paint
+
+    } // end class Painter
+
+
+    /**
+     * A byte stream whose contents can be written out without
+     * copying them first.
+     */
+    private static final class Bytes extends ByteArrayOutputStream
+    {
+        Bytes()
+        {
+            super( 1 << 16 );
+        }
+
+
+        ByteBuffer contents()
+        {
+            return ByteBuffer.wrap( buf, 0, count );
+        }
+
+    } // end class Bytes
+
+
+    /**
+     * @return true if the cue ball, or every other ball, has
+     * been sunk
+     */
+    private static boolean isOver( Table table, BallFrame state )
+    {
+        table.writeFrame( state );
+
+        if ( state.isPocketed( 0 ) )
+            return true;
+
+        for ( int i = 1; i < state.getCount(); i++ )
+        {
+            if ( !state.isPocketed( i ) )
+                return false;
+
+        } // end for
+
+        return true;
+
+    } // end method isOver
+
+
+    /**
+     * Check that a logged match replays to where it was played.
+     * A seeded match is played as the game plays it (logged from
+     * the break on, every frame sub-stepped, the cue ball put
+     * back on its spot after a scratch and the balls racked
+     * again once they are all down). Its log is then replayed on
+     * a new table, without drawing, and the two tables compared,
+     * along with the frames each took.
+     * <p>
+     * No break cache is used: with the rack intact every shot
+     * looks like a break, and the cache would play it out with
+     * its own integrator rather than <b>playOut()</b>'s.
+     * @param definition the table, or null for the standard one
+     * @param seed picks the shots (and is the match id)
+     * @param shots how many shots to play after the break
+     * @return true if the replay ends exactly where the match
+     * did, in as many frames
+     * @throws IOException if the log cannot be written or read
+     */
+    static boolean roundTrip( TableDefinition definition, long seed, int shots ) throws IOException
+    {
+        Path directory = Files.createTempDirectory( "pool-replay-check" );
+        Table live = SoakHarness.gameTable( definition );
+        Table replayed = SoakHarness.gameTable( definition );
+        AdaptiveIntegrator integrator = AdaptiveIntegrator.headless();
+        SplittableRandom random = new SplittableRandom( seed );
+        long frames = 0L;                               // Played live
+        long replayedFrames;
+        int played;
+
+        try
+        {
+            try ( ShotLog log = new ShotLog( directory ) )
+            {
+                live.setShotLog( log, seed );           // Mid-break, as the
+                                                        // game attaches it
+                for ( ; live.ballsAreMoving(); frames++ )
+                    integrator.tick( live );
+
+                for ( int i = 0; i < shots; i++ )
+                {
+                    // A re-rack or a ball in hand is replayed
+                    // as one frame.
+                    if ( live.countPocketed() == live.getBallCount() - 1 )
+                    {
+                        live.reset();
+                        frames++;
+                    }
+                    else if ( live.isCuePocketed() )
+                    {
+                        live.placeBall( 0, live.getCueSpot() );
+                        frames++;
+
+                    } // end if-then-else
+
+                    long before = live.getStateHash();
+                    double angle = random.nextDouble( 2.0 * Math.PI );
+                    double power = random.nextDouble( CueInput.MIN_POWER, CueInput.MAX_POWER );
+
+                    live.shoot( new Vector2D( power * Math.cos( angle ), power * Math.sin( angle ) ),
+                        random.nextDouble( -1.0, 2.0 ), random.nextDouble( -0.2, 0.2 ) );
+
+                    for ( ; live.ballsAreMoving(); frames++ )
+                        integrator.tick( live );
+
+                    // A cue ball resting against another ball
+                    // cannot be struck away from it: take it in
+                    // hand, so the rest of the match is played.
+                    if ( live.getStateHash() == before )
+                    {
+                        live.placeBall( 0, live.getCueSpot() );
+                        frames++;
+
+                    } // end if-then
+
+                } // end for
+
+            } // end try-with-resources
+
+            try ( ReplayExporter exporter = new ReplayExporter( replayed, null, false, 1 ) )
+            {
+                played = exporter.replay( new ShotLogReader( directory ), seed, replayed );
+                replayedFrames = exporter.getFrameCount();
+
+            } // end try-with-resources
+
+            BallFrame want = new BallFrame( live.getBallCount() );
+            BallFrame got = new BallFrame( replayed.getBallCount() );
+
+            live.writeFrame( want );
+            replayed.writeFrame( got );
+
+            boolean same = replayed.getStateHash() == live.getStateHash() && replayedFrames == frames;
+
+            for ( int i = 0; same && i < want.getCount(); i++ )
+            {
+                same = want.getX( i ) == got.getX( i ) && want.getY( i ) == got.getY( i )
+                    && want.isPocketed( i ) == got.isPocketed( i );
+
+            } // end for
+
+            System.out.printf( "Match %d: %d records, state %016x in %d frames played, %016x in %d replayed: %s%n",
+                seed, played, live.getStateHash(), frames, replayed.getStateHash(), replayedFrames,
+                same ? "same" : "DIFFERENT" );
+
+            return same;
+        }
+        finally
+        {
+            live.dispose();
+            replayed.dispose();
+
+            try ( DirectoryStream<Path> files = Files.newDirectoryStream( directory ) )
+            {
+                for ( Path file : files )
+                    Files.deleteIfExists( file );
+
+                Files.deleteIfExists( directory );
+            }
+            catch ( IOException ex )
+            {
+                // A mapped segment may not go until it has been
+                // collected; it is only a temporary file.
+
+            } // end try-catch
+
+        } // end try-finally
+
+    } // end method roundTrip
+
+
+    /**
+     * Export a match (or a run of random shots).
+     * @param args see the class comment
+     * @throws IOException if the log cannot be read or the
+     * frames written
+     */
+    public static void main( String[] args ) throws IOException
+    {
+        Path log = null;
+        long match = 0L;
+        double minutes = 10.0;
+        Path out = Paths.get( "replay" );
+        boolean raw = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        double fps = 60.0;
+        Path breaks = null;
+        boolean verify = false;
+        boolean check = false;
+
+        for ( int i = 0; i < args.length; i++ )
+        {
+            switch ( args[ i ] )
+            {
+                case "-log":        log = Paths.get( args[ ++i ] ); break;
+                case "-match":      match = Long.parseLong( args[ ++i ] ); break;
+                case "-minutes":    minutes = Double.parseDouble( args[ ++i ] ); break;
+                case "-out":        out = Paths.get( args[ ++i ] ); break;
+                case "-raw":        raw = true; break;
+                case "-threads":    threads = Integer.parseInt( args[ ++i ] ); break;
+                case "-fps":        fps = Double.parseDouble( args[ ++i ] ); break;
+                case "-breaks":     breaks = Paths.get( args[ ++i ] ); break;
+                case "-verify":     verify = true; break;
+                case "-check":      check = true; break;
+                default:
+                    System.err.println( "Unknown option " + args[ i ] );
+                    System.exit( 2 );
+
+            } // end switch
+
+        } // end for
+
+        // The table the game plays on.
+        String tableFile = System.getProperty( "pool.table" );
+        TableDefinition definition = ( tableFile != null )
+            ? new TableDefinitionCache().load( Paths.get( tableFile ) ) : null;
+
+        if ( check )
+        {
+            boolean passed = true;
+
+            for ( int m = 1; m <= CHECK_MATCHES; m++ )
+                passed &= roundTrip( definition, m, CHECK_SHOTS );
+
+            System.out.println( passed ? "PASS" : "FAIL" );
+
+            if ( !passed )
+                System.exit( 1 );
+
+            return;
+
+        } // end if-then
+
+        Table playing = SoakHarness.gameTable( definition );
+        long began = System.nanoTime();
+        long frames;
+        BreakCache cache = new BreakCache( BREAK_CACHE_BYTES, breaks, verify );
+
+        try ( ReplayExporter exporter = new ReplayExporter( playing, out, raw, threads ) )
+        {
+            exporter.setBreakCache( cache );
+
+            if ( log != null )
+            {
+                System.out.println( exporter.replay( new ShotLogReader( log ), match, playing )
+                    + " shots, placements and re-racks replayed" );
+            }
+            else
+            {
+                SplittableRandom random = new SplittableRandom( 20150101L );
+                long wanted = ( long )( minutes * 60.0 * fps );
+
+                BallFrame state = new BallFrame( playing.getBallCount() );
+
+                exporter.playOut( playing );
+
+                while ( exporter.getFrameCount() < wanted )
+                {
+                    // A fresh rack (and break) once the table is
+                    // cleared, or the cue ball goes down.
+                    if ( isOver( playing, state ) )
+                    {
+                        playing.dispose();
+                        playing = SoakHarness.gameTable( definition );
+                        exporter.playOut( playing );
+
+                    } // end if-then
+
+                    double angle = random.nextDouble( 2.0 * Math.PI );
+                    double power = random.nextDouble( CueInput.MIN_POWER, CueInput.MAX_POWER );
+
+                    playing.shoot( new Vector2D( power * Math.cos( angle ), power * Math.sin( angle ) ) );
+                    exporter.playOut( playing );
+
+                } // end while
+
+            } // end if-then-else
+
+            frames = exporter.getFrameCount();
+
+        } // end try-with-resources
+
+        playing.dispose();
+
+        double seconds = ( System.nanoTime() - began ) / 1.0e9;
+
+        System.out.printf( "%d frames in %.1f s (%.0f frames/s): %.1fx real time at %.0f fps%n",
+            frames, seconds, frames / seconds, frames / fps / seconds, fps );
+        System.out.printf( "Breaks: %d cached (%d from disk), %d played out, %d mismatched%n",
+            cache.getHits(), cache.getDiskHits(), cache.getMisses(), cache.getMismatches() );
+
+    } // end method main
+
+} // end class ReplayExporter
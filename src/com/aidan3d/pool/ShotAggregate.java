@@ -0,0 +1,81 @@
+package com.aidan3d.pool;
+
+
+/**
+ * A <b>ShotAggregate</b> is the count, sum, minimum and maximum
+ * of one column over the shots a <b>ShotQuery</b> selected.
+ * Partial aggregates from each chunk of the store are merged
+ * into one.
+ */
+public final class ShotAggregate
+{
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+
+    void add( long rows, double rowSum, double rowMin, double rowMax )
+    {
+        count += rows;
+        sum += rowSum;
+        min = Math.min( min, rowMin );
+        max = Math.max( max, rowMax );
+
+    } // end method add
+
+
+    void merge( ShotAggregate other )
+    {
+        add( other.count, other.sum, other.min, other.max );
+
+    } // end method merge
+
+
+    public long getCount()
+    {
+        return count;
+    }
+
+
+    public double getSum()
+    {
+        return sum;
+    }
+
+
+    /**
+     * @return the mean, or NaN if nothing was selected
+     */
+    public double getMean()
+    {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+
+    /**
+     * @return the smallest value, or NaN if nothing was selected
+     */
+    public double getMin()
+    {
+        return count == 0 ? Double.NaN : min;
+    }
+
+
+    /**
+     * @return the largest value, or NaN if nothing was selected
+     */
+    public double getMax()
+    {
+        return count == 0 ? Double.NaN : max;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return String.format( "n=%d mean=%.4f min=%.4f max=%.4f", count, getMean(), getMin(), getMax() );
+
+    } // end method toString
+
+} // end class ShotAggregate
@@ -0,0 +1,76 @@
+package com.aidan3d.pool;
+
+
+/**
+ * The fields of a recorded shot that a <b>ShotQuery</b> can
+ * filter, aggregate or group on. Each one is stored as its own
+ * primitive array in a <b>ShotStore</b>: whole numbers as
+ * <i>int</i>s, measurements as <i>float</i>s.
+ * <p>
+ * A few columns are worked out from the raw <b>ShotRecord</b>
+ * when it is loaded, so that common questions ("how often does
+ * the break pot a ball?") need no per-row logic at query time.
+ */
+public enum ShotColumn
+{
+    SHOT( true ),                   // Shot number in the match (1 is
+                                    // the break)
+    TICKS( true ),                  // Physics ticks until the balls
+                                    // stopped
+    BALL_HITS( true ),
+    WALL_HITS( true ),
+    COLLISIONS( true ),             // Ball plus rail hits
+    OBJECT_BALLS( true ),           // Object balls sunk on the shot
+    SCRATCH( true ),                // 1 if the cue ball went down
+    POTTED( true ),                 // 1 if an object ball went down
+                                    // and the cue ball did not
+    CUE_SPEED( false ),             // Pixels per frame, as struck
+    TOP( false ),
+    SIDE( false ),
+    DURATION_MILLIS( false );
+
+    private final boolean integer;
+    private int slot;                               // Index among the int
+                                                    // or float columns
+
+    static final int INT_COUNT;
+    static final int FLOAT_COUNT;
+
+    static
+    {
+        int ints = 0;
+        int floats = 0;
+
+        for ( ShotColumn c : values() )
+        {
+            c.slot = c.integer ? ints++ : floats++;
+
+        } // end for
+
+        INT_COUNT = ints;
+        FLOAT_COUNT = floats;
+
+    } // end static initializer
+
+
+    ShotColumn( boolean integer )
+    {
+        this.integer = integer;
+    }
+
+
+    /**
+     * @return true if the column holds whole numbers
+     */
+    public boolean isInteger()
+    {
+        return integer;
+    }
+
+
+    int slot()
+    {
+        return slot;
+    }
+
+} // end enum ShotColumn
@@ -0,0 +1,337 @@
+package com.aidan3d.pool;
+
+import java.util.Arrays;
+import java.util.Map;
+
+
+/**
+ * <b>ShotColumns</b> is one chunk of a <b>ShotStore</b>: up to
+ * <i>capacity</i> shots, stored column by column, one primitive
+ * array per <b>ShotColumn</b> (plus the match ids).
+ * <p>
+ * The query "kernels" here each make one tight pass over one
+ * column: a filter narrows a selection vector (one byte per
+ * row, 1 = still selected), an aggregate sums what is left.
+ * Loops like these over plain arrays are what the JIT compiles
+ * best (it unrolls them, and uses SIMD instructions where it
+ * can), and they touch only the columns a query names.
+ */
+final class ShotColumns
+{
+    private static final int MAX_BUCKETS = 1 << 16;    // Per group-by
+
+    private final long[] matchIds;
+    private final int[][] ints;                         // By ShotColumn slot
+    private final float[][] floats;
+    private int size;
+
+
+    /**
+     * The one-argument constructor.
+     * @param capacity the most shots the chunk can hold
+     */
+    ShotColumns( int capacity )
+    {
+        matchIds = new long[ capacity ];
+        ints = new int[ ShotColumn.INT_COUNT ][ capacity ];
+        floats = new float[ ShotColumn.FLOAT_COUNT ][ capacity ];
+
+    } // end one-argument constructor
+
+
+    /**
+     * Add one shot, working out the derived columns.
+     */
+    void add( ShotRecord r )
+    {
+        int i = size++;
+
+        matchIds[ i ] = r.getMatchId();
+        setInt( ShotColumn.SHOT, i, r.getShot() );
+        setInt( ShotColumn.TICKS, i, r.getTicks() );
+        setInt( ShotColumn.BALL_HITS, i, r.getBallHits() );
+        setInt( ShotColumn.WALL_HITS, i, r.getWallHits() );
+        setInt( ShotColumn.COLLISIONS, i, r.getBallHits() + r.getWallHits() );
+        setInt( ShotColumn.OBJECT_BALLS, i, r.getObjectBallsPocketed() );
+        setInt( ShotColumn.SCRATCH, i, r.isScratch() ? 1 : 0 );
+        setInt( ShotColumn.POTTED, i, ( r.getObjectBallsPocketed() > 0 && !r.isScratch() ) ? 1 : 0 );
+        setFloat( ShotColumn.CUE_SPEED, i, r.getCueSpeed() );
+        setFloat( ShotColumn.TOP, i, r.getTop() );
+        setFloat( ShotColumn.SIDE, i, r.getSide() );
+        setFloat( ShotColumn.DURATION_MILLIS, i, r.getDurationNanos() / 1.0e6 );
+
+    } // end method add
+
+
+    private void setInt( ShotColumn c, int i, int value )
+    {
+        ints[ c.slot() ][ i ] = value;
+    }
+
+
+    private void setFloat( ShotColumn c, int i, double value )
+    {
+        floats[ c.slot() ][ i ] = ( float )value;
+    }
+
+
+    int size()
+    {
+        return size;
+    }
+
+
+    boolean isFull()
+    {
+        return size == matchIds.length;
+    }
+
+
+    /**
+     * @return a selection vector with every row selected
+     */
+    byte[] selectAll()
+    {
+        byte[] selection = new byte[ size ];
+        Arrays.fill( selection, ( byte )1 );
+
+        return selection;
+
+    } // end method selectAll
+
+
+    /**
+     * Keep only rows whose value lies in [lo, hi].
+     */
+    void filter( ShotColumn c, double lo, double hi, byte[] selection )
+    {
+        int n = size;
+
+        if ( c.isInteger() )
+        {
+            int[] v = ints[ c.slot() ];
+            int low = ( lo <= Integer.MIN_VALUE ) ? Integer.MIN_VALUE : ( int )Math.ceil( lo );
+            int high = ( hi >= Integer.MAX_VALUE ) ? Integer.MAX_VALUE : ( int )Math.floor( hi );
+
+            for ( int i = 0; i < n; i++ )
+                selection[ i ] &= ( v[ i ] >= low & v[ i ] <= high ) ? 1 : 0;
+        }
+        else
+        {
+            float[] v = floats[ c.slot() ];
+
+            for ( int i = 0; i < n; i++ )
+                selection[ i ] &= ( v[ i ] >= lo & v[ i ] <= hi ) ? 1 : 0;
+
+        } // end if-then-else
+
+    } // end method filter
+
+
+    /**
+     * Keep only rows from one match.
+     */
+    void filterMatch( long matchId, byte[] selection )
+    {
+        int n = size;
+        long[] v = matchIds;
+
+        for ( int i = 0; i < n; i++ )
+            selection[ i ] &= ( v[ i ] == matchId ) ? 1 : 0;
+
+    } // end method filterMatch
+
+
+    /**
+     * Add the selected rows of a column into an aggregate.
+     */
+    void aggregate( ShotColumn c, byte[] selection, ShotAggregate into )
+    {
+        int n = size;
+        long count = 0L;
+        double sum = 0.0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        if ( c.isInteger() )
+        {
+            int[] v = ints[ c.slot() ];
+            long total = 0L;
+            int low = Integer.MAX_VALUE;
+            int high = Integer.MIN_VALUE;
+
+            for ( int i = 0; i < n; i++ )
+            {
+                if ( selection[ i ] != 0 )
+                {
+                    int x = v[ i ];
+                    count++;
+                    total += x;
+                    low = Math.min( low, x );
+                    high = Math.max( high, x );
+
+                } // end if-then
+
+            } // end for
+
+            sum = total;
+
+            if ( count > 0 )
+            {
+                min = low;
+                max = high;
+
+            } // end if-then
+        }
+        else
+        {
+            float[] v = floats[ c.slot() ];
+
+            for ( int i = 0; i < n; i++ )
+            {
+                if ( selection[ i ] != 0 )
+                {
+                    double x = v[ i ];
+                    count++;
+                    sum += x;
+                    min = Math.min( min, x );
+                    max = Math.max( max, x );
+
+                } // end if-then
+
+            } // end for
+
+        } // end if-then-else
+
+        into.add( count, sum, min, max );
+
+    } // end method aggregate
+
+
+    /**
+     * @return how many rows are still selected
+     */
+    static int count( byte[] selection )
+    {
+        int count = 0;
+
+        for ( int i = 0; i < selection.length; i++ )
+            count += selection[ i ];
+
+        return count;
+
+    } // end method count
+
+
+    /**
+     * Group the selected rows into buckets of width
+     * <i>width</i> on one column, and aggregate another column
+     * in each bucket.
+     * @param into partial aggregates, keyed by bucket number
+     * (bucket b holds keys in [b * width, (b + 1) * width))
+     */
+    void group( ShotColumn key, double width, ShotColumn value, byte[] selection,
+        Map<Long, ShotAggregate> into )
+    {
+        int n = size;
+        double[] keys = widen( key );
+        double[] values = widen( value );
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+
+        // Pass one: the range of buckets in use.
+        for ( int i = 0; i < n; i++ )
+        {
+            if ( selection[ i ] != 0 )
+            {
+                long b = ( long )Math.floor( keys[ i ] / width );
+                first = Math.min( first, b );
+                last = Math.max( last, b );
+
+            } // end if-then
+
+        } // end for
+
+        if ( first > last )
+            return;                                     // Nothing selected
+
+        if ( last - first >= MAX_BUCKETS )
+            throw new IllegalArgumentException( "Width " + width + " makes more than "
+                + MAX_BUCKETS + " groups" );
+
+        int buckets = ( int )( last - first + 1 );
+        long[] counts = new long[ buckets ];
+        double[] sums = new double[ buckets ];
+        double[] mins = new double[ buckets ];
+        double[] maxes = new double[ buckets ];
+
+        Arrays.fill( mins, Double.POSITIVE_INFINITY );
+        Arrays.fill( maxes, Double.NEGATIVE_INFINITY );
+
+        // Pass two: accumulate each row into its bucket.
+        for ( int i = 0; i < n; i++ )
+        {
+            if ( selection[ i ] != 0 )
+            {
+                int b = ( int )( ( long )Math.floor( keys[ i ] / width ) - first );
+                double x = values[ i ];
+                counts[ b ]++;
+                sums[ b ] += x;
+                mins[ b ] = Math.min( mins[ b ], x );
+                maxes[ b ] = Math.max( maxes[ b ], x );
+
+            } // end if-then
+
+        } // end for
+
+        for ( int b = 0; b < buckets; b++ )
+        {
+            if ( counts[ b ] == 0 )
+                continue;
+
+            ShotAggregate partial = into.get( first + b );
+
+            if ( partial == null )
+            {
+                partial = new ShotAggregate();
+                into.put( first + b, partial );
+
+            } // end if-then
+
+            partial.add( counts[ b ], sums[ b ], mins[ b ], maxes[ b ] );
+
+        } // end for
+
+    } // end method group
+
+
+    /**
+     * @return a column's values as doubles (for grouping, where
+     * key and value columns may be of different types)
+     */
+    private double[] widen( ShotColumn c )
+    {
+        int n = size;
+        double[] out = new double[ n ];
+
+        if ( c.isInteger() )
+        {
+            int[] v = ints[ c.slot() ];
+
+            for ( int i = 0; i < n; i++ )
+                out[ i ] = v[ i ];
+        }
+        else
+        {
+            float[] v = floats[ c.slot() ];
+
+            for ( int i = 0; i < n; i++ )
+                out[ i ] = v[ i ];
+
+        } // end if-then-else
+
+        return out;
+
+    } // end method widen
+
+} // end class ShotColumns
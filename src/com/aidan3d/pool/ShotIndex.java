@@ -0,0 +1,236 @@
+package com.aidan3d.pool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+/**
+ * A <b>ShotIndex</b> is the sparse index of one <b>ShotLog</b>
+ * segment: for each match in the segment it remembers where
+ * the match's first shot sits, and then every
+ * <i>INTERVAL</i>-th shot after that. To find a shot, start at
+ * the nearest indexed shot at or before it and scan forward.
+ * <p>
+ * On disk (beside the segment, as <i>.idx</i>) an index is
+ * just its entries, 16 bytes each: match id (long), shot
+ * number (int), record number within the segment (int).
+ */
+final class ShotIndex
+{
+    static final int INTERVAL = 64;                     // Shots of a match
+                                                        // between entries
+    private static final int ENTRY_SIZE = 16;
+
+    private long[] matchIds;
+    private int[] shots;
+    private int[] records;
+    private int count;
+
+    // Per match, the shots seen since its last entry: an open-
+    // addressed table (linear probing, never more than half full),
+    // so noting a shot allocates nothing.
+    private long[] seenMatch;
+    private int[] seenCount;                            // Shots seen + 1;
+                                                        // 0 is an empty slot
+    private int seenSize;
+
+
+    /**
+     * The no-argument constructor: an empty index.
+     */
+    ShotIndex()
+    {
+        matchIds = new long[ 64 ];
+        shots = new int[ 64 ];
+        records = new int[ 64 ];
+        seenMatch = new long[ 16 ];
+        seenCount = new int[ 16 ];
+
+    } // end no-argument constructor
+
+
+    /**
+     * Tell the index a record has been appended; it decides
+     * whether the record is worth an entry.
+     */
+    void note( long matchId, int shot, int record )
+    {
+        int slot = slot( matchId );
+
+        if ( seenCount[ slot ] == 0 || seenCount[ slot ] >= INTERVAL )
+        {
+            add( matchId, shot, record );
+
+            if ( seenCount[ slot ] == 0 )
+            {
+                seenMatch[ slot ] = matchId;
+                seenSize++;
+
+            } // end if-then
+
+            seenCount[ slot ] = 1;
+
+            if ( seenSize * 2 > seenMatch.length )
+                growSeen();
+        }
+        else
+        {
+            seenCount[ slot ]++;
+
+        } // end if-then-else
+
+    } // end method note
+
+
+    /**
+     * @return the slot holding the match, or the empty slot
+     * where it belongs
+     */
+    private int slot( long matchId )
+    {
+        int mask = seenMatch.length - 1;
+        int slot = (int) ZobristHash.mix( matchId ) & mask;
+
+        while ( seenCount[ slot ] != 0 && seenMatch[ slot ] != matchId )
+            slot = ( slot + 1 ) & mask;
+
+        return slot;
+
+    } // end method slot
+
+
+    private void growSeen()
+    {
+        long[] oldMatch = seenMatch;
+        int[] oldCount = seenCount;
+
+        seenMatch = new long[ oldMatch.length * 2 ];
+        seenCount = new int[ oldCount.length * 2 ];
+
+        for ( int i = 0; i < oldMatch.length; i++ )
+        {
+            if ( oldCount[ i ] != 0 )
+            {
+                int slot = slot( oldMatch[ i ] );
+                seenMatch[ slot ] = oldMatch[ i ];
+                seenCount[ slot ] = oldCount[ i ];
+
+            } // end if-then
+
+        } // end for
+
+    } // end method growSeen
+
+
+    private void add( long matchId, int shot, int record )
+    {
+        if ( count == matchIds.length )
+        {
+            matchIds = Arrays.copyOf( matchIds, count * 2 );
+            shots = Arrays.copyOf( shots, count * 2 );
+            records = Arrays.copyOf( records, count * 2 );
+
+        } // end if-then
+
+        matchIds[ count ] = matchId;
+        shots[ count ] = shot;
+        records[ count ] = record;
+        count++;
+
+    } // end method add
+
+
+    /**
+     * @return the record number to start scanning from for the
+     * given shot, or -1 if the match has no shot at or before
+     * it in this segment
+     */
+    int floor( long matchId, int shot )
+    {
+        int best = -1;
+        int bestShot = Integer.MIN_VALUE;
+
+        for ( int i = 0; i < count; i++ )
+        {
+            if ( matchIds[ i ] == matchId && shots[ i ] <= shot && shots[ i ] > bestShot )
+            {
+                best = records[ i ];
+                bestShot = shots[ i ];
+
+            } // end if-then
+
+        } // end for
+
+        return best;
+
+    } // end method floor
+
+
+    int size()
+    {
+        return count;
+    }
+
+
+    /**
+     * @return a copy that later <b>note()</b>s will not touch
+     * (for writing out from another thread)
+     */
+    ShotIndex snapshot()
+    {
+        ShotIndex copy = new ShotIndex();
+
+        copy.matchIds = Arrays.copyOf( matchIds, Math.max( count, 1 ) );
+        copy.shots = Arrays.copyOf( shots, Math.max( count, 1 ) );
+        copy.records = Arrays.copyOf( records, Math.max( count, 1 ) );
+        copy.count = count;
+
+        return copy;
+
+    } // end method snapshot
+
+
+    void write( Path file ) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( count * ENTRY_SIZE );
+
+        for ( int i = 0; i < count; i++ )
+        {
+            buffer.putLong( matchIds[ i ] ).putInt( shots[ i ] ).putInt( records[ i ] );
+
+        } // end for
+
+        buffer.flip();
+
+        try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ) )
+        {
+            while ( buffer.hasRemaining() )
+                channel.write( buffer );
+
+        } // end try-with-resources
+
+    } // end method write
+
+
+    static ShotIndex read( Path file ) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap( Files.readAllBytes( file ) );
+        ShotIndex index = new ShotIndex();
+
+        while ( buffer.remaining() >= ENTRY_SIZE )
+        {
+            index.add( buffer.getLong(), buffer.getInt(), buffer.getInt() );
+
+        } // end while
+
+        return index;
+
+    } // end method read
+
+} // end class ShotIndex
@@ -0,0 +1,468 @@
+package com.aidan3d.pool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * A <b>ShotLog</b> keeps every shot of every match on disk, for
+ * analysis later (see <b>ShotLogReader</b>).
+ * <p>
+ * The log is a directory of append-only "segments"
+ * (<i>shots-000000.seg</i>, <i>shots-000001.seg</i>, ...),
+ * each one a fixed-size file holding a 64-byte header and then
+ * up to <i>capacity</i> <b>ShotRecord</b>s of
+ * <i>ShotRecord.SIZE</i> bytes. A segment is memory-mapped, so
+ * appending a shot is a handful of stores into memory: no
+ * system call, no lock, no garbage. The operating system writes
+ * the pages back in its own time.
+ * <p>
+ * The slow parts happen on a background thread: half way
+ * through a segment the next one is created, mapped and
+ * touched page by page (so the game never takes the page
+ * faults), and a full segment is forced to disk and its sparse
+ * <b>ShotIndex</b> written beside it (<i>.idx</i>).
+ * <p>
+ * Segment header (big-endian): magic, version, record size,
+ * capacity, segment number and the number of records written
+ * so far, each an int. The count is updated after each record,
+ * so a reader never sees half a record. A last segment with no
+ * header (the game stopped while it was being prepared) holds
+ * no records: it is started afresh, and readers skip it.
+ * <p>
+ * Exactly one thread may append. If the disk fails, the
+ * problem is logged once and the log stops recording; the game
+ * carries on.
+ */
+public final class ShotLog implements Closeable
+{
+    static final String SEGMENT_PREFIX = "shots-";
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String INDEX_SUFFIX = ".idx";
+
+    static final int MAGIC = 0x53484F54;                // "SHOT"
+    static final int VERSION = 2;                       // 2: spin as doubles
+    static final int HEADER = 64;                       // Bytes before the
+                                                        // first record
+    static final int CAPACITY_AT = 12;                  // Header offsets
+    static final int COUNT_AT = 20;
+
+    static final int DEFAULT_CAPACITY = 1 << 16;        // Records per segment
+                                                        // (about 6MB)
+
+    private static final int PAGE = 4096;
+
+    private static final Logger LOG = Logger.getLogger( ShotLog.class.getName() );
+
+    private final Path directory;
+    private final int capacity;
+    private final ExecutorService background;
+
+    private MappedByteBuffer segment;                   // Being appended to
+    private int number;                                 // Its number
+    private int count;                                  // Records in it
+    private ShotIndex index;                            // Its sparse index
+
+    private Future<MappedByteBuffer> next;              // The next segment,
+                                                        // being prepared
+    private volatile boolean failed;                    // Set by either thread
+
+
+    /**
+     * Open (or start) a log with the default segment size.
+     * @param directory where the segments live (created if
+     * need be)
+     * @throws IOException if the log cannot be opened
+     */
+    public ShotLog( Path directory ) throws IOException
+    {
+        this( directory, DEFAULT_CAPACITY );
+
+    } // end one-argument constructor
+
+
+    /**
+     * Open (or start) a log. Appending carries on in the last
+     * segment if it has room.
+     * @param directory where the segments live (created if
+     * need be)
+     * @param capacity records per new segment
+     * @throws IOException if the log cannot be opened
+     */
+    public ShotLog( Path directory, int capacity ) throws IOException
+    {
+        this.directory = directory;
+        this.capacity = capacity;
+
+        background = Executors.newSingleThreadExecutor( new ThreadFactory()
+        {
+            @Override
+            public Thread newThread( Runnable r )
+            {
+                Thread t = new Thread( r, "pool-shot-log" );
+                t.setDaemon( true );
+                return t;
+
+            } // end method newThread
+        } );
+
+        Files.createDirectories( directory );
+        List<Path> existing = segments( directory );
+
+        if ( existing.isEmpty() )
+        {
+            startSegment( 0, createSegment( 0 ) );
+        }
+        else
+        {
+            resume( existing.get( existing.size() - 1 ) );
+
+        } // end if-then-else
+
+    } // end two-argument constructor
+
+
+    /**
+     * Add one shot to the end of the log (appending thread
+     * only). This never waits on the disk, unless the
+     * background thread has somehow fallen a whole segment
+     * behind.
+     * @param record the shot
+     */
+    public void append( ShotRecord record )
+    {
+        if ( failed )
+            return;
+
+        try
+        {
+            if ( count == segmentCapacity() )
+                roll();
+
+            record.writeTo( segment, HEADER + count * ShotRecord.SIZE );
+            index.note( record.getMatchId(), record.getShot(), count );
+            count++;
+            segment.putInt( COUNT_AT, count );      // Publish the record
+
+            // Half way through: get the next segment ready.
+            if ( next == null && count >= segmentCapacity() / 2 )
+                next = prepare( number + 1 );
+        }
+        catch ( IOException | ExecutionException ex )
+        {
+            fail( ex );
+        }
+        catch ( InterruptedException ex )
+        {
+            Thread.currentThread().interrupt();
+            fail( ex );
+
+        } // end try-catch
+
+    } // end method append
+
+
+    /**
+     * Move on to the next segment, handing the full one to the
+     * background thread to be sealed.
+     */
+    private void roll() throws IOException, ExecutionException, InterruptedException
+    {
+        seal( segment, number, index.snapshot() );
+
+        MappedByteBuffer fresh = ( next != null ) ? next.get() : createSegment( number + 1 );
+
+        next = null;
+        startSegment( number + 1, fresh );
+
+    } // end method roll
+
+
+    private void startSegment( int segmentNumber, MappedByteBuffer buffer )
+    {
+        segment = buffer;
+        number = segmentNumber;
+        count = 0;
+        index = new ShotIndex();
+
+    } // end method startSegment
+
+
+    /**
+     * Carry on appending to the last segment (or after it, if
+     * it is full), re-building its index from the records.
+     */
+    private void resume( Path last ) throws IOException
+    {
+        int lastNumber = numberOf( last );
+        MappedByteBuffer buffer = null;
+
+        try ( FileChannel channel = FileChannel.open( last, StandardOpenOption.READ,
+            StandardOpenOption.WRITE ) )
+        {
+            ByteBuffer header = ByteBuffer.allocate( HEADER );
+            channel.read( header, 0 );
+            header.flip();
+
+            if ( !isUnstarted( header ) )
+                buffer = channel.map( FileChannel.MapMode.READ_WRITE, 0, channel.size() );
+
+        } // end try-with-resources
+
+        if ( buffer == null )
+        {
+            // Created, but its header never reached the disk:
+            // nothing was written to it, so make it again.
+            Files.delete( last );
+            startSegment( lastNumber, createSegment( lastNumber ) );
+            return;
+
+        } // end if-then
+
+        if ( buffer.getInt( 0 ) != MAGIC || buffer.getInt( 4 ) != VERSION )
+            throw new IOException( last + " is not a version " + VERSION + " shot log segment" );
+
+        int written = buffer.getInt( COUNT_AT );
+
+        if ( written >= buffer.getInt( CAPACITY_AT ) )
+        {
+            startSegment( lastNumber + 1, createSegment( lastNumber + 1 ) );
+            return;
+
+        } // end if-then
+
+        startSegment( lastNumber, buffer );
+        count = written;
+
+        ShotRecord scratch = new ShotRecord();
+
+        for ( int i = 0; i < written; i++ )
+        {
+            scratch.readFrom( buffer, HEADER + i * ShotRecord.SIZE );
+            index.note( scratch.getMatchId(), scratch.getShot(), i );
+
+        } // end for
+
+    } // end method resume
+
+
+    /**
+     * @param header the start of a segment file (up to
+     * <i>HEADER</i> bytes of it)
+     * @return true if the segment's header was never written:
+     * the file is short, or still all zeros
+     */
+    static boolean isUnstarted( ByteBuffer header )
+    {
+        return header.limit() < HEADER || header.getInt( 0 ) == 0;
+
+    } // end method isUnstarted
+
+
+    /**
+     * @return the capacity of the segment being appended to
+     * (a resumed segment keeps the capacity it was made with)
+     */
+    private int segmentCapacity()
+    {
+        return segment.getInt( CAPACITY_AT );
+
+    } // end method segmentCapacity
+
+
+    /**
+     * Create, map and pre-fault a segment on the background
+     * thread.
+     */
+    private Future<MappedByteBuffer> prepare( final int segmentNumber )
+    {
+        return background.submit( new Callable<MappedByteBuffer>()
+        {
+            @Override
+            public MappedByteBuffer call() throws IOException
+            {
+                MappedByteBuffer buffer = createSegment( segmentNumber );
+
+                // Touch every page now, so the appending thread
+                // never stalls on a page fault.
+                for ( int at = HEADER; at < buffer.capacity(); at += PAGE )
+                    buffer.put( at, ( byte )0 );
+
+                return buffer;
+
+            } // end method call
+        } );
+
+    } // end method prepare
+
+
+    /**
+     * Force a finished segment to disk, and write its index,
+     * on the background thread. Nobody waits on the result, so
+     * a failure is handed to <b>fail()</b> here.
+     */
+    private void seal( final MappedByteBuffer buffer, final int segmentNumber, final ShotIndex sealed )
+    {
+        background.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    buffer.force();
+                    sealed.write( indexPath( directory, segmentNumber ) );
+                }
+                catch ( IOException | RuntimeException ex )
+                {
+                    fail( ex );
+
+                } // end try-catch
+
+            } // end method run
+        } );
+
+    } // end method seal
+
+
+    private MappedByteBuffer createSegment( int segmentNumber ) throws IOException
+    {
+        long size = HEADER + ( long )capacity * ShotRecord.SIZE;
+        MappedByteBuffer buffer;
+
+        try ( FileChannel channel = FileChannel.open( segmentPath( directory, segmentNumber ),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE ) )
+        {
+            buffer = channel.map( FileChannel.MapMode.READ_WRITE, 0, size );
+
+        } // end try-with-resources
+
+        buffer.putInt( 0, MAGIC );
+        buffer.putInt( 4, VERSION );
+        buffer.putInt( 8, ShotRecord.SIZE );
+        buffer.putInt( CAPACITY_AT, capacity );
+        buffer.putInt( 16, segmentNumber );
+        buffer.putInt( COUNT_AT, 0 );
+
+        return buffer;
+
+    } // end method createSegment
+
+
+    /**
+     * Stop recording, and say why (the first time only). Called
+     * by the appending thread or the background thread.
+     */
+    private synchronized void fail( Exception ex )
+    {
+        if ( failed )
+            return;
+
+        failed = true;
+        LOG.log( Level.WARNING, "Shot log " + directory + " has stopped recording", ex );
+
+    } // end method fail
+
+
+    /**
+     * Flush everything to disk, write the last segment's index
+     * and stop the background thread. A segment prepared but
+     * never used is deleted.
+     * @throws IOException if the log could not be flushed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            if ( next != null )
+            {
+                next.get();
+                Files.deleteIfExists( segmentPath( directory, number + 1 ) );
+
+            } // end if-then
+
+            background.shutdown();
+            background.awaitTermination( 1, TimeUnit.MINUTES );
+
+            segment.force();
+            index.write( indexPath( directory, number ) );
+        }
+        catch ( ExecutionException ex )
+        {
+            throw new IOException( "Could not prepare the next shot log segment", ex.getCause() );
+        }
+        catch ( InterruptedException ex )
+        {
+            Thread.currentThread().interrupt();
+
+        } // end try-catch
+
+    } // end method close
+
+
+    /**
+     * @return the log's segment files, in order
+     */
+    static List<Path> segments( Path directory ) throws IOException
+    {
+        List<Path> found = new ArrayList<>();
+
+        try ( DirectoryStream<Path> stream = Files.newDirectoryStream( directory,
+            SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX ) )
+        {
+            for ( Path p : stream )
+                found.add( p );
+
+        } // end try-with-resources
+
+        Collections.sort( found );               // Zero-padded numbers
+
+        return found;
+
+    } // end method segments
+
+
+    static Path segmentPath( Path directory, int segmentNumber )
+    {
+        return directory.resolve( String.format( "%s%06d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX ) );
+
+    } // end method segmentPath
+
+
+    static Path indexPath( Path directory, int segmentNumber )
+    {
+        return directory.resolve( String.format( "%s%06d%s", SEGMENT_PREFIX, segmentNumber, INDEX_SUFFIX ) );
+
+    } // end method indexPath
+
+
+    private static int numberOf( Path segmentFile )
+    {
+        String name = segmentFile.getFileName().toString();
+
+        return Integer.parseInt( name.substring( SEGMENT_PREFIX.length(),
+            name.length() - SEGMENT_SUFFIX.length() ) );
+
+    } // end method numberOf
+
+} // end class ShotLog
@@ -0,0 +1,185 @@
+package com.aidan3d.pool;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+
+/**
+ * A <b>ShotLogReader</b> reads back a <b>ShotLog</b>
+ * directory. Every segment is memory-mapped read-only, and
+ * records are read into a reusable <b>ShotRecord</b>, so a
+ * scan over millions of shots makes no garbage.
+ * <p>
+ * The reader sees the records that had been written when it
+ * was opened. It is safe to open one while a game is still
+ * appending to the log. A last segment whose header was never
+ * written counts as empty.
+ */
+public final class ShotLogReader
+{
+    private final MappedByteBuffer[] segments;
+    private final int[] counts;                         // Records in each
+    private final ShotIndex[] indexes;
+    private final long total;
+
+
+    /**
+     * Open a log for reading.
+     * @param directory the log's directory
+     * @throws IOException if a segment cannot be read
+     */
+    public ShotLogReader( Path directory ) throws IOException
+    {
+        List<Path> files = ShotLog.segments( directory );
+
+        segments = new MappedByteBuffer[ files.size() ];
+        counts = new int[ files.size() ];
+        indexes = new ShotIndex[ files.size() ];
+
+        long sum = 0L;
+
+        for ( int s = 0; s < segments.length; s++ )
+        {
+            Path file = files.get( s );
+
+            try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) )
+            {
+                segments[ s ] = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+
+            } // end try-with-resources
+
+            if ( s == segments.length - 1 && ShotLog.isUnstarted( segments[ s ] ) )
+            {
+                indexes[ s ] = new ShotIndex();     // Never begun: empty
+                continue;
+
+            } // end if-then
+
+            if ( segments[ s ].getInt( 0 ) != ShotLog.MAGIC || segments[ s ].getInt( 4 ) != ShotLog.VERSION )
+                throw new IOException( file + " is not a version " + ShotLog.VERSION + " shot log segment" );
+
+            counts[ s ] = segments[ s ].getInt( ShotLog.COUNT_AT );
+            indexes[ s ] = loadIndex( directory, segments[ s ], counts[ s ] );
+            sum += counts[ s ];
+
+        } // end for
+
+        total = sum;
+
+    } // end one-argument constructor
+
+
+    /**
+     * @return the segment's index: from its <i>.idx</i> file if
+     * that was written after the last record, otherwise re-built
+     * by scanning the records
+     */
+    private static ShotIndex loadIndex( Path directory, MappedByteBuffer segment, int count )
+        throws IOException
+    {
+        int number = segment.getInt( 16 );
+        Path file = ShotLog.indexPath( directory, number );
+        boolean sealed = ( count == segment.getInt( ShotLog.CAPACITY_AT ) );
+
+        if ( sealed && Files.isRegularFile( file ) )
+            return ShotIndex.read( file );
+
+        ShotIndex index = new ShotIndex();
+        ShotRecord scratch = new ShotRecord();
+
+        for ( int i = 0; i < count; i++ )
+        {
+            scratch.readFrom( segment, ShotLog.HEADER + i * ShotRecord.SIZE );
+            index.note( scratch.getMatchId(), scratch.getShot(), i );
+
+        } // end for
+
+        return index;
+
+    } // end method loadIndex
+
+
+    public int getSegmentCount()
+    {
+        return segments.length;
+    }
+
+
+    public int getRecordCount( int segment )
+    {
+        return counts[ segment ];
+    }
+
+
+    /**
+     * @return the number of shots in the whole log
+     */
+    public long size()
+    {
+        return total;
+    }
+
+
+    /**
+     * Read one record.
+     * @param segment which segment
+     * @param record which record within it
+     * @param into filled in with the shot
+     */
+    public void read( int segment, int record, ShotRecord into )
+    {
+        into.readFrom( segments[ segment ], ShotLog.HEADER + record * ShotRecord.SIZE );
+
+    } // end method read
+
+
+    /**
+     * Find one shot of one match, using the sparse index.
+     * @param matchId the match
+     * @param shot the shot number
+     * @param into filled in with the shot, if found
+     * @return true if the shot was found
+     */
+    public boolean find( long matchId, int shot, ShotRecord into )
+    {
+        // A match's first shot in each segment is always
+        // indexed, so the last segment whose index has an entry
+        // at or before the shot is the only one it can be in.
+        for ( int s = segments.length - 1; s >= 0; s-- )
+        {
+            int from = indexes[ s ].floor( matchId, shot );
+
+            if ( from < 0 )
+                continue;
+
+            // Shots of one match are appended in order, so stop
+            // at the first one past the shot we want.
+            for ( int i = from; i < counts[ s ]; i++ )
+            {
+                read( s, i, into );
+
+                if ( into.getMatchId() != matchId )
+                    continue;
+
+                if ( into.getShot() == shot )
+                    return true;
+
+                if ( into.getShot() > shot )
+                    break;
+
+            } // end for
+
+            return false;
+
+        } // end for
+
+        return false;
+
+    } // end method find
+
+} // end class ShotLogReader
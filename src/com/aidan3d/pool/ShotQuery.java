@@ -0,0 +1,202 @@
+package com.aidan3d.pool;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+
+/**
+ * A <b>ShotQuery</b> asks a question of a <b>ShotStore</b>:
+ * some filters (<b>where()</b>...), then one answer (a count,
+ * an aggregate of one column, or an aggregate per group).
+ * <p>
+ * Filters are applied a column at a time to each chunk's
+ * selection vector, and the chunks are scanned in parallel.
+ * For example, the average number of collisions per shot:<br>
+ * &nbsp&nbsp <i>store.query().aggregate( ShotColumn.COLLISIONS
+ * ).getMean()</i>
+ */
+public final class ShotQuery
+{
+    private final ShotStore store;
+
+    private final List<ShotColumn> columns;             // Filters: each
+    private final List<double[]> ranges;                // column's [lo, hi]
+    private Long matchId;                               // Or null for all
+
+
+    ShotQuery( ShotStore store )
+    {
+        this.store = store;
+
+        columns = new ArrayList<>();
+        ranges = new ArrayList<>();
+
+    } // end one-argument constructor
+
+
+    /**
+     * Keep only shots whose column value lies in [lo, hi].
+     * @return this query
+     */
+    public ShotQuery where( ShotColumn column, double lo, double hi )
+    {
+        columns.add( column );
+        ranges.add( new double[] { lo, hi } );
+        return this;
+
+    } // end method where
+
+
+    /**
+     * Keep only shots whose column value equals <i>value</i>.
+     * @return this query
+     */
+    public ShotQuery whereEquals( ShotColumn column, double value )
+    {
+        return where( column, value, value );
+
+    } // end method whereEquals
+
+
+    /**
+     * Keep only shots from one match.
+     * @return this query
+     */
+    public ShotQuery whereMatch( long match )
+    {
+        matchId = match;
+        return this;
+
+    } // end method whereMatch
+
+
+    /**
+     * @return how many shots pass the filters
+     */
+    public long count()
+    {
+        long total = 0L;
+
+        for ( Integer n : store.scan( new ShotStore.ChunkScan<Integer>()
+        {
+            @Override
+            public Integer scan( ShotColumns chunk )
+            {
+                return ShotColumns.count( select( chunk ) );
+
+            } // end method scan
+        } ) )
+        {
+            total += n;
+
+        } // end for
+
+        return total;
+
+    } // end method count
+
+
+    /**
+     * @return the count, sum, min and max of one column over
+     * the shots that pass the filters
+     */
+    public ShotAggregate aggregate( final ShotColumn column )
+    {
+        ShotAggregate total = new ShotAggregate();
+
+        for ( ShotAggregate partial : store.scan( new ShotStore.ChunkScan<ShotAggregate>()
+        {
+            @Override
+            public ShotAggregate scan( ShotColumns chunk )
+            {
+                ShotAggregate partial = new ShotAggregate();
+                chunk.aggregate( column, select( chunk ), partial );
+                return partial;
+
+            } // end method scan
+        } ) )
+        {
+            total.merge( partial );
+
+        } // end for
+
+        return total;
+
+    } // end method aggregate
+
+
+    /**
+     * Group the shots that pass the filters into bands of one
+     * column, and aggregate another column in each band.
+     * @param key the column to group on
+     * @param width the width of each band
+     * @param value the column to aggregate
+     * @return the aggregates, keyed (and sorted) by the lower
+     * edge of each band
+     */
+    public SortedMap<Double, ShotAggregate> groupBy( final ShotColumn key, final double width,
+        final ShotColumn value )
+    {
+        if ( !( width > 0.0 ) )
+            throw new IllegalArgumentException( "Group width must be positive: " + width );
+
+        Map<Long, ShotAggregate> merged = new HashMap<>();
+
+        for ( Map<Long, ShotAggregate> partial : store.scan(
+            new ShotStore.ChunkScan<Map<Long, ShotAggregate>>()
+        {
+            @Override
+            public Map<Long, ShotAggregate> scan( ShotColumns chunk )
+            {
+                Map<Long, ShotAggregate> groups = new HashMap<>();
+                chunk.group( key, width, value, select( chunk ), groups );
+                return groups;
+
+            } // end method scan
+        } ) )
+        {
+            for ( Map.Entry<Long, ShotAggregate> e : partial.entrySet() )
+            {
+                ShotAggregate a = merged.get( e.getKey() );
+
+                if ( a == null )
+                    merged.put( e.getKey(), e.getValue() );
+                else
+                    a.merge( e.getValue() );
+
+            } // end inner for
+
+        } // end outer for
+
+        SortedMap<Double, ShotAggregate> bands = new TreeMap<>();
+
+        for ( Map.Entry<Long, ShotAggregate> e : merged.entrySet() )
+            bands.put( e.getKey() * width, e.getValue() );
+
+        return bands;
+
+    } // end method groupBy
+
+
+    /**
+     * @return the chunk's selection vector after every filter
+     */
+    private byte[] select( ShotColumns chunk )
+    {
+        byte[] selection = chunk.selectAll();
+
+        if ( matchId != null )
+            chunk.filterMatch( matchId, selection );
+
+        for ( int f = 0; f < columns.size(); f++ )
+            chunk.filter( columns.get( f ), ranges.get( f )[ 0 ], ranges.get( f )[ 1 ], selection );
+
+        return selection;
+
+    } // end method select
+
+} // end class ShotQuery
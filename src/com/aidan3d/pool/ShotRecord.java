@@ -0,0 +1,301 @@
+package com.aidan3d.pool;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * A <b>ShotRecord</b> is what the <b>ShotLog</b> keeps about
+ * one shot: who played it (match and shot number), how the cue
+ * ball was struck, how much happened, which balls went down and
+ * how long it all took.
+ * <p>
+ * On disk every record is exactly <i>SIZE</i> bytes
+ * (big-endian):<br>
+ * &nbsp&nbsp 0 &nbsp match id (long) &nbsp&nbsp 8 &nbsp shot
+ * number (int) &nbsp&nbsp 12 &nbsp ticks (int)<br>
+ * &nbsp&nbsp 16 &nbsp start time, epoch millis (long) &nbsp&nbsp
+ * 24 &nbsp duration, nanoseconds (long)<br>
+ * &nbsp&nbsp 32 &nbsp cue vx (double) &nbsp&nbsp 40 &nbsp cue vy
+ * (double) &nbsp&nbsp 48 &nbsp top (double) &nbsp&nbsp 56 &nbsp
+ * side (double)<br>
+ * &nbsp&nbsp 64 &nbsp ball hits (int) &nbsp&nbsp 68 &nbsp rail
+ * hits (int) &nbsp&nbsp 72 &nbsp balls sunk, one bit per ball
+ * (long)<br>
+ * &nbsp&nbsp 80 &nbsp flags (int) &nbsp&nbsp 84 &nbsp ball
+ * placed (int)
+ * <p>
+ * Not every record is a shot. The log also keeps, in order,
+ * whatever else changed the table, so that a replay follows the
+ * match exactly:<br>
+ * &nbsp&nbsp a) &nbsp <i>FLAG_PLACED</i>: a ball was put on a
+ * spot (e.g., ball in hand); the spot is in the cue vx / vy
+ * fields, the ball at offset 84;<br>
+ * &nbsp&nbsp b) &nbsp <i>FLAG_RESET</i>: the balls were racked
+ * again.
+ * <p>
+ * The strike is kept exactly as played (spin included), so a
+ * replay of the log plays the same shots.
+ * <p>
+ * A record object is a reusable "flyweight": readers fill the
+ * same one in again and again rather than making a new one per
+ * shot.
+ */
+public final class ShotRecord
+{
+    static final int SIZE = 88;                         // Bytes on disk
+
+    static final int FLAG_SCRATCH = 0x1;                // Cue ball went down
+    static final int FLAG_PLACED = 0x2;                 // Not shots: a ball
+    static final int FLAG_RESET = 0x4;                  // placed, a re-rack
+
+    private long matchId;
+    private int shot;                                   // 1, 2, 3... within
+                                                        // the match
+    private int ticks;                                  // Frames until the
+                                                        // balls stopped
+    private long startMillis;
+    private long durationNanos;
+    private double cueVx;                               // As struck, in
+    private double cueVy;                               // pixels per frame
+    private double top;                                 // Follow / screw
+    private double side;                                // English
+    private int ballHits;
+    private int wallHits;
+    private long pocketed;                              // Bit i: ball i sunk
+                                                        // on this shot
+    private int flags;
+    private int placedBall;                             // FLAG_PLACED only
+
+
+    /**
+     * Fill in every field.
+     */
+    void set( long matchId, int shot, int ticks, long startMillis, long durationNanos,
+        double cueVx, double cueVy, double top, double side,
+        int ballHits, int wallHits, long pocketed, int flags )
+    {
+        this.matchId = matchId;
+        this.shot = shot;
+        this.ticks = ticks;
+        this.startMillis = startMillis;
+        this.durationNanos = durationNanos;
+        this.cueVx = cueVx;
+        this.cueVy = cueVy;
+        this.top = top;
+        this.side = side;
+        this.ballHits = ballHits;
+        this.wallHits = wallHits;
+        this.pocketed = pocketed;
+        this.flags = flags;
+        placedBall = 0;
+
+    } // end method set
+
+
+    /**
+     * Fill in a record of a ball being placed (not a shot).
+     * @param ball which ball
+     * @param x where its center was put
+     * @param y
+     */
+    void setPlacement( long matchId, int shot, long startMillis, int ball, double x, double y )
+    {
+        set( matchId, shot, 0, startMillis, 0L, x, y, 0.0, 0.0, 0, 0, 0L, FLAG_PLACED );
+        placedBall = ball;
+
+    } // end method setPlacement
+
+
+    /**
+     * Write the record into a buffer at an absolute position
+     * (the buffer's own position is left alone).
+     */
+    void writeTo( ByteBuffer buffer, int at )
+    {
+        buffer.putLong( at, matchId );
+        buffer.putInt( at + 8, shot );
+        buffer.putInt( at + 12, ticks );
+        buffer.putLong( at + 16, startMillis );
+        buffer.putLong( at + 24, durationNanos );
+        buffer.putDouble( at + 32, cueVx );
+        buffer.putDouble( at + 40, cueVy );
+        buffer.putDouble( at + 48, top );
+        buffer.putDouble( at + 56, side );
+        buffer.putInt( at + 64, ballHits );
+        buffer.putInt( at + 68, wallHits );
+        buffer.putLong( at + 72, pocketed );
+        buffer.putInt( at + 80, flags );
+        buffer.putInt( at + 84, placedBall );
+
+    } // end method writeTo
+
+
+    /**
+     * Read the record from a buffer at an absolute position.
+     */
+    void readFrom( ByteBuffer buffer, int at )
+    {
+        matchId = buffer.getLong( at );
+        shot = buffer.getInt( at + 8 );
+        ticks = buffer.getInt( at + 12 );
+        startMillis = buffer.getLong( at + 16 );
+        durationNanos = buffer.getLong( at + 24 );
+        cueVx = buffer.getDouble( at + 32 );
+        cueVy = buffer.getDouble( at + 40 );
+        top = buffer.getDouble( at + 48 );
+        side = buffer.getDouble( at + 56 );
+        ballHits = buffer.getInt( at + 64 );
+        wallHits = buffer.getInt( at + 68 );
+        pocketed = buffer.getLong( at + 72 );
+        flags = buffer.getInt( at + 80 );
+        placedBall = buffer.getInt( at + 84 );
+
+    } // end method readFrom
+
+
+    public long getMatchId()
+    {
+        return matchId;
+    }
+
+
+    public int getShot()
+    {
+        return shot;
+    }
+
+
+    public int getTicks()
+    {
+        return ticks;
+    }
+
+
+    public long getStartMillis()
+    {
+        return startMillis;
+    }
+
+
+    public long getDurationNanos()
+    {
+        return durationNanos;
+    }
+
+
+    public double getCueVx()
+    {
+        return cueVx;
+    }
+
+
+    public double getCueVy()
+    {
+        return cueVy;
+    }
+
+
+    /**
+     * @return how hard the cue ball was struck, in pixels per
+     * frame
+     */
+    public double getCueSpeed()
+    {
+        return Math.sqrt( cueVx * cueVx + cueVy * cueVy );
+
+    } // end method getCueSpeed
+
+
+    public double getTop()
+    {
+        return top;
+    }
+
+
+    public double getSide()
+    {
+        return side;
+    }
+
+
+    public int getBallHits()
+    {
+        return ballHits;
+    }
+
+
+    public int getWallHits()
+    {
+        return wallHits;
+    }
+
+
+    /**
+     * @return the balls sunk on this shot, one bit per ball
+     * (bit 0 is the cue ball)
+     */
+    public long getPocketed()
+    {
+        return pocketed;
+    }
+
+
+    /**
+     * @return how many object balls (not the cue ball) went
+     * down on this shot
+     */
+    public int getObjectBallsPocketed()
+    {
+        return Long.bitCount( pocketed & ~1L );
+
+    } // end method getObjectBallsPocketed
+
+
+    public boolean isScratch()
+    {
+        return ( flags & FLAG_SCRATCH ) != 0;
+    }
+
+
+    /**
+     * @return true for a shot, false for a placement or a
+     * re-rack
+     */
+    public boolean isShot()
+    {
+        return ( flags & ( FLAG_PLACED | FLAG_RESET ) ) == 0;
+    }
+
+
+    public boolean isPlacement()
+    {
+        return ( flags & FLAG_PLACED ) != 0;
+    }
+
+
+    public boolean isReset()
+    {
+        return ( flags & FLAG_RESET ) != 0;
+    }
+
+
+    /**
+     * @return the ball a placement put on a spot (see
+     * <b>getCueVx()</b> / <b>getCueVy()</b>)
+     */
+    public int getPlacedBall()
+    {
+        return placedBall;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return "match " + matchId + " shot " + shot + ": cue (" + cueVx + ", " + cueVy + "), "
+            + ballHits + " ball hits, " + wallHits + " rail hits, sunk " + Long.toBinaryString( pocketed )
+            + ", " + ticks + " ticks";
+
+    } // end method toString
+
+} // end class ShotRecord
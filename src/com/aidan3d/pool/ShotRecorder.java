@@ -0,0 +1,164 @@
+package com.aidan3d.pool;
+
+
+/**
+ * A <b>ShotRecorder</b> follows the shots played on one
+ * <b>Table</b> and appends each one to a <b>ShotLog</b> when
+ * the balls come to rest: the cue ball's strike, the hits
+ * along the way, the balls sunk and the time taken. Balls
+ * placed by hand, and re-racks, are logged too, in turn.
+ * <p>
+ * It is driven by the table, on whichever thread runs the
+ * physics, and reuses one <b>ShotRecord</b> for every shot.
+ */
+final class ShotRecorder
+{
+    private final ShotLog log;
+    private final long matchId;
+    private final ShotRecord record;
+
+    private int shot;                                   // Shots so far
+    private boolean inProgress;
+
+    private double cueVx;                               // This shot's
+    private double cueVy;                               // strike
+    private double top;
+    private double side;
+    private long startMillis;
+    private long startNanos;
+    private long sunkBefore;                            // Balls already down
+    private int ticks;                                  // Frames, however
+                                                        // many sub-steps
+                                                        // each took
+    private int ballHits;
+    private int wallHits;
+
+
+    /**
+     * The two-argument constructor.
+     * @param log where the shots go
+     * @param matchId the match being played
+     */
+    ShotRecorder( ShotLog log, long matchId )
+    {
+        this.log = log;
+        this.matchId = matchId;
+
+        record = new ShotRecord();
+
+    } // end two-argument constructor
+
+
+    /**
+     * The cue ball has been struck.
+     * @param sunk the balls already down, one bit per ball
+     */
+    void begin( double vx, double vy, double topSpin, double sideSpin, long sunk )
+    {
+        cueVx = vx;
+        cueVy = vy;
+        top = topSpin;
+        side = sideSpin;
+        sunkBefore = sunk;
+        startMillis = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+        ticks = 0;
+        ballHits = 0;
+        wallHits = 0;
+        inProgress = true;
+
+    } // end method begin
+
+
+    /**
+     * A frame of the game has begun. Ticks are counted in
+     * frames, not <b>update()</b>s, so sub-stepping a frame
+     * does not make the shot look longer.
+     */
+    void frame()
+    {
+        if ( inProgress )
+            ticks++;
+
+    } // end method frame
+
+
+    /**
+     * One physics update (a frame, or a sub-step of one) has
+     * run.
+     */
+    void hits( int tickBallHits, int tickWallHits )
+    {
+        if ( !inProgress )
+            return;
+
+        ballHits += tickBallHits;
+        wallHits += tickWallHits;
+
+    } // end method hits
+
+
+    /**
+     * Count a stretch of the shot that was not ticked through
+     * (e.g., a break whose outcome was cached).
+     * @see BreakCache
+     */
+    void played( int moreTicks, int moreBallHits, int moreWallHits )
+    {
+        if ( !inProgress )
+            return;
+
+        ticks += moreTicks;
+        ballHits += moreBallHits;
+        wallHits += moreWallHits;
+
+    } // end method played
+
+
+    /**
+     * The balls have come to rest: log the shot.
+     * @param sunk the balls now down, one bit per ball
+     */
+    void end( long sunk )
+    {
+        if ( !inProgress )
+            return;
+
+        inProgress = false;
+
+        long dropped = sunk & ~sunkBefore;
+
+        record.set( matchId, ++shot, ticks, startMillis, System.nanoTime() - startNanos,
+            cueVx, cueVy, top, side, ballHits, wallHits, dropped,
+            ( dropped & 1L ) != 0 ? ShotRecord.FLAG_SCRATCH : 0 );
+        log.append( record );
+
+    } // end method end
+
+
+    /**
+     * A ball has been put on a spot, by hand.
+     * @param ball which ball
+     * @param x where its center was put
+     * @param y
+     */
+    void placed( int ball, double x, double y )
+    {
+        record.setPlacement( matchId, ++shot, System.currentTimeMillis(), ball, x, y );
+        log.append( record );
+
+    } // end method placed
+
+
+    /**
+     * The balls have been racked again.
+     */
+    void reset()
+    {
+        record.set( matchId, ++shot, 0, System.currentTimeMillis(), 0L, 0.0, 0.0, 0.0, 0.0,
+            0, 0, 0L, ShotRecord.FLAG_RESET );
+        log.append( record );
+
+    } // end method reset
+
+} // end class ShotRecorder
@@ -0,0 +1,474 @@
+package com.aidan3d.pool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import math.geom2d.Vector2D;
+
+
+/**
+ * A <b>ShotSearch</b> object is a computer opponent. It picks
+ * a shot by Monte Carlo search: it samples cue angles and
+ * powers, plays each one out a few times on headless copies of
+ * the <b>Table</b> (with a little noise on the cue, as a human
+ * would have), and keeps the shot with the best average
+ * outcome. Half the angles are drawn close to a "ghost ball"
+ * aim (the cue ball's center at contact for sending an object
+ * ball at a pocket), half from anywhere; a play-out stops as
+ * soon as every ball has all but stopped.
+ * <p>
+ * The search runs on a pool of worker threads (by default one
+ * fewer than there are cores, leaving one for the game loop)
+ * and always answers within its time budget, however many
+ * shots that turns out to be.
+ */
+public class ShotSearch
+{
+    private static final double POT_SCORE = 1.0;        // Per object ball sunk
+    private static final double SCRATCH_SCORE = -2.0;   // Cue ball sunk
+    private static final double LEAVE_SCORE = 0.25;     // Cue ball well away
+                                                        // from the cushions
+
+    private static final double DONE_SPEED = 0.1;       // Px/frame: slower,
+                                                        // a ball has all
+                                                        // but stopped
+    private static final double GHOST_SPREAD = 0.02;    // Radians either side
+                                                        // of a ghost-ball aim
+
+    private static final double ANGLE_STEP = 1.0e-3;    // Shots are played to
+    private static final double POWER_STEP = 1.0e-2;    // this resolution, so
+                                                        // repeats can be looked
+                                                        // up (radians, px/frame)
+    private static final int CACHE_BITS = 18;           // 256K remembered
+                                                        // play-outs (4MB)
+
+    private final long budgetNanos;             // How long a decision may take
+    private final int rollouts;                 // Noisy play-outs per shot
+    private final int horizon;                  // Ticks per play-out
+    private final double minPower;              // Cue speeds to sample
+    private final double maxPower;              // between, in px/frame
+    private final double angleNoise;            // Std. dev. of the cue's
+    private final double powerNoise;            // aim (radians) and power
+                                                // (fraction) when played
+
+    private final TranspositionCache outcomes;  // Play-out scores, by
+                                                // table state and shot;
+                                                // kept between decisions
+
+    private final int threads;
+    private final ExecutorService workers;
+    private final SplittableRandom seeds;       // Hands each worker its
+                                                // own random stream
+
+
+    /**
+     * The two-argument constructor: sensible defaults for a
+     * table whose balls move a few pixels per frame, searched
+     * on every core but one (the game loop's).
+     * @param budgetMillis how long a decision may take
+     * @param seed seeds the search (same seed, same table,
+     * same thread count: broadly the same answer)
+     */
+    public ShotSearch( long budgetMillis, long seed )
+    {
+        this( budgetMillis, seed, Math.max( 1, Runtime.getRuntime().availableProcessors() - 1 ),
+            4, 240, 1.0, 6.0, 0.01, 0.03 );
+
+    } // end two-argument constructor
+
+
+    /**
+     * The nine-argument constructor.
+     * @param budgetMillis how long a decision may take
+     * @param seed seeds the search
+     * @param threads how many worker threads to run rollouts on
+     * @param rollouts how many noisy play-outs to average per shot
+     * @param horizon the most ticks a play-out may run
+     * @param minPower the slowest cue speed sampled (px/frame)
+     * @param maxPower the fastest cue speed sampled (px/frame)
+     * @param angleNoise the standard deviation of the aim (radians)
+     * @param powerNoise the standard deviation of the power (as a
+     * fraction of the power)
+     */
+    public ShotSearch( long budgetMillis, long seed, int threads, int rollouts,
+        int horizon, double minPower, double maxPower, double angleNoise, double powerNoise )
+    {
+        this.budgetNanos = budgetMillis * 1000000L;
+        this.threads = threads;
+        this.rollouts = rollouts;
+        this.horizon = horizon;
+        this.minPower = minPower;
+        this.maxPower = maxPower;
+        this.angleNoise = angleNoise;
+        this.powerNoise = powerNoise;
+
+        seeds = new SplittableRandom( seed );
+        outcomes = new TranspositionCache( CACHE_BITS );
+
+        workers = Executors.newFixedThreadPool( threads, new ThreadFactory()
+        {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread( Runnable r )
+            {
+                Thread t = new Thread( r, "pool-shot-search-" + count++ );
+                t.setDaemon( true );
+                return t;
+
+            } // end method newThread
+        } );
+
+    } // end nine-argument constructor
+
+
+    /**
+     * Choose a shot for the table as it stands. The table
+     * itself is never touched: every rollout runs on a copy.
+     * @param table the table to play on
+     * @return the best shot found before the time ran out
+     */
+    public Shot chooseShot( Table table )
+    {
+        final Table start = new Table( table );         // One snapshot,
+                                                        // copied again
+                                                        // per rollout
+        final double[] aims = ghostAims( start );
+        final long deadline = System.nanoTime() + budgetNanos;
+
+        List<Future<Shot>> answers = new ArrayList<>( threads );
+
+        for ( int i = 0; i < threads; i++ )
+        {
+            final SplittableRandom random = seeds.split();
+
+            answers.add( workers.submit( new Callable<Shot>()
+            {
+                @Override
+                public Shot call()
+                {
+                    return search( start, aims, random, deadline );
+
+                } // end method call
+            } ) );
+
+        } // end for
+
+        Shot best = null;
+
+        for ( Future<Shot> answer : answers )
+        {
+            try
+            {
+                best = better( best, answer.get() );
+            }
+            catch ( InterruptedException ex )
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            catch ( ExecutionException ex )
+            {
+                throw new IllegalStateException( "A shot-search worker failed", ex.getCause() );
+
+            } // end try-catch
+
+        } // end for
+
+        return best;
+
+    } // end method chooseShot
+
+
+    /**
+     * Stop the worker threads.
+     */
+    public void shutdown()
+    {
+        workers.shutdownNow();
+
+    } // end method shutdown
+
+
+    /**
+     * One worker's share of the search: sample and score
+     * shots until the deadline.
+     * @param aims the ghost-ball angles to sample around
+     */
+    private Shot search( Table start, double[] aims, SplittableRandom random, long deadline )
+    {
+        // Each worker sub-steps its rollouts with an integrator of
+        // its own (one remembers its last step, so is not safe to
+        // share), set up exactly as the live game's, minus the
+        // time budget.
+        AdaptiveIntegrator integrator = AdaptiveIntegrator.headless();
+        Shot best = null;
+        int tried = 0;
+
+        // Always score at least one shot, however tight the budget.
+        do
+        {
+            double angle = ( aims.length > 0 && random.nextBoolean() )
+                ? aims[ random.nextInt( aims.length ) ] + gaussian( random ) * GHOST_SPREAD
+                : random.nextDouble( -Math.PI, Math.PI );
+            double power = random.nextDouble( minPower, maxPower );
+            double total = 0.0;
+
+            for ( int r = 0; r < rollouts; r++ )
+            {
+                double playedAngle = angle + gaussian( random ) * angleNoise;
+                double playedPower = power * ( 1.0 + gaussian( random ) * powerNoise );
+
+                total += rollout( start, playedAngle, playedPower, integrator );
+
+            } // end for
+
+            tried++;
+            best = better( best, new Shot( angle, power, total / rollouts, 0 ) );
+
+        } while ( System.nanoTime() < deadline );
+
+        return new Shot( best.getAngle(), best.getPower(), best.getScore(), tried );
+
+    } // end method search
+
+
+    /**
+     * Play one shot out on a fresh copy of the table, or look
+     * its score up if this shot has been played from this
+     * position before. The shot is snapped to the nearest
+     * <i>ANGLE_STEP</i> and <i>POWER_STEP</i> first, so that
+     * close shots count as the same one.
+     * @return the outcome's score
+     */
+    private double rollout( Table start, double angle, double power,
+        AdaptiveIntegrator integrator )
+    {
+        long angleStep = Math.round( angle / ANGLE_STEP );
+        long powerStep = Math.round( power / POWER_STEP );
+        long key = start.getStateHash()
+            ^ ZobristHash.mix( ( angleStep << 32 ) ^ ( powerStep & 0xFFFFFFFFL ) );
+
+        // The hash says where the balls are, not how they are
+        // moving: only a table at rest can be looked up.
+        boolean cacheable = !start.ballsAreMoving();
+        double cached = cacheable ? outcomes.get( key ) : Double.NaN;
+
+        if ( !Double.isNaN( cached ) )
+            return cached;
+
+        angle = angleStep * ANGLE_STEP;
+        power = powerStep * POWER_STEP;
+
+        Table table = new Table( start );
+
+        table.shoot( new Vector2D( power * Math.cos( angle ), power * Math.sin( angle ) ) );
+
+        // Stop once every ball has all but stopped: the little
+        // way left to roll changes nothing worth scoring.
+        for ( int tick = 0; tick < horizon && table.ballsAreMoving()
+            && table.getMaxSpeed() >= DONE_SPEED; tick++ )
+        {
+            integrator.tick( table );
+
+        } // end for
+
+        double score = score( table );
+        if ( cacheable )
+            outcomes.put( key, score );
+
+        return score;
+
+    } // end method rollout
+
+
+    /**
+     * Work out the "ghost ball" aims: for each object ball
+     * still up and each pocket, the angle that sends the cue
+     * ball to where it must touch the object ball to send it
+     * straight at the pocket. Cuts of a right angle or more
+     * cannot be played, so are left out.
+     * @return the angles (radians), none if the cue ball is
+     * down
+     */
+    static double[] ghostAims( Table table )
+    {
+        List<Ball> balls = table.getBalls();
+        List<Circle> pockets = table.getPockets();
+
+        if ( table.isCuePocketed() )
+            return new double[ 0 ];
+
+        Vec2 cue = balls.get( 0 ).getCenterVec();
+        double contact = 2.0 * table.getBallRadius();   // Center to center
+        double[] aims = new double[ ( balls.size() - 1 ) * pockets.size() ];
+        int count = 0;
+
+        for ( int i = 1; i < balls.size(); i++ )
+        {
+            if ( balls.get( i ).isPocketed() )
+                continue;
+
+            Vec2 ball = balls.get( i ).getCenterVec();
+
+            for ( Circle pocket : pockets )
+            {
+                double dx = pocket.getCenterVec().x - ball.x;
+                double dy = pocket.getCenterVec().y - ball.y;
+                double length = Math.sqrt( dx * dx + dy * dy );
+
+                if ( length == 0.0 )
+                    continue;
+
+                double ghostX = ball.x - dx / length * contact;
+                double ghostY = ball.y - dy / length * contact;
+
+                // The cue ball must be heading the object
+                // ball's way along the line to the pocket.
+                if ( ( ghostX - cue.x ) * dx + ( ghostY - cue.y ) * dy <= 0.0 )
+                    continue;
+
+                aims[ count++ ] = Math.atan2( ghostY - cue.y, ghostX - cue.x );
+
+            } // end for
+
+        } // end for
+
+        return Arrays.copyOf( aims, count );
+
+    } // end method ghostAims
+
+
+    /**
+     * Score a played-out table: balls sunk are good, a scratch
+     * is bad, and the cue ball left well away from the cushions
+     * is a little better than one left hugging a rail.
+     */
+    static double score( Table table )
+    {
+        double score = POT_SCORE * table.countPocketed();
+
+        if ( table.isCuePocketed() )
+        {
+            score += SCRATCH_SCORE;
+        }
+        else
+        {
+            // Distance to the nearest cushion, as a fraction of
+            // the furthest it could possibly be (half the width).
+            Vector2D cue = table.getCueCenter();
+            double half = table.getTableSize() / 2.0;
+            double left = cue.x() - table.getXOrigin();
+            double top = cue.y() - table.getYOrigin();
+            double clear = Math.min( Math.min( left, table.getTableSize() - left ),
+                Math.min( top, table.getTableSize() * 2 - top ) );
+
+            score += LEAVE_SCORE * Math.max( 0.0, Math.min( 1.0, clear / half ) );
+
+        } // end if-then-else
+
+        return score;
+
+    } // end method score
+
+
+    /**
+     * @return whichever shot scored higher (the other may be null)
+     */
+    private static Shot better( Shot a, Shot b )
+    {
+        if ( a == null )
+            return b;
+
+        if ( b == null )
+            return a;
+
+        Shot best = b.getScore() > a.getScore() ? b : a;
+
+        // Keep a running total of the shots tried.
+        return new Shot( best.getAngle(), best.getPower(), best.getScore(),
+            a.getTried() + b.getTried() );
+
+    } // end method better
+
+
+    /**
+     * A standard normal deviate (Box-Muller); SplittableRandom
+     * has no nextGaussian() of its own.
+     */
+    private static double gaussian( SplittableRandom random )
+    {
+        double u = 1.0 - random.nextDouble();           // (0, 1]
+        double v = random.nextDouble();
+
+        return Math.sqrt( -2.0 * Math.log( u ) ) * Math.cos( 2.0 * Math.PI * v );
+
+    } // end method gaussian
+
+
+    /**
+     * A shot chosen by the search: where to aim, how hard to
+     * hit, and how well it is expected to turn out.
+     */
+    public static final class Shot
+    {
+        private final double angle;             // Radians
+        private final double power;             // Px per frame
+        private final double score;             // Mean rollout score
+        private final int tried;                // Shots searched to
+                                                // find this one
+
+
+        Shot( double angle, double power, double score, int tried )
+        {
+            this.angle = angle;
+            this.power = power;
+            this.score = score;
+            this.tried = tried;
+
+        } // end four-argument constructor
+
+
+        public double getAngle()
+        {
+            return angle;
+        }
+
+
+        public double getPower()
+        {
+            return power;
+        }
+
+
+        public double getScore()
+        {
+            return score;
+        }
+
+
+        public int getTried()
+        {
+            return tried;
+        }
+
+
+        /**
+         * @return the cue ball velocity that plays this shot
+         */
+        public Vector2D toVelocity()
+        {
+            return new Vector2D( power * Math.cos( angle ), power * Math.sin( angle ) );
+
+        } // end method toVelocity
+
+    } // end class Shot
+
+} // end class ShotSearch
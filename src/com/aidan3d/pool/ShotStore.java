@@ -0,0 +1,195 @@
+package com.aidan3d.pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+
+/**
+ * A <b>ShotStore</b> holds recorded shots in columnar form, for
+ * analysis: instead of one object per shot, each field of every
+ * shot lives in its own primitive array, split into chunks of
+ * up to <i>CHUNK_SIZE</i> shots (see <b>ShotColumns</b>).
+ * <p>
+ * Questions are asked through a <b>ShotQuery</b>, e.g.<br>
+ * &nbsp&nbsp <i>store.query().whereEquals( ShotColumn.SHOT, 1
+ * ).groupBy( ShotColumn.CUE_SPEED, 0.5, ShotColumn.POTTED
+ * )</i><br>
+ * gives the break's success rate by cue speed, in half-pixel
+ * bands. Each query scans the chunks in parallel, on the
+ * common fork/join pool, and merges the partial answers.
+ * <p>
+ * Loading and adding are not thread-safe; once loaded, any
+ * number of threads may query a store at once.
+ */
+public final class ShotStore
+{
+    static final int CHUNK_SIZE = ShotLog.DEFAULT_CAPACITY;
+
+    private final List<ShotColumns> chunks;
+
+
+    /**
+     * The no-argument constructor: an empty store.
+     */
+    public ShotStore()
+    {
+        chunks = new ArrayList<>();
+
+    } // end no-argument constructor
+
+
+    /**
+     * Load every shot in a shot log, one chunk per log
+     * segment, reading the segments in parallel.
+     * @param reader the open log
+     * @return the loaded store
+     */
+    public static ShotStore load( final ShotLogReader reader )
+    {
+        ShotStore store = new ShotStore();
+        List<Callable<ShotColumns>> loads = new ArrayList<>();
+
+        for ( int s = 0; s < reader.getSegmentCount(); s++ )
+        {
+            final int segment = s;
+
+            loads.add( new Callable<ShotColumns>()
+            {
+                @Override
+                public ShotColumns call()
+                {
+                    int count = reader.getRecordCount( segment );
+                    ShotColumns chunk = new ShotColumns( Math.max( count, 1 ) );
+                    ShotRecord record = new ShotRecord();
+
+                    for ( int i = 0; i < count; i++ )
+                    {
+                        reader.read( segment, i, record );
+
+                        if ( record.isShot() )
+                            chunk.add( record );
+
+                    } // end for
+
+                    return chunk;
+
+                } // end method call
+            } );
+
+        } // end for
+
+        store.chunks.addAll( runAll( loads ) );
+
+        return store;
+
+    } // end method load
+
+
+    /**
+     * Add one shot (placements and re-racks are skipped).
+     * @param record the shot
+     */
+    public void add( ShotRecord record )
+    {
+        if ( !record.isShot() )
+            return;
+
+        if ( chunks.isEmpty() || chunks.get( chunks.size() - 1 ).isFull() )
+            chunks.add( new ShotColumns( CHUNK_SIZE ) );
+
+        chunks.get( chunks.size() - 1 ).add( record );
+
+    } // end method add
+
+
+    /**
+     * @return the number of shots held
+     */
+    public long size()
+    {
+        long total = 0L;
+
+        for ( ShotColumns chunk : chunks )
+            total += chunk.size();
+
+        return total;
+
+    } // end method size
+
+
+    /**
+     * @return a new query over every shot in the store
+     */
+    public ShotQuery query()
+    {
+        return new ShotQuery( this );
+
+    } // end method query
+
+
+    /**
+     * Run one task per chunk in parallel.
+     * @return the tasks' answers, in chunk order
+     */
+    <T> List<T> scan( final ChunkScan<T> scan )
+    {
+        List<Callable<T>> tasks = new ArrayList<>( chunks.size() );
+
+        for ( final ShotColumns chunk : chunks )
+        {
+            tasks.add( new Callable<T>()
+            {
+                @Override
+                public T call()
+                {
+                    return scan.scan( chunk );
+
+                } // end method call
+            } );
+
+        } // end for
+
+        return runAll( tasks );
+
+    } // end method scan
+
+
+    private static <T> List<T> runAll( List<Callable<T>> tasks )
+    {
+        List<T> results = new ArrayList<>( tasks.size() );
+
+        try
+        {
+            for ( Future<T> f : ForkJoinPool.commonPool().invokeAll( tasks ) )
+                results.add( f.get() );
+        }
+        catch ( InterruptedException ex )
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Interrupted while scanning shots", ex );
+        }
+        catch ( ExecutionException ex )
+        {
+            throw new IllegalStateException( "A shot scan failed", ex.getCause() );
+
+        } // end try-catch
+
+        return results;
+
+    } // end method runAll
+
+
+    /**
+     * One chunk's share of a query.
+     */
+    interface ChunkScan<T>
+    {
+        T scan( ShotColumns chunk );
+
+    } // end interface ChunkScan
+
+} // end class ShotStore
@@ -0,0 +1,216 @@
+package com.aidan3d.pool;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * A <b>SimulationLoop</b> runs a <b>Table</b>'s physics on a
+ * thread of its own, at a fixed rate, publishing a
+ * <b>BallFrame</b> after every tick. The render thread draws the
+ * latest frame whenever it likes, so neither thread waits for
+ * the other, and the renderer never reads a ball's center while
+ * <b>move()</b> is half-way through changing it.
+ * <p>
+ * Once a loop is running, only it may touch the table's balls;
+ * other threads <b>submit()</b> commands to the table, which the
+ * loop runs at the start of each tick.
+ */
+class SimulationLoop implements Runnable
+{
+    private static final long STOP_MILLIS = 5000L;  // Longest wait for the
+                                                    // thread to finish
+
+    private final Table table;
+    private final AdaptiveIntegrator integrator;
+    private final FrameExchange frames;
+    private final CueInput input;                   // The player's aim
+    private final Opponent opponent;                // The computer's turns
+                                                    // (null if none)
+    private final IdleGate idle;                    // Sleeps while nothing
+                                                    // moves
+    private final long period;                      // Nanoseconds per tick
+
+    private volatile boolean running;
+    private Thread thread;
+    private long tick;
+
+
+    /**
+     * The six-argument constructor.
+     * @param table the table to simulate
+     * @param integrator steps the table through each tick
+     * @param input the aim to apply each tick
+     * @param opponent the computer opponent to update each
+     * tick, or null to play alone
+     * @param idle the gate the input wakes this loop through
+     * @param period the time per tick, in nanoseconds
+     */
+    SimulationLoop( Table table, AdaptiveIntegrator integrator, CueInput input,
+        Opponent opponent, IdleGate idle, long period )
+    {
+        this.table = table;
+        this.integrator = integrator;
+        this.input = input;
+        this.opponent = opponent;
+        this.idle = idle;
+        this.period = period;
+
+        frames = new FrameExchange( table.getBallCount() );
+
+        // Give the renderer something to draw straight away.
+        publish();
+
+    } // end six-argument constructor
+
+
+    /**
+     * Start the simulation thread.
+     */
+    synchronized void start()
+    {
+        if ( thread == null )
+        {
+            running = true;
+            thread = new Thread( this, "pool-simulation" );
+            thread.setDaemon( true );
+            thread.start();
+
+        } // end if-then
+
+    } // end method start
+
+
+    /**
+     * Ask the simulation thread to finish its current tick and
+     * stop, and wait until it has. Only then is the table (and
+     * the shot log it appends to) free for another thread.
+     * @return true if the thread has stopped (or never ran);
+     * false if it was still running after a few seconds
+     */
+    boolean stop()
+    {
+        Thread stopping;
+
+        synchronized ( this )
+        {
+            running = false;
+            stopping = thread;
+            thread = null;
+
+        } // end synchronized
+
+        if ( stopping == null )
+            return true;
+
+        LockSupport.unpark( stopping );
+
+        try
+        {
+            stopping.join( STOP_MILLIS );
+        }
+        catch ( InterruptedException ex )
+        {
+            Thread.currentThread().interrupt();
+
+        } // end try-catch
+
+        if ( stopping.isAlive() )
+        {
+            Logger.getLogger( SimulationLoop.class.getName() ).log( Level.WARNING,
+                "The simulation thread did not stop within {0} ms", STOP_MILLIS );
+            return false;
+
+        } // end if-then
+
+        return true;
+
+    } // end method stop
+
+
+    /**
+     * @return the newest frame (render thread only)
+     */
+    BallFrame latest()
+    {
+        return frames.latest();
+
+    } // end method latest
+
+
+    /**
+     * The simulation thread: run the table's commands, take
+     * the player's aim, tick, publish, let the opponent see the
+     * result, and sleep off whatever
+     * is left of the period (or until there is input, once the
+     * table is still).
+     */
+    @Override
+    public void run()
+    {
+        long next = System.nanoTime();
+
+        while ( running )
+        {
+            // A command may move balls at rest (a re-rack,
+            // ball in hand): the renderer must see that too.
+            boolean commanded = table.runCommands();
+            input.applyAim();
+
+            if ( table.ballsAreMoving() )
+            {
+                integrator.tick( table );
+                publish();
+            }
+            else if ( commanded )
+            {
+                publish();
+
+            } // end if-then-else
+
+            // The opponent may re-rack, or put the cue ball back
+            // on its spot, once a shot is over.
+            if ( opponent != null && opponent.update( table ) )
+                publish();
+
+            if ( idle.await( table.ballsAreMoving() ) )
+            {
+                next = System.nanoTime();
+                continue;
+
+            } // end if-then
+
+            next += period;
+            long sleep = next - System.nanoTime();
+
+            if ( sleep > 0 )
+            {
+                LockSupport.parkNanos( this, sleep );
+            }
+            else
+            {
+                // Fallen behind: don't try to catch up in a burst.
+                next = System.nanoTime();
+
+            } // end if-then-else
+
+        } // end while
+
+    } // end method run
+
+
+    /**
+     * Copy the balls into the back frame and hand it over.
+     */
+    private void publish()
+    {
+        BallFrame frame = frames.back();
+
+        table.writeFrame( frame );
+        frame.setTick( ++tick );
+        frames.publish();
+
+    } // end method publish
+
+} // end class SimulationLoop
@@ -0,0 +1,55 @@
+package com.aidan3d.pool;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * A Java Flight Recorder event spanning one call to
+ * <b>Table.update()</b> (i.e., one "tick" of the physics
+ * engine). The event's duration is the time spent in the
+ * collision passes; its fields tell us how much work the
+ * tick actually did.
+ * <p>
+ * The event is disabled by default: switch it on in a
+ * <i>.jfc</i> settings file (or with
+ * <i>-XX:StartFlightRecording:settings=...</i>) using the
+ * name <i>com.aidan3d.pool.SimulationTick</i>.
+ * @see FlightEvents
+ */
+@Name( "com.aidan3d.pool.SimulationTick" )
+@Label( "Simulation Tick" )
+@Category( { "Pool", "Simulation" } )
+@Description( "One update() pass over the balls on a pool table" )
+@Enabled( false )
+@StackTrace( false )
+class SimulationTickEvent extends Event
+{
+    @Label( "Ball Count" )
+    int ballCount;                                  // Balls on the table
+
+    @Label( "Pairs Tested" )
+    int pairsTested;                                // Ball <-> ball
+                                                    // circleCircleCollision()
+                                                    // calls this tick
+
+    @Label( "Wall Tests" )
+    int wallTests;                                  // Ball <-> rail
+                                                    // (and jaw) tests
+                                                    // this tick
+
+    @Label( "Active Balls" )
+    int activeBalls;                                // Balls moving or
+                                                    // spinning this tick
+
+    @Label( "Islands" )
+    int islands;                                    // Contact groups the
+                                                    // ball <-> ball pass
+                                                    // actually visited
+
+} // end class SimulationTickEvent
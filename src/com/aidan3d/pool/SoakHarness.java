@@ -0,0 +1,462 @@
+package com.aidan3d.pool;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import math.geom2d.Vector2D;
+
+
+/**
+ * The <b>SoakHarness</b> is a headless regression check for the
+ * physics engine. It plays thousands of seeded shots on copies
+ * of the standard <b>Table</b>, each one frame by frame as the
+ * game plays it (through an <b>AdaptiveIntegrator</b>, at the
+ * powers the cue allows) until the balls stop (or a tick limit
+ * is reached), and:<br>
+ * &nbsp&nbsp a) &nbsp hashes each final table (every ball's
+ * position and "sunk" flag) and compares it with a golden
+ * corpus, so an "optimization" that changes the outcome of
+ * even one shot is caught;<br>
+ * &nbsp&nbsp b) &nbsp measures ticks per second and bytes
+ * allocated per tick, failing if throughput has dropped by more
+ * than a set fraction since the corpus was recorded.
+ * <p>
+ * Usage: <i>java com.aidan3d.pool.SoakHarness [-record | -check]
+ * [-golden file] [-scenarios n] [-seed s] [-ticks n]
+ * [-threshold f] [-table file.pool] [-report file.csv]</i>.
+ * With <i>-record</i> (or when the golden file does not exist yet) the run is
+ * written out as the new corpus. With <i>-check</i> only the
+ * hashes are compared (throughput depends on the machine), and
+ * a missing corpus is a failure, not a new recording. The
+ * process exits with status 1 if any check fails. The
+ * <i>soak</i> target in <i>build.xml</i> runs it; the
+ * <i>test</i> target runs it with <i>-check</i> against the
+ * corpus committed in <i>soak/golden.txt</i>.
+ * <p>
+ * The corpus is only meaningful for the javaGeom build it was
+ * recorded against: re-record it (and say so in the commit)
+ * whenever a change is <i>meant</i> to alter the physics.
+ */
+public final class SoakHarness
+{
+    private static final String HEADER = "# pool soak corpus";
+    private static final String THROUGHPUT = "# ticks-per-second ";
+
+    private static final int WARMUP_SCENARIOS = 100;    // Untimed, to let
+                                                        // the JIT settle
+
+    private static final int TABLE_X = 275;             // The standard table,
+    private static final int TABLE_Y = 50;              // where PoolPanel puts
+    private static final int TABLE_WIDTH = 250;         // it on an 800 x 600
+    private static final int BALL_RADIUS = 6;           // panel
+    private static final double POCKET_MULTIPLIER = 2.2F;
+    private static final double JAW_MULTIPLIER = 0.7F;
+    private static final double BED_FRICTION = 0.1F;
+    private static final int PANEL_WIDTH = 800;
+    private static final int PANEL_HEIGHT = 600;
+
+    private final Table start;
+    private final AdaptiveIntegrator integrator;
+    private final BallFrame frame;
+    private final int maxTicks;
+    private final ThreadMXBean threads;
+    private final boolean countAllocations;
+
+
+    /**
+     * The two-argument constructor.
+     * @param start the table every scenario begins from (it is
+     * copied, never played on)
+     * @param maxTicks the most ticks (frames, however many sub-steps
+     * each takes) a scenario may run
+     */
+    SoakHarness( Table start, int maxTicks )
+    {
+        this.start = start;
+        this.maxTicks = maxTicks;
+
+        integrator = AdaptiveIntegrator.headless();
+        frame = new BallFrame( start.getBallCount() );
+        threads = ManagementFactory.getThreadMXBean();
+        countAllocations = threads instanceof com.sun.management.ThreadMXBean
+            && ( ( com.sun.management.ThreadMXBean )threads ).isThreadAllocatedMemorySupported();
+
+    } // end two-argument constructor
+
+
+    /**
+     * Play one seeded shot to the end.
+     * @param seed picks the cue angle, power and spin
+     * @return what happened
+     */
+    Result run( long seed )
+    {
+        SplittableRandom random = new SplittableRandom( seed );
+        double angle = random.nextDouble( 2.0 * Math.PI );
+        double power = random.nextDouble( CueInput.MIN_POWER, CueInput.MAX_POWER );
+        double top = random.nextDouble( -1.0, 2.0 );
+        double side = random.nextDouble( -0.2, 0.2 );
+
+        long bytesBefore = allocatedBytes();
+        long began = System.nanoTime();
+
+        Table table = new Table( start );
+        table.shoot( new Vector2D( power * Math.cos( angle ), power * Math.sin( angle ) ), top, side );
+
+        int ticks = 0;
+
+        while ( table.ballsAreMoving() && ticks < maxTicks )
+        {
+            integrator.tick( table );
+            ticks++;
+
+        } // end while
+
+        long nanos = System.nanoTime() - began;
+        long bytes = allocatedBytes() - bytesBefore;
+
+        return new Result( seed, hash( table ), ticks, nanos, bytes );
+
+    } // end method run
+
+
+    /**
+     * @return a 64-bit hash of every ball's position and
+     * "sunk" flag (FNV-1a over the raw bits of the numbers)
+     */
+    private long hash( Table table )
+    {
+        table.writeFrame( frame );
+
+        long h = 0xcbf29ce484222325L;
+
+        for ( int i = 0; i < frame.getCount(); i++ )
+        {
+            h = mix( h, Double.doubleToLongBits( frame.getX( i ) ) );
+            h = mix( h, Double.doubleToLongBits( frame.getY( i ) ) );
+            h = mix( h, frame.isPocketed( i ) ? 1L : 0L );
+
+        } // end for
+
+        return h;
+
+    } // end method hash
+
+
+    private static long mix( long h, long value )
+    {
+        for ( int shift = 0; shift < 64; shift += 8 )
+        {
+            h ^= ( value >>> shift ) & 0xff;
+            h *= 0x100000001b3L;
+
+        } // end for
+
+        return h;
+
+    } // end method mix
+
+
+    /**
+     * @return the bytes this thread has allocated so far, or 0
+     * if the JVM cannot say
+     */
+    private long allocatedBytes()
+    {
+        if ( !countAllocations )
+            return 0L;
+
+        return ( ( com.sun.management.ThreadMXBean )threads )
+            .getThreadAllocatedBytes( Thread.currentThread().getId() );
+
+    } // end method allocatedBytes
+
+
+    /**
+     * @return a new table laid out as the game lays it out
+     */
+    static Table standardTable()
+    {
+        return new Table( TABLE_X, TABLE_Y, TABLE_WIDTH, BALL_RADIUS,
+            POCKET_MULTIPLIER, JAW_MULTIPLIER, BED_FRICTION );
+
+    } // end method standardTable
+
+
+    /**
+     * @param definition the table's definition, or null for
+     * the standard table
+     * @return a new table laid out as the game lays it out
+     * (centered across the panel, its top half a length up
+     * from the middle)
+     */
+    static Table gameTable( TableDefinition definition )
+    {
+        if ( definition == null )
+            return standardTable();
+
+        return new Table( ( PANEL_WIDTH / 2 ) - ( definition.getWidth() / 2 ),
+            ( PANEL_HEIGHT / 2 ) - definition.getWidth(), definition );
+
+    } // end method gameTable
+
+
+    /**
+     * Run the harness.
+     * @param args see the class comment
+     * @throws IOException if the corpus or report cannot be
+     * read or written
+     */
+    public static void main( String[] args ) throws IOException
+    {
+        Path golden = Paths.get( "soak", "golden.txt" );
+        Path report = null;
+        Path table = null;
+        boolean record = false;
+        boolean hashesOnly = false;
+        int scenarios = 2000;
+        long seed = 20150101L;
+        int maxTicks = 5000;
+        double threshold = 0.25;
+
+        for ( int i = 0; i < args.length; i++ )
+        {
+            switch ( args[ i ] )
+            {
+                case "-record":     record = true; break;
+                case "-check":      hashesOnly = true; break;
+                case "-golden":     golden = Paths.get( args[ ++i ] ); break;
+                case "-table":      table = Paths.get( args[ ++i ] ); break;
+                case "-report":     report = Paths.get( args[ ++i ] ); break;
+                case "-scenarios":  scenarios = Integer.parseInt( args[ ++i ] ); break;
+                case "-seed":       seed = Long.parseLong( args[ ++i ] ); break;
+                case "-ticks":      maxTicks = Integer.parseInt( args[ ++i ] ); break;
+                case "-threshold":  threshold = Double.parseDouble( args[ ++i ] ); break;
+                default:
+                    System.err.println( "Unknown option " + args[ i ] );
+                    System.exit( 2 );
+
+            } // end switch
+
+        } // end for
+
+        if ( hashesOnly && ( record || !Files.exists( golden ) ) )
+        {
+            System.err.println( record ? "-check and -record do not go together"
+                : "No golden corpus at " + golden + "; record one with -record" );
+            System.exit( 1 );
+
+        } // end if-then
+
+        // The same table the game starts with, unless told
+        // otherwise.
+        Table start = gameTable( table != null ? new TableDefinitionCache().load( table ) : null );
+        SoakHarness harness = new SoakHarness( start, maxTicks );
+
+        // Warm up on seeds the corpus never uses.
+        SplittableRandom warmup = new SplittableRandom( ~seed );
+
+        for ( int i = 0; i < WARMUP_SCENARIOS; i++ )
+            harness.run( warmup.nextLong() );
+
+        SplittableRandom seeds = new SplittableRandom( seed );
+        List<Result> results = new ArrayList<>( scenarios );
+        long ticks = 0L;
+        long nanos = 0L;
+        long bytes = 0L;
+
+        for ( int i = 0; i < scenarios; i++ )
+        {
+            Result r = harness.run( seeds.nextLong() );
+
+            results.add( r );
+            ticks += r.ticks;
+            nanos += r.nanos;
+            bytes += r.bytes;
+
+        } // end for
+
+        double ticksPerSecond = ticks * 1.0e9 / Math.max( nanos, 1L );
+
+        System.out.printf( "%d scenarios, %d ticks, %.0f ticks/s, %.1f bytes/tick%n",
+            scenarios, ticks, ticksPerSecond, bytes / ( double )Math.max( ticks, 1L ) );
+
+        if ( report != null )
+            writeReport( report, results );
+
+        if ( record || !Files.exists( golden ) )
+        {
+            writeCorpus( golden, results, ticksPerSecond );
+            System.out.println( "Recorded corpus " + golden );
+            return;
+
+        } // end if-then
+
+        // (A throughput "drop" of 100% or less always passes.)
+        boolean passed = check( golden, results, ticksPerSecond,
+            hashesOnly ? 1.0 : threshold, System.out );
+
+        System.out.println( passed ? "PASS" : "FAIL" );
+
+        if ( !passed )
+            System.exit( 1 );
+
+    } // end method main
+
+
+    /**
+     * Compare a run with the golden corpus.
+     * @return true if every hash matches and throughput is
+     * within the threshold of the recorded figure
+     */
+    private static boolean check( Path golden, List<Result> results, double ticksPerSecond,
+        double threshold, PrintStream out ) throws IOException
+    {
+        List<String> lines = Files.readAllLines( golden, StandardCharsets.UTF_8 );
+        double recordedRate = 0.0;
+        int index = 0;
+        int diverged = 0;
+
+        for ( String line : lines )
+        {
+            if ( line.startsWith( THROUGHPUT ) )
+            {
+                recordedRate = Double.parseDouble( line.substring( THROUGHPUT.length() ).trim() );
+                continue;
+
+            } // end if-then
+
+            if ( line.isEmpty() || line.startsWith( "#" ) )
+                continue;
+
+            String[] fields = line.trim().split( "\\s+" );
+
+            if ( index >= results.size() )
+            {
+                out.println( "Corpus has more scenarios than were run; run with -scenarios "
+                    + ( index + 1 ) + " or more" );
+                return false;
+
+            } // end if-then
+
+            Result r = results.get( index++ );
+            long seed = Long.parseLong( fields[ 0 ] );
+            long hash = Long.parseUnsignedLong( fields[ 1 ], 16 );
+
+            if ( seed != r.seed )
+            {
+                out.println( "Scenario " + index + " has seed " + r.seed + ", corpus has " + seed
+                    + ": re-run with the corpus's -seed" );
+                return false;
+
+            } // end if-then
+
+            if ( hash != r.hash )
+            {
+                diverged++;
+
+                if ( diverged <= 10 )
+                    out.printf( "DIVERGED seed %d: expected %016x, got %016x (%d ticks)%n",
+                        seed, hash, r.hash, r.ticks );
+
+            } // end if-then
+
+        } // end for
+
+        boolean passed = ( diverged == 0 );
+
+        if ( !passed )
+            out.println( diverged + " of " + index + " scenarios diverged" );
+
+        if ( recordedRate > 0.0 && ticksPerSecond < recordedRate * ( 1.0 - threshold ) )
+        {
+            out.printf( "SLOWER: %.0f ticks/s against %.0f recorded (threshold %.0f%%)%n",
+                ticksPerSecond, recordedRate, threshold * 100.0 );
+            passed = false;
+
+        } // end if-then
+
+        return passed;
+
+    } // end method check
+
+
+    private static void writeCorpus( Path golden, List<Result> results, double ticksPerSecond )
+        throws IOException
+    {
+        if ( golden.getParent() != null )
+            Files.createDirectories( golden.getParent() );
+
+        try ( BufferedWriter out = Files.newBufferedWriter( golden, StandardCharsets.UTF_8 ) )
+        {
+            out.write( HEADER + ": seed, final-state hash, ticks" );
+            out.newLine();
+            out.write( THROUGHPUT + String.format( "%.0f", ticksPerSecond ) );
+            out.newLine();
+
+            for ( Result r : results )
+            {
+                out.write( String.format( "%d %016x %d", r.seed, r.hash, r.ticks ) );
+                out.newLine();
+
+            } // end for
+
+        } // end try-with-resources
+
+    } // end method writeCorpus
+
+
+    private static void writeReport( Path report, List<Result> results ) throws IOException
+    {
+        try ( BufferedWriter out = Files.newBufferedWriter( report, StandardCharsets.UTF_8 ) )
+        {
+            out.write( "seed,hash,ticks,nanos,ticks_per_second,bytes_per_tick" );
+            out.newLine();
+
+            for ( Result r : results )
+            {
+                out.write( String.format( "%d,%016x,%d,%d,%.0f,%.1f", r.seed, r.hash, r.ticks, r.nanos,
+                    r.ticks * 1.0e9 / Math.max( r.nanos, 1L ), r.bytes / ( double )Math.max( r.ticks, 1 ) ) );
+                out.newLine();
+
+            } // end for
+
+        } // end try-with-resources
+
+    } // end method writeReport
+
+
+    /**
+     * The outcome of one scenario.
+     */
+    static final class Result
+    {
+        final long seed;
+        final long hash;                    // Of the final table
+        final int ticks;
+        final long nanos;                   // Wall-clock time taken
+        final long bytes;                   // Allocated on the way
+                                            // (0 if unknown)
+
+        Result( long seed, long hash, int ticks, long nanos, long bytes )
+        {
+            this.seed = seed;
+            this.hash = hash;
+            this.ticks = ticks;
+            this.nanos = nanos;
+            this.bytes = bytes;
+
+        } // end five-argument constructor
+
+    } // end class Result
+
+} // end class SoakHarness
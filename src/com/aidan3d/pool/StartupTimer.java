@@ -0,0 +1,110 @@
+package com.aidan3d.pool;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * The <b>StartupTimer</b> times a cold start, from the JVM
+ * launching to the first frame of the table on screen, and
+ * prints a one-line report when that frame has been drawn:
+ * <p>
+ * <i>startup: jvm 180 ms, table 12 ms, window 240 ms, first
+ * frame 275 ms</i>
+ * <p>
+ * The "jvm" figure is the time before <b>Pool.main()</b> ran;
+ * the others are measured from the start of <b>main()</b>.
+ * <p>
+ * With <i>-Dpool.exitAfterFirstFrame=true</i> the game quits
+ * straight after the report. The <i>cds</i> target in
+ * <i>build.xml</i> uses that to record which classes a start
+ * loads, for the class-data sharing archive.
+ */
+final class StartupTimer
+{
+    private static final long MAIN = System.nanoTime(); // Set when main()
+                                                        // first touches us
+    private static volatile long tableReady;
+    private static volatile long windowShown;
+    private static final AtomicBoolean reported = new AtomicBoolean();
+
+
+    private StartupTimer()
+    {
+    }
+
+
+    /**
+     * Start the clock (call first thing in <b>main()</b>).
+     */
+    static void begin()
+    {
+        // Loading the class has already set MAIN.
+    }
+
+
+    /**
+     * The pool table has been built.
+     */
+    static void tableReady()
+    {
+        tableReady = System.nanoTime();
+    }
+
+
+    /**
+     * The game window has been shown.
+     */
+    static void windowShown()
+    {
+        windowShown = System.nanoTime();
+    }
+
+
+    /**
+     * A frame has been drawn; the first one is reported (and
+     * ends the game, if we were asked to).
+     */
+    static void frameDrawn()
+    {
+        if ( !reported.compareAndSet( false, true ) )
+            return;
+
+        long now = System.nanoTime();
+
+        System.out.println( "startup: jvm " + jvmMillis() + " ms, table " + millis( tableReady )
+            + " ms, window " + millis( windowShown ) + " ms, first frame " + millis( now ) + " ms" );
+
+        if ( Boolean.getBoolean( "pool.exitAfterFirstFrame" ) )
+            System.exit( 0 );
+
+    } // end method frameDrawn
+
+
+    private static String millis( long at )
+    {
+        return at == 0L ? "?" : Long.toString( ( at - MAIN ) / 1000000L );
+
+    } // end method millis
+
+
+    /**
+     * @return how long the JVM ran before main(), or "?" if
+     * the platform cannot say when the process started
+     */
+    private static String jvmMillis()
+    {
+        Optional<Instant> started = ProcessHandle.current().info().startInstant();
+
+        if ( !started.isPresent() )
+            return "?";
+
+        long sinceStart = Instant.now().toEpochMilli() - started.get().toEpochMilli();
+        long sinceMain = ( System.nanoTime() - MAIN ) / 1000000L;
+
+        return Long.toString( Math.max( sinceStart - sinceMain, 0L ) );
+
+    } // end method jvmMillis
+
+} // end class StartupTimer
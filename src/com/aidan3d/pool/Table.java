@@ -1,8 +1,10 @@
 package com.aidan3d.pool;
 
-import java.awt.Color;
-import java.awt.Graphics;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import math.geom2d.Point2D;
 import math.geom2d.Vector2D;
 
@@ -14,11 +16,28 @@ import math.geom2d.Vector2D;
  * &nbsp&nbsp b) &nbsp A pair of "jaws" (circular
  * "bumpers" representing the corners of the pockets/
  * at the ends of each rail/line segment.
+ * <p>
+ * A table is not thread-safe: one thread (the game loop, or a
+ * <b>SimulationLoop</b>) owns it. Other threads change it only
+ * by <b>submit()</b>ting <b>TableCommand</b>s, which the owner
+ * carries out at the start of its next tick.
  */
 public class Table
 {
     //<editor-fold defaultstate="collapsed" desc="Fields">
     private final double BALL_MASS = 1.0;     // ALL balls' mass, in kg
+
+    private static final double SLIDE_SCALE = 0.2;    // Turn the bed friction
+    private static final double ROLL_SCALE = 0.02;    // into sliding, rolling
+    private static final double SPIN_SCALE = 0.02;    // and side-spin decay,
+                                                      // per frame per frame
+
+    private static final double HASH_CELL = 0.5;      // Grid, in pixels, the
+                                                      // state hash snaps ball
+                                                      // positions to
+    private static final double ENGLISH_TRANSFER = 0.3; // Share of side-spin
+                                                        // a cushion turns
+                                                        // into speed
     
     private boolean moving;
     
@@ -68,9 +87,6 @@ public class Table
                                               // pool table's bed. It reduces
                                               // the speed of the ball
 
-    private final Color baize;                // The color of the bed's
-                                              // playing-surface
-
     private final ArrayList<Ball> balls;      // All sixteen balls in play
                                               // (including the cue ball)
 
@@ -82,11 +98,59 @@ public class Table
                                               // "bumpers" placed at the
                                               // mouths of each pocket
 
+    private final CushionKernel cushions;     // The rails, as flat
+                                              // arrays for the
+                                              // collision tests
+
+    private final TableGrid grid;             // Which rails, jaws and
+                                              // pockets are near each
+                                              // part of the table
+
     private final ArrayList<Circle> pockets;  // Pockets circles --
                                               // once a ball has
                                               // entered one of these
                                               // circles, its "pocketed"
                                               // flag is raised
+
+    private int pairsTested;                  // Per-tick work counters,
+    private int wallTests;                    // reset at the top of each
+    private int ballHits;                     // update() call and reported
+    private int wallHits;                     // to the Flight Recorder
+    private int frameBallHits;                // The same hits, summed
+    private int frameWallHits;                // over the frame's
+                                              // sub-steps
+
+    private final ContactIslands islands;     // This tick's groups of
+                                              // moving balls (and the
+                                              // balls they could touch)
+
+    private final TrajectoryPredictor predictor;  // Works out the aim
+                                                  // guide off the game
+                                                  // thread
+
+    private long stateVersion;                // Bumped on every move(), so
+                                              // the predictor knows when
+                                              // its snapshot is stale
+
+    private double[] aimX;                    // Reusable snapshot arrays
+    private double[] aimY;                    // handed to the predictor
+    private double[] aimR;
+
+    private final ZobristHash stateHash;      // Where the balls are,
+                                              // kept up to date as
+                                              // they move and drop
+
+    private ShotRecorder recorder;            // Logs each shot (null
+                                              // unless a ShotLog is
+                                              // attached)
+
+    private final double[] rackX;             // Where each ball started,
+    private final double[] rackY;             // for reset()
+
+    private final MpscQueue<TableCommand> commands;   // From controllers
+                                                      // on other threads
+
+    private volatile IdleGate[] commandGates;         // Woken by submit()
     //</editor-fold>
 
 
@@ -103,6 +167,37 @@ public class Table
      * @param f is the "de-accelerating" friction between ball and bed
      */
     public Table( int x, int y, int t, int r, double p, double j, double f )
+    {
+        this( x, y, t, r, p, j, f, null );
+
+    } // end seven-argument constructor
+
+
+    /**
+     * The three-argument constructor: a table, and its rack,
+     * built from a loaded definition.
+     * @param x is the x-ordinate of the pool table's top-left origin
+     * @param y is the y-ordinate of the pool table's top-left origin
+     * @param definition the table's dimensions and rack
+     * @see TableDefinitionCache
+     */
+    public Table( int x, int y, TableDefinition definition )
+    {
+        this( x, y, definition.getWidth(), definition.getBallRadius(),
+            definition.getPocketMultiplier(), definition.getJawMultiplier(),
+            definition.getFriction(), definition.getRack() );
+
+    } // end three-argument constructor
+
+
+    /**
+     * The eight-argument constructor, which does the work for
+     * both public ones.
+     * @param rack the balls to place, or null for the standard
+     * rack laid out by createBalls()
+     */
+    private Table( int x, int y, int t, int r, double p, double j, double f,
+        List<TableDefinition.RackBall> rack )
     {
         //< editor-fold defaultstate="folded" desc = "Fields" >
         xOrigin = x;
@@ -114,11 +209,6 @@ public class Table
         friction = f;
         moving = false;
 
-        baize = new Color( 0, 0.2f, 0 );    // (0.0F, 0.392F, 0.078F):
-                                            // baizeHSB = 120, 100, 20
-                                            // (0/255, 51/255, 0/255):
-                                            // baizeRGB = 0, 51, 0
-
         balls = new ArrayList<>();          // Loaded inside createBalls()
 
         walls = new ArrayList<>();          // Loaded inside defineWalls(),
@@ -133,15 +223,94 @@ public class Table
         // cushions at the mouths of each "opening" or gap between
         // the rails.
         defineTable();
-        createBalls();
-        
-        // Let's set the cue ball in motion!
-        balls.get(0).setVelocity( new Vector2D( -1.0, 0.5) ); // 1 pixel per frame
+
+        // A ball is never more than a step (at most a radius)
+        // past what it touches.
+        grid = new TableGrid( walls, jaws, pockets, 2.0 * ballRadius );
+        cushions = new CushionKernel( walls );
+
+        if ( rack == null )
+            createBalls();
+        else
+            placeBalls( rack );
+
+        rackX = new double[ balls.size() ];
+        rackY = new double[ balls.size() ];
+
+        for ( int i = 0; i < balls.size(); i++ )
+        {
+            rackX[ i ] = balls.get( i ).getCenterVec().x;
+            rackY[ i ] = balls.get( i ).getCenterVec().y;
+
+        } // end for
+
+        commands = new MpscQueue<>();
+        commandGates = new IdleGate[ 0 ];
+        islands = new ContactIslands();
+        stateHash = new ZobristHash( HASH_CELL );
+        stateHash.reset( balls );
+
+        // One degree of turn, or a tenth of a pixel per frame
+        // of speed, before the aim guide is worked out again.
+        predictor = new TrajectoryPredictor( walls, Math.toRadians( 1.0 ), 0.1 );
+        aimX = new double[ balls.size() ];
+        aimY = new double[ balls.size() ];
+        aimR = new double[ balls.size() ];
         
-        // Fake out the "moving" tool!
-        moving = true;
+        // Let's set the cue ball in motion! (A plain,
+        // rolling break: shoot() also clears the aim guide.)
+        Vector2D breakShot = new Vector2D( -1.0, 0.5 );   // 1 pixel per frame
+        shoot( breakShot );
 
-    } // end seven-argument constructor
+    } // end eight-argument constructor
+
+
+    /**
+     * The copy constructor: a cheap clone for headless
+     * "what if?" rollouts (e.g., by the <b>ShotSearch</b> AI).
+     * <p>
+     * The cushion rails, jaws and pockets never change once
+     * the table is built, so the copy shares them; only the
+     * balls are copied. A copy has no aim guide.
+     * @param original the table to copy
+     */
+    Table( Table original )
+    {
+        xOrigin = original.xOrigin;
+        yOrigin = original.yOrigin;
+        tableSize = original.tableSize;
+        ballRadius = original.ballRadius;
+        pocketMultiplier = original.pocketMultiplier;
+        jawMultiplier = original.jawMultiplier;
+        friction = original.friction;
+        moving = original.moving;
+
+        walls = original.walls;
+        jaws = original.jaws;
+        grid = original.grid;
+        cushions = original.cushions;
+        pockets = original.pockets;
+
+        balls = new ArrayList<>( original.balls.size() );
+
+        for ( Ball b : original.balls )
+        {
+            balls.add( new Ball( b ) );
+
+        } // end for
+
+        rackX = original.rackX;
+        rackY = original.rackY;
+        commands = new MpscQueue<>();       // Commands sent to the
+                                            // original stay there
+        commandGates = new IdleGate[ 0 ];
+
+        islands = new ContactIslands();
+        stateHash = new ZobristHash( original.stateHash );
+        predictor = null;                   // Headless: no background
+                                            // thread per copy
+
+    } // end copy constructor
     //</editor-fold>
 
 
@@ -160,35 +329,52 @@ public class Table
 
 
     /**
-     * This method runs through all sixteen
-     * in-play (i.e., on the table) balls
-     * looking for a hit with another ball.
+     * This method looks for hits between balls in play.
+     * <p>
+     * Two balls at rest cannot hit each other, so only balls
+     * in the same contact island (a group of moving balls,
+     * plus any resting ball one of them could reach this tick)
+     * are tested: pairs in which neither ball is moving are
+     * skipped, as are balls no moving ball is near.
      */
     private void collisionsWithBalls()
     {
-        // Run through all sixteen balls, looking
-        // for hits with other balls.
-        for ( Ball outerBall : balls ) // outer loop begin
-        {           
-            // Check the outerBall with all innerBalls
-            // (except itself, of course!)
-            for ( Ball innerBall : balls ) // inner loop begin
+        islands.build( balls );
+
+        for ( int k = 0; k < islands.getIslandCount(); k++ ) // island loop begin
+        {
+            int size = islands.getIslandSize( k );
+
+            for ( int p = 0; p < size; p++ ) // outer loop begin
             {
-                // Check whether we are referencing
-                // the same ball.
-                if (!outerBall.equals(innerBall)) 
+                int i = islands.getMember( k, p );
+                Ball outerBall = balls.get( i );
+
+                // Check outerBall against the rest of its
+                // island (each pair once).
+                for ( int q = p + 1; q < size; q++ ) // inner loop begin
                 {
+                    int j = islands.getMember( k, q );
+
+                    if ( !islands.isAwake( i ) && !islands.isAwake( j ) )
+                        continue;
+
+                    Ball innerBall = balls.get( j );
+                    pairsTested++;
+
                     if ( outerBall.isHitByCircle( innerBall ) )
                     {
-                        outerBall.setVelocity( new Vector2D( 0.0, 0.0 ) ); // Hacky, but does the job
+                        ballHits++;
+                        outerBall.getVelocityVec().zero(); // Hacky, but does the job
+                        innerBall.getVelocityVec().zero();
 
-                    } // end inner-nested if-then
+                    } // end if-then
 
-                } // end outer nested if-tehn
+                } // end inner for loop
 
-            } // end inner for loop
+            } // end outer for loop
 
-        } // end outer for loop
+        } // end island for loop
 
     } //end method collisionsWithBalls
 
@@ -196,32 +382,174 @@ public class Table
     /**
      * Run through all balls in play,
      * checking for hits with cushion
-     * rails.
+     * rails (only those the grid says
+     * are near the ball).
+     * <p>
+     * A ball pressed into a rail (or round
+     * the end of one) is put back against
+     * it, and, if it was heading into it,
+     * bounces off along the contact normal.
      */
     private void collisionsWithWalls()
     {
-        for ( Ball b : balls )
+        TableGrid.Cells near = grid.getWalls();
+        Vec2 push = Vec2.scratch( 0 );
+
+        for ( int i = 0; i < balls.size(); i++ )
+        {
+            Ball b = balls.get( i );
+
+            // A ball at rest cannot run into a rail.
+            if ( b.isPocketed() || !b.isAwake() )
+                continue;
+
+            Vec2 c = b.getCenterVec();
+            int cell = grid.cellAt( c.x, c.y );
+
+            if ( cell < 0 )
+                continue;
+
+            wallTests += near.end( cell ) - near.first( cell );
+
+            // (We can only hit one rail at a time: the one
+            // we are deepest into.)
+            if ( cushions.deepest( c.x, c.y, b.getRadius(), near, cell, push ) < 0 )
+                continue;
+
+            double depth = push.length();
+            double nx = push.x / depth;
+            double ny = push.y / depth;
+
+            c.add( push );
+            stateHash.moved( i, c );
+
+            Vec2 v = b.getVelocityVec();
+            double into = v.x * nx + v.y * ny;
+
+            if ( into < 0.0 )
+            {
+                wallHits++;
+                v.x -= 2.0 * into * nx;
+                v.y -= 2.0 * into * ny;
+
+                // Side-spin kicks the ball along the rail.
+                if ( b.getSpinZ() != 0.0 )
+                    b.applyEnglish( -ny, nx, ENGLISH_TRANSFER );
+
+            } // end if-then
+
+        } // end outer for loop
+    
+    } // end method collisionsWithWalls
+
+
+    /**
+     * Run through all balls in play, bouncing any ball that
+     * has run into a jaw off the jaw's curved face.
+     * <p>
+     * Only a ball near a pocket is tested, against just the
+     * jaws the grid lists beside it.
+     */
+    private void collisionsWithJaws()
+    {
+        TableGrid.Cells near = grid.getJaws();
+
+        for ( int i = 0; i < balls.size(); i++ )
         {
-            for (Line w : walls)
+            Ball b = balls.get( i );
+
+            if ( b.isPocketed() || !b.isAwake() )
+                continue;
+
+            Vec2 c = b.getCenterVec();
+            int cell = grid.cellAt( c.x, c.y );
+
+            if ( cell < 0 )
+                continue;
+
+            for ( int k = near.first( cell ); k < near.end( cell ); k++ )
             {
-                if ( b.isHitByLine( w ) )
+                Circle jaw = jaws.get( near.get( k ) );
+                wallTests++;
+
+                double nx = c.x - jaw.getCenterVec().x;
+                double ny = c.y - jaw.getCenterVec().y;
+                double reach = b.getRadius() + jaw.getRadius();
+                double distSq = nx * nx + ny * ny;
+
+                if ( distSq >= reach * reach || distSq == 0.0 )
+                    continue;
+
+                double dist = Math.sqrt( distSq );
+                nx /= dist;
+                ny /= dist;
+
+                // Only a ball heading into the jaw bounces
+                // (reflect its velocity about the normal).
+                Vec2 v = b.getVelocityVec();
+                double into = v.x * nx + v.y * ny;
+
+                if ( into < 0.0 )
                 {
-                    
-                    double preHitX = b.getVelocity().x();
-                    double preHitY = b.getVelocity().y();
-                    
-                    b.setVelocity( new Vector2D( new Point2D( b.getVelocity().x()*-1, b.getVelocity().y() ) ) );
-                    
-                    break; // stop looping through the
-                           // list of walls (we can only
-                           // hit one at a time!)
+                    wallHits++;
+                    v.x -= 2.0 * into * nx;
+                    v.y -= 2.0 * into * ny;
+
                 } // end if-then
-            
+
+                // Put the ball back on the jaw's surface.
+                c.x += nx * ( reach - dist );
+                c.y += ny * ( reach - dist );
+                stateHash.moved( i, c );
+
+                break; // a ball can only be against one
+                       // jaw at a time
             } // end inner for loop
 
         } // end outer for loop
-    
-    } // end method collisionsWithWalls
+
+    } // end method collisionsWithJaws
+
+
+    /**
+     * Run through all balls in play, sinking any ball
+     * whose center has crossed into a pocket circle.
+     */
+    private void collisionsWithPockets()
+    {
+        TableGrid.Cells near = grid.getPockets();
+
+        for ( int i = 0; i < balls.size(); i++ )
+        {
+            Ball b = balls.get( i );
+
+            if ( b.isPocketed() )
+                continue;
+
+            int cell = grid.cellAt( b.getCenterVec().x, b.getCenterVec().y );
+
+            if ( cell < 0 )
+                continue;
+
+            for ( int k = near.first( cell ); k < near.end( cell ); k++ )
+            {
+                Circle pocket = pockets.get( near.get( k ) );
+
+                if ( b.getCenterVec().distanceSq( pocket.getCenterVec() )
+                    < pocket.getRadius() * pocket.getRadius() )
+                {
+                    b.setPocketed();
+                    stateHash.pocketed( i );
+
+                    break; // a ball can only drop
+                           // into one pocket!
+                } // end if-then
+
+            } // end inner for loop
+
+        } // end outer for loop
+
+    } // end method collisionsWithPockets
     
     
     /**
@@ -262,87 +590,104 @@ public class Table
 
         // Add in the cue ball.
         balls.add( new Ball(
-            ballRadius, 10.0F, "cue", cueStart, Color.white ) );
+            ballRadius, 10.0F, "cue", cueStart, Ball.WHITE ) );
 
         // Add the first "spotted" (i.e., red) ball to the foot or
         // apex of the traingle; row 1, col. 1.
-        balls.add( new Ball( ballRadius, BALL_MASS, "1spot", triStart, Color.red) );
+        balls.add( new Ball( ballRadius, BALL_MASS, "1spot", triStart, Ball.RED) );
 
         // Add the first "striped" (i.e., yellow) ball to the rack;
         // row 2, col 1.
         balls.add( new Ball( ballRadius, BALL_MASS, "1stripe", new Vector2D( ( triStart.x() - 
-            ( ballRadius * FLOAT_MULTIPLIER ) ), triStart.y() + GAP ), Color.yellow ) );
+            ( ballRadius * FLOAT_MULTIPLIER ) ), triStart.y() + GAP ), Ball.YELLOW ) );
 
         // Rack the second "striped" ball;
         // row 3, col 2.
         balls.add( new Ball( ballRadius, BALL_MASS, "2stripe", new Vector2D( ( triStart.x() +
-            ( ballRadius * FLOAT_MULTIPLIER ) ), triStart.y() + GAP ), Color.yellow ) );
+            ( ballRadius * FLOAT_MULTIPLIER ) ), triStart.y() + GAP ), Ball.YELLOW ) );
 
         // Rack the second "spotted" ball;
         // row 3, col 1
         balls.add( new Ball( ballRadius, BALL_MASS, "2spot", new Vector2D( ( triStart.x() -
-            ( 2 * ( ballRadius * FLOAT_MULTIPLIER ) ) ), triStart.y() + ( 2 * GAP ) ), Color.red ) );
+            ( 2 * ( ballRadius * FLOAT_MULTIPLIER ) ) ), triStart.y() + ( 2 * GAP ) ), Ball.RED ) );
 
         // Rack the black ball;
         // row 3, col 2.
         balls.add( new Ball( ballRadius, BALL_MASS, "black", new Vector2D( triStart.x(),
-            ( triStart.y() + ( 2 * GAP ) ) ),  Color.black  ) );
+            ( triStart.y() + ( 2 * GAP ) ) ),  Ball.BLACK  ) );
 
         // Rack the third "spotted" ball;
         // row 3, col 3.
         balls.add( new Ball( ballRadius, BALL_MASS, "3spot", new Vector2D( ( triStart.x() +
-            ( 2 * ( ballRadius * FLOAT_MULTIPLIER ) ) ), ( triStart.y() + ( 2 * GAP ) ) ), Color.red ) );
+            ( 2 * ( ballRadius * FLOAT_MULTIPLIER ) ) ), ( triStart.y() + ( 2 * GAP ) ) ), Ball.RED ) );
 
         // Rack the third "striped" ball;
         // row 4, col 1.
         balls.add( new Ball( ballRadius, BALL_MASS, "3stripe", new Vector2D ( ( triStart.x() -
-            ( 3 * ( ballRadius * FLOAT_MULTIPLIER ) ) ), ( triStart.y() + ( 3 * GAP ) ) ), Color.yellow ) );
+            ( 3 * ( ballRadius * FLOAT_MULTIPLIER ) ) ), ( triStart.y() + ( 3 * GAP ) ) ), Ball.YELLOW ) );
 
         // Add the fourth "striped" ball;
         // row 4, col 2.
         balls.add( new Ball( ballRadius, BALL_MASS, "4stripe", new Vector2D( ( triStart.x() -
-            ( ( ballRadius * FLOAT_MULTIPLIER  ) ) ), ( triStart.y() + ( 3 * GAP ) ) ), Color.yellow ) );
+            ( ( ballRadius * FLOAT_MULTIPLIER  ) ) ), ( triStart.y() + ( 3 * GAP ) ) ), Ball.YELLOW ) );
 
         // Add the fourth "spotted" ball;
         // row 4, col 3.
         balls.add( new Ball( ballRadius, BALL_MASS, "4spot", new Vector2D( ( triStart.x() +
-            ( ballRadius * FLOAT_MULTIPLIER ) ), ( triStart.y() + ( 3 * GAP ) )), Color.red ) );
+            ( ballRadius * FLOAT_MULTIPLIER ) ), ( triStart.y() + ( 3 * GAP ) )), Ball.RED ) );
 
         // Add the fifth "striped" ball;
         // row 4, col 4.
         balls.add( new Ball( ballRadius, BALL_MASS, "5stripe", new Vector2D( ( triStart.x() +
-            (3 * ( ballRadius * FLOAT_MULTIPLIER)  ) ), ( triStart.y() + ( 3 * GAP ) ) ), Color.yellow ) );
+            (3 * ( ballRadius * FLOAT_MULTIPLIER)  ) ), ( triStart.y() + ( 3 * GAP ) ) ), Ball.YELLOW ) );
         
         // Add the fifth "spotted" ball;
         // row 5, col 1.
         balls.add( new Ball( ballRadius, BALL_MASS, "5spot", new Vector2D( ( triStart.x() -
-            ( 4 * ( ballRadius * FLOAT_MULTIPLIER ) ) ), ( triStart.y() + ( 4 * GAP ) ) ), Color.red ) );
+            ( 4 * ( ballRadius * FLOAT_MULTIPLIER ) ) ), ( triStart.y() + ( 4 * GAP ) ) ), Ball.RED ) );
         
         // Add the sixth "striped" ball;
         // row 5, col 2.
         balls.add( new Ball( ballRadius, BALL_MASS, "4stripe", new Vector2D( ( triStart.x() -
-            ( 2 * ( ballRadius * FLOAT_MULTIPLIER ) ) ), ( triStart.y() + ( 4 * GAP ) ) ), Color.yellow ) );
+            ( 2 * ( ballRadius * FLOAT_MULTIPLIER ) ) ), ( triStart.y() + ( 4 * GAP ) ) ), Ball.YELLOW ) );
         
         // Add the sixth "spotted" ball;
         // row 5, col 3.
         balls.add( new Ball( ballRadius, BALL_MASS, "6spot", new Vector2D( ( triStart.x() ),
-            ( triStart.y() + ( 4 * GAP ) ) ), Color.red )  );
+            ( triStart.y() + ( 4 * GAP ) ) ), Ball.RED )  );
         
         // Add the seventh "striped" ball;
         // row 5, col 4.
         balls.add( new Ball( ballRadius, BALL_MASS, "7stripe", new Vector2D( ( triStart.x() +
-            ( 2 * (ballRadius * FLOAT_MULTIPLIER ) ) ), ( triStart.y() + ( 4 * GAP ) ) ), Color.yellow ) );
+            ( 2 * (ballRadius * FLOAT_MULTIPLIER ) ) ), ( triStart.y() + ( 4 * GAP ) ) ), Ball.YELLOW ) );
         
         // Add the seventh "spotted" ball;
         // row 5, col 5.
         balls.add( new Ball(ballRadius, BALL_MASS, "7spot", new Vector2D( ( triStart.x() +
-            ( 4 * ( ballRadius * FLOAT_MULTIPLIER ) ) ),( triStart.y() + ( 4 * GAP ) ) ), Color.red ) );
+            ( 4 * ( ballRadius * FLOAT_MULTIPLIER ) ) ),( triStart.y() + ( 4 * GAP ) ) ), Ball.RED ) );
         
         
 
     } //end method createBalls
 
 
+    /**
+     * Load the balls from a table definition's rack, whose
+     * positions are measured from the table's top-left corner.
+     * @param rack the balls, cue ball first
+     */
+    private void placeBalls( List<TableDefinition.RackBall> rack )
+    {
+        for ( TableDefinition.RackBall b : rack )
+        {
+            balls.add( new Ball( ballRadius, b.getMass(), b.getId(),
+                new Vector2D( xOrigin + b.getX(), yOrigin + b.getY() ), b.getColor() ) );
+
+        } // end for
+
+    } // end method placeBalls
+
+
     private void defineJaws()
     {
         double jawRadius = ballRadius * jawMultiplier; 
@@ -653,63 +998,25 @@ public class Table
 
 
     /**
-     * Draw the table surface, the six padded
-     * rails and the six pairs of pocket jaws.
-     * @param dbg the buffer on to which we
-     * splash pixels
+     * Copy every ball's position and "sunk" flag into a frame
+     * (simulation thread only).
+     * @param frame the frame to fill in
      */
-    public void draw( Graphics dbg )
+    void writeFrame( BallFrame frame )
     {
-        // Draw the baize.
-        dbg.setColor( baize );
-        dbg.fillRect( xOrigin, yOrigin, tableSize, tableSize*2 );
-
-        // Draw the cushioned rails.
-        dbg.setColor( Color.white );
+        int count = Math.min( balls.size(), frame.getCapacity() );
 
-        // Run through the cushioned rails, drawing things.
-        for ( Line wall : walls )
-            dbg.drawLine( ( int )wall.getStart().x(), ( int )wall.getStart().y(),
-                ( int )wall.getEnd().x(), ( int )wall.getEnd().y() );
-
-        // Draw the bumpers, rounding up doubles to ints,
-        // where we can, for screen coordinates. We could
-        // do that in the Circle class and just return
-        // ints for code readability.
-        for ( Circle jaw : jaws )
+        for ( int i = 0; i < count; i++ )
         {
-            dbg.drawOval( ( int )( jaw.getCenter().x()-jaw.getRadius() ),
-                ( int )(jaw.getCenter().y()-jaw.getRadius() ),
-                ( int )jaw.getRadius()*2, ( int )jaw.getRadius()*2 );
-            
-        }  // end for
+            Ball b = balls.get( i );
 
-        // Draw the pockets.
-        for ( Circle pocket : pockets )
-        {
-            dbg.drawOval(
-                ( int )( pocket.getCenter().x()-pocket.getRadius() ),
-                ( int )( pocket.getCenter().y()-pocket.getRadius() ),
-                ( int ) pocket.getRadius()*2, ( int )pocket.getRadius()*2 ); // shift ovals
+            frame.set( i, b.getCenterVec().x, b.getCenterVec().y, b.isPocketed() );
 
         } // end for
-        
-        // Draw the balls.
-        for ( Ball ball : balls )
-        {
-            // The new disc will be the color of the current ball.
-            dbg.setColor( ball.getColor() );
-            
-            // Draw the disc at the ball's location on the table.
-            dbg.drawOval(
-            ( int )( ball.getCenter().x() - ball.getRadius() ),
-            ( int )( ball.getCenter().y() - ball.getRadius() ),
-            ( int )( 2 * ball.getRadius() ),
-            ( int )( 2 * ball.getRadius() ) );
-            
-        } // end for
 
-    }  // end method draw
+        frame.setCount( count );
+
+    } // end method writeFrame
 
 
     /**
@@ -718,16 +1025,93 @@ public class Table
      */
     public void move()
     {      
-        for (Ball b : balls)
+        move( 1.0 );
+
+    } //end method move
+
+
+    /**
+     * Move every ball in play part of the way along its
+     * velocity (one sub-step of a frame).
+     * @param fraction the fraction of a frame's travel
+     * @see AdaptiveIntegrator
+     */
+    public void move( double fraction )
+    {
+        boolean anyMoving = false;
+
+        for ( int i = 0; i < balls.size(); i++ )
         {
-            b.move();
+            Ball b = balls.get( i );
+
+            if ( b.isPocketed() )
+                continue;
+
+            b.move( fraction );
+            stateHash.moved( i, b.getCenterVec() );
+
+            // The bed's friction works on speed and spin in
+            // the same pass.
+            b.applyFriction( fraction, friction * SLIDE_SCALE,
+                friction * ROLL_SCALE, friction * SPIN_SCALE );
+
+            if ( !b.getVelocityVec().isZero() )
+                anyMoving = true;
 
         } // end for
 
+        // Once every ball has come to rest the shot is over,
+        // and any spin still on a ball (side-spin wears off far
+        // more slowly than the ball stops) goes with it.
+        moving = anyMoving;
+        stateVersion++;
+
+        if ( !moving )
+        {
+            for ( int i = 0; i < balls.size(); i++ )
+                balls.get( i ).stopSpin();
+
+        } // end if-then
+
+        if ( !moving && recorder != null )
+            recorder.end( pocketedMask() );
+
     } //end method move
     
+    /**
+     * This method runs one "tick" of the physics engine:
+     * every ball is checked against every other ball and
+     * against the cushion rails.
+     * <p>
+     * When a Flight Recorder recording has asked for them,
+     * a <b>SimulationTickEvent</b> (and, if anything was hit,
+     * a <b>CollisionBurstEvent</b>) is committed. Otherwise
+     * no event objects are created at all.
+     */
     public void update()
     {
+        SimulationTickEvent tickEvent = null;       // Only created when
+        CollisionBurstEvent burstEvent = null;      // a recording is on
+
+        if ( FlightEvents.ticksEnabled() )
+        {
+            tickEvent = new SimulationTickEvent();
+            tickEvent.begin();
+        
+        } // end if-then
+
+        if ( FlightEvents.burstsEnabled() )
+        {
+            burstEvent = new CollisionBurstEvent();
+            burstEvent.begin();
+        
+        } // end if-then
+
+        pairsTested = 0;
+        wallTests = 0;
+        ballHits = 0;
+        wallHits = 0;
+
         // Check for collisions between
         // all balls in play.
         collisionsWithBalls();
@@ -737,10 +1121,623 @@ public class Table
         // all balls in play and the
         // cushion rails
         collisionsWithWalls();
+
+        // ...and with the jaws at the pocket mouths.
+        collisionsWithJaws();
         
-        // collisionsWithPockets();
+        // Check for balls dropping
+        // into the pockets.
+        collisionsWithPockets();
+
+        if ( tickEvent != null )
+        {
+            tickEvent.end();
+
+            if ( tickEvent.shouldCommit() )
+            {
+                tickEvent.ballCount = balls.size();
+                tickEvent.pairsTested = pairsTested;
+                tickEvent.wallTests = wallTests;
+                tickEvent.activeBalls = islands.getAwakeCount();
+                tickEvent.islands = islands.getIslandCount();
+                tickEvent.commit();
+            
+            } // end nested if-then
+
+        } // end if-then
+
+        frameBallHits += ballHits;
+        frameWallHits += wallHits;
+
+        if ( recorder != null )
+            recorder.hits( ballHits, wallHits );
+
+        // A quiet tick is not a burst.
+        if ( burstEvent != null && ( ballHits + wallHits ) > 0 )
+        {
+            burstEvent.end();
+
+            if ( burstEvent.shouldCommit() )
+            {
+                burstEvent.ballHits = ballHits;
+                burstEvent.wallHits = wallHits;
+                burstEvent.ballCount = balls.size();
+                burstEvent.commit();
+
+            } // end nested if-then
+
+        } // end if-then
 
     } // end method update
+
+
+    /**
+     * Point the cue. The aim guide is worked out in the background
+     * from a snapshot of the balls' current centers; <b>draw()</b>
+     * shows it once it is ready. Small changes of aim reuse the
+     * guide already worked out.
+     * @param cueVelocity the velocity the cue ball would be given
+     */
+    public void aimCue( Vector2D cueVelocity )
+    {
+        // Headless copies have no aim guide.
+        if ( predictor == null )
+            return;
+
+        // No guide for a cue ball that is down.
+        if ( balls.get( 0 ).isPocketed() )
+        {
+            predictor.clear();
+            return;
+
+        } // end if-then
+
+        // Only the balls still in play, cue ball first: the
+        // guide must not run into a ball sitting in a pocket.
+        int count = 0;
+
+        for ( Ball b : balls )
+        {
+            if ( b.isPocketed() )
+                continue;
+
+            aimX[ count ] = b.getCenterVec().x;
+            aimY[ count ] = b.getCenterVec().y;
+            aimR[ count ] = b.getRadius();
+            count++;
+
+        } // end for
+
+        predictor.aim( cueVelocity, stateVersion, aimX, aimY, aimR, count );
+
+    } // end method aimCue
+
+
+    /**
+     * Strike the cue ball. The aim guide is thrown away,
+     * and the table starts updating again.
+     * @param cueVelocity the cue ball's new velocity, in
+     * pixels per frame
+     */
+    public void shoot( Vector2D cueVelocity )
+    {
+        shoot( cueVelocity, 1.0, 0.0 );
+
+    } // end method shoot
+
+
+    /**
+     * Strike the cue ball off-center, putting spin on it.
+     * @param cueVelocity the cue ball's new velocity, in
+     * pixels per frame
+     * @param top 1.0 for natural roll, more for follow, less
+     * than 0.0 for screw-back
+     * @param side side-spin ("english"), in radians per frame
+     * per unit of speed
+     */
+    public void shoot( Vector2D cueVelocity, double top, double side )
+    {
+        Ball cue = balls.get( 0 );
+
+        cue.setVelocity( cueVelocity );
+        cue.setSpin( top, side );
+        moving = true;
+
+        if ( recorder != null )
+            recorder.begin( cueVelocity.x(), cueVelocity.y(), top, side, pocketedMask() );
+
+        if ( predictor != null )
+            predictor.clear();
+
+    } // end method shoot
+
+
+    /**
+     * Put a ball, at rest, on a spot, taking it back out of its
+     * pocket if it has been sunk (e.g., the cue ball "in hand"
+     * after a foul). The aim guide is thrown away. The balls
+     * must be at rest.
+     * @param index which ball (the cue ball is 0)
+     * @param at where its center goes
+     */
+    public void placeBall( int index, Vector2D at )
+    {
+        if ( index < 0 || index >= balls.size() )
+            throw new IllegalArgumentException( "No ball " + index );
+
+        if ( moving )
+            throw new IllegalStateException( "A shot is under way" );
+
+        Ball b = balls.get( index );
+
+        b.respot( at );
+        stateHash.moved( index, b.getCenterVec() );
+        stateVersion++;
+
+        if ( recorder != null )
+            recorder.placed( index, at.x(), at.y() );
+
+        if ( predictor != null )
+            predictor.clear();
+
+    } // end method placeBall
+
+
+    /**
+     * Rack the balls again, at rest where they started, ready
+     * for a new break. A shot under way is ended where it is.
+     */
+    public void reset()
+    {
+        if ( moving && recorder != null )
+            recorder.end( pocketedMask() );
+
+        for ( int i = 0; i < balls.size(); i++ )
+            balls.get( i ).respot( new Vector2D( rackX[ i ], rackY[ i ] ) );
+
+        moving = false;
+        stateHash.reset( balls );
+        stateVersion++;
+
+        if ( recorder != null )
+            recorder.reset();
+
+        if ( predictor != null )
+            predictor.clear();
+
+    } // end method reset
+
+
+    /**
+     * Finish with the table: stop the aim guide's background
+     * thread. The table may still be played on, headless.
+     */
+    public void dispose()
+    {
+        if ( predictor != null )
+            predictor.shutdown();
+
+    } // end method dispose
+
+
+    /**
+     * Hand the table a command from any thread: a controller
+     * (the player, an AI, a network peer) never touches the
+     * balls itself. The command is carried out by the thread
+     * that owns the table, at the start of its next tick.
+     * <p>
+     * Thread-safe, lock-free, and never blocks. The owning
+     * thread is woken if it is idling (see
+     * <b>wakeOnCommands()</b>).
+     * @param command the command
+     * @see TableCommands
+     */
+    public void submit( TableCommand command )
+    {
+        commands.offer( command );
+
+        for ( IdleGate gate : commandGates )
+            gate.poke();
+
+    } // end method submit
+
+
+    /**
+     * Say which idle gates the threads that run this table's
+     * commands sleep on, so a command submitted while the
+     * table is still is carried out at once.
+     * @param gates the gates
+     */
+    void wakeOnCommands( IdleGate... gates )
+    {
+        commandGates = gates.clone();
+
+    } // end method wakeOnCommands
+
+
+    /**
+     * Carry out every command submitted so far, oldest first.
+     * Call at the start of each tick, from the thread that owns
+     * the table (<b>step()</b> does so itself).
+     * <p>
+     * A command that fails is logged and skipped: one bad
+     * command from a controller must not stop the loop that
+     * owns the table.
+     * @return true if there were any
+     */
+    public boolean runCommands()
+    {
+        boolean ran = false;
+        TableCommand command;
+
+        while ( ( command = commands.poll() ) != null )
+        {
+            try
+            {
+                command.apply( this );
+            }
+            catch ( RuntimeException ex )
+            {
+                Logger.getLogger( Table.class.getName() ).log( Level.WARNING,
+                    "Table command failed; skipped", ex );
+
+            } // end try-catch
+
+            ran = true;
+
+        } // end while
+
+        return ran;
+
+    } // end method runCommands
+
+
+    /**
+     * @return true if a break has just been struck: every
+     * object ball still on its spot in the rack, at rest, and
+     * only the cue ball moving
+     */
+    boolean isBreakShot()
+    {
+        if ( !moving || balls.get( 0 ).isPocketed() )
+            return false;
+
+        for ( int i = 1; i < balls.size(); i++ )
+        {
+            Ball b = balls.get( i );
+
+            if ( b.isPocketed() || b.isAwake()
+                || b.getCenterVec().x != rackX[ i ] || b.getCenterVec().y != rackY[ i ] )
+            {
+                return false;
+
+            } // end if-then
+
+        } // end for
+
+        return true;
+
+    } // end method isBreakShot
+
+
+    /**
+     * @return a 64-bit key for the shot under way: where the
+     * balls are, how the cue ball was struck (to the last bit),
+     * and the table they are on
+     */
+    long getShotKey()
+    {
+        Ball cue = balls.get( 0 );
+        long key = stateHash.get();
+
+        key = ZobristHash.mix( key ^ Double.doubleToLongBits( cue.getVelocityVec().x ) );
+        key = ZobristHash.mix( key ^ Double.doubleToLongBits( cue.getVelocityVec().y ) );
+        key = ZobristHash.mix( key ^ Double.doubleToLongBits( cue.getSpinX() ) );
+        key = ZobristHash.mix( key ^ Double.doubleToLongBits( cue.getSpinY() ) );
+        key = ZobristHash.mix( key ^ Double.doubleToLongBits( cue.getSpinZ() ) );
+        key = ZobristHash.mix( key ^ ( ( long )xOrigin << 32 | yOrigin & 0xFFFFFFFFL ) );
+        key = ZobristHash.mix( key ^ ( ( long )tableSize << 32 | ballRadius & 0xFFFFFFFFL ) );
+        key = ZobristHash.mix( key ^ Double.doubleToLongBits( pocketMultiplier ) );
+        key = ZobristHash.mix( key ^ Double.doubleToLongBits( jawMultiplier ) );
+
+        return ZobristHash.mix( key ^ Double.doubleToLongBits( friction ) );
+
+    } // end method getShotKey
+
+
+    /**
+     * Jump to the end of a shot played out elsewhere: every
+     * ball at rest where the outcome left it, and the shot
+     * logged as if it had been ticked through.
+     * @param outcome the shot's outcome
+     * @see BreakCache
+     */
+    void settle( BreakCache.Outcome outcome )
+    {
+        for ( int i = 0; i < balls.size(); i++ )
+        {
+            balls.get( i ).settle( outcome.getEndX( i ), outcome.getEndY( i ),
+                outcome.getEndSpin( i ), outcome.isSunk( i ) );
+
+        } // end for
+
+        moving = false;
+        stateHash.reset( balls );
+        stateVersion++;
+
+        if ( recorder != null )
+        {
+            recorder.played( outcome.getTicks(), outcome.getBallHits(), outcome.getWallHits() );
+            recorder.end( pocketedMask() );
+
+        } // end if-then
+
+        if ( predictor != null )
+            predictor.clear();
+
+    } // end method settle
+
+
+    /**
+     * A new frame is starting (however many sub-steps it is
+     * taken in): the shot being recorded has lasted one frame
+     * longer.
+     * @see AdaptiveIntegrator
+     */
+    void beginFrame()
+    {
+        frameBallHits = 0;
+        frameWallHits = 0;
+
+        if ( recorder != null )
+            recorder.frame();
+
+    } // end method beginFrame
+
+
+    /**
+     * @return the ball-on-ball hits so far this frame
+     */
+    int getFrameBallHits()
+    {
+        return frameBallHits;
+    }
+
+
+    /**
+     * @return the cushion and jaw hits so far this frame
+     */
+    int getFrameWallHits()
+    {
+        return frameWallHits;
+    }
+
+
+    /**
+     * @return ball i's side-spin
+     */
+    double getBallSpin( int i )
+    {
+        return balls.get( i ).getSpinZ();
+    }
+
+
+    /**
+     * Record every shot played on this table from now on (a
+     * shot already under way, such as the break, included).
+     * @param log where the shots go
+     * @param matchId identifies this match in the log
+     */
+    public void setShotLog( ShotLog log, long matchId )
+    {
+        recorder = new ShotRecorder( log, matchId );
+
+        if ( moving )
+        {
+            Vec2 v = balls.get( 0 ).getVelocityVec();
+
+            recorder.begin( v.x, v.y, 1.0, 0.0, pocketedMask() );
+
+        } // end if-then
+
+    } // end method setShotLog
+
+
+    /**
+     * @return the balls sunk so far, one bit per ball (the
+     * cue ball is bit 0; balls past the 64th are not counted)
+     */
+    private long pocketedMask()
+    {
+        long mask = 0L;
+        int count = Math.min( balls.size(), Long.SIZE );
+
+        for ( int i = 0; i < count; i++ )
+        {
+            if ( balls.get( i ).isPocketed() )
+                mask |= 1L << i;
+
+        } // end for
+
+        return mask;
+
+    } // end method pocketedMask
+
+
+    /**
+     * One headless "tick": <b>update()</b> then <b>move()</b>,
+     * exactly as the game loop does it.
+     */
+    public void step()
+    {
+        runCommands();
+        beginFrame();
+        update();
+        move();
+
+    } // end method step
+
+
+    /**
+     * @return a 64-bit hash of where the balls are (to the
+     * nearest half pixel or so) and which have been sunk: equal
+     * tables hash alike, so the hash can key caches or spot
+     * repeated positions cheaply
+     */
+    public long getStateHash()
+    {
+        return stateHash.get();
+
+    } // end method getStateHash
+
+
+    /**
+     * @return how many object balls (i.e., not the cue
+     * ball) have been sunk
+     */
+    public int countPocketed()
+    {
+        int sunk = 0;
+
+        for ( int i = 1; i < balls.size(); i++ )
+        {
+            if ( balls.get( i ).isPocketed() )
+                sunk++;
+
+        } // end for
+
+        return sunk;
+
+    } // end method countPocketed
+
+
+    /**
+     * @return true if the cue ball has gone down (a "scratch")
+     */
+    public boolean isCuePocketed()
+    {
+        return balls.get( 0 ).isPocketed();
+
+    } // end method isCuePocketed
+
+
+    /**
+     * @return where the cue ball sits
+     */
+    public Vector2D getCueCenter()
+    {
+        return balls.get( 0 ).getCenter();
+
+    } // end method getCueCenter
+
+
+    /**
+     * @return where the cue ball was racked (where it goes back
+     * to after a scratch)
+     */
+    public Vector2D getCueSpot()
+    {
+        return new Vector2D( rackX[ 0 ], rackY[ 0 ] );
+
+    } // end method getCueSpot
+
+
+    public int getXOrigin()
+    {
+        return xOrigin;
+    }
+
+
+    public int getYOrigin()
+    {
+        return yOrigin;
+    }
+
+
+    public int getTableSize()
+    {
+        return tableSize;
+    }
+
+
+    public int getBallRadius()
+    {
+        return ballRadius;
+    }
+
+
+    /**
+     * @return the balls, cue ball first, in <b>BallFrame</b>
+     * order (for drawing; not to be changed)
+     */
+    List<Ball> getBalls()
+    {
+        return Collections.unmodifiableList( balls );
+
+    } // end method getBalls
+
+
+    /**
+     * @return the cushioned rails (for drawing)
+     */
+    List<Line> getWalls()
+    {
+        return Collections.unmodifiableList( walls );
+
+    } // end method getWalls
+
+
+    List<Circle> getJaws()
+    {
+        return Collections.unmodifiableList( jaws );
+    }
+
+
+    List<Circle> getPockets()
+    {
+        return Collections.unmodifiableList( pockets );
+    }
+
+
+    /**
+     * @return the latest completed aim guide, or null if there
+     * is none (or the table is headless)
+     */
+    TrajectoryPredictor.Prediction getAimGuide()
+    {
+        return predictor == null ? null : predictor.getLatest();
+
+    } // end method getAimGuide
+
+
+    /**
+     * @return the speed (px per frame) of the fastest ball
+     * in play
+     */
+    public double getMaxSpeed()
+    {
+        double fastest = 0.0;
+
+        for ( Ball b : balls )
+        {
+            if ( !b.isPocketed() )
+                fastest = Math.max( fastest, b.getVelocityVec().lengthSq() );
+
+        } // end for
+
+        return Math.sqrt( fastest );
+
+    } // end method getMaxSpeed
+
+
+    /**
+     * @return the number of balls on the table
+     */
+    public int getBallCount()
+    {
+        return balls.size();
+
+    } // end method getBallCount
     
     // </editor-fold>
 }  // end class Table
@@ -0,0 +1,20 @@
+package com.aidan3d.pool;
+
+
+/**
+ * A <b>TableCommand</b> is a change to a <b>Table</b> asked for
+ * by a controller (the player's mouse and keyboard, an AI, a
+ * network peer) on a thread of its own. It is handed to
+ * <b>Table.submit()</b>, and carried out by the thread that owns
+ * the table at the start of its next tick.
+ * @see TableCommands
+ */
+public interface TableCommand
+{
+    /**
+     * Carry out the change (table-owning thread).
+     * @param table the table
+     */
+    void apply( Table table );
+
+} // end interface TableCommand
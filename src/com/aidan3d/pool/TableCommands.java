@@ -0,0 +1,108 @@
+package com.aidan3d.pool;
+
+import math.geom2d.Vector2D;
+
+
+/**
+ * <b>TableCommands</b> makes the everyday commands a controller
+ * sends a table: shots, ball placement and re-racking.
+ * <p>
+ * Each command copies what it is given when it is made, so the
+ * caller may go on changing its own vectors afterwards.
+ */
+public final class TableCommands
+{
+    private TableCommands()
+    {
+    }
+
+
+    /**
+     * Strike the cue ball, unless a shot is still under way
+     * when the command is carried out (then it is dropped).
+     * @param cueVelocity the cue ball's new velocity, in
+     * pixels per frame
+     * @param top 1.0 for natural roll, more for follow, less
+     * than 0.0 for screw-back
+     * @param side side-spin ("english")
+     * @return the command
+     * @see Table#shoot(Vector2D, double, double)
+     */
+    public static TableCommand shot( Vector2D cueVelocity, final double top, final double side )
+    {
+        final Vector2D v = new Vector2D( cueVelocity.x(), cueVelocity.y() );
+
+        return new TableCommand()
+        {
+            @Override
+            public void apply( Table table )
+            {
+                if ( !table.ballsAreMoving() )
+                    table.shoot( v, top, side );
+
+            } // end method apply
+        };
+
+    } // end method shot
+
+
+    /**
+     * Put a ball, at rest, on a spot (e.g., the cue ball "in
+     * hand" after a foul), taking it back out of its pocket if
+     * it has been sunk. Like a shot, it is dropped if the balls
+     * are moving when it is carried out.
+     * @param index which ball (the cue ball is 0)
+     * @param at where its center goes
+     * @return the command
+     * @throws IllegalArgumentException if there can be no such
+     * ball, or the spot is not a point
+     * @see Table#placeBall(int, Vector2D)
+     */
+    public static TableCommand placeBall( final int index, Vector2D at )
+    {
+        if ( index < 0 )
+            throw new IllegalArgumentException( "No ball " + index );
+
+        if ( Double.isNaN( at.x() ) || Double.isNaN( at.y() )
+            || Double.isInfinite( at.x() ) || Double.isInfinite( at.y() ) )
+        {
+            throw new IllegalArgumentException( "Not a spot: " + at.x() + ", " + at.y() );
+
+        } // end if-then
+
+        final Vector2D spot = new Vector2D( at.x(), at.y() );
+
+        return new TableCommand()
+        {
+            @Override
+            public void apply( Table table )
+            {
+                if ( !table.ballsAreMoving() )
+                    table.placeBall( index, spot );
+
+            } // end method apply
+        };
+
+    } // end method placeBall
+
+
+    /**
+     * Rack the balls again, at rest, ready for a new break.
+     * @return the command
+     * @see Table#reset()
+     */
+    public static TableCommand reset()
+    {
+        return new TableCommand()
+        {
+            @Override
+            public void apply( Table table )
+            {
+                table.reset();
+
+            } // end method apply
+        };
+
+    } // end method reset
+
+} // end class TableCommands
@@ -0,0 +1,172 @@
+package com.aidan3d.pool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * A <b>TableDefinition</b> describes one variety of pool table:
+ * its size, its pockets and jaws, the friction of its bed, and
+ * the rack of balls laid out on it (the cue ball first).
+ * <p>
+ * Definitions are read from small text files by a
+ * <b>TableDefinitionParser</b>, and kept in a compiled binary
+ * form by a <b>TableDefinitionCache</b>, so a new variety of
+ * table (snooker, 9-ball, a stress scene of hundreds of balls)
+ * needs no rebuild.
+ */
+public final class TableDefinition
+{
+    private final String name;                  // e.g., "eight-ball"
+    private final int width;                    // Table width (half the
+                                                // length), in px
+    private final int ballRadius;               // In px
+    private final double pocketMultiplier;      // As in Table
+    private final double jawMultiplier;         // As in Table
+    private final double friction;              // As in Table
+    private final List<RackBall> rack;          // Cue ball first
+
+
+    /**
+     * The seven-argument constructor.
+     * @param name a human-readable label for the table
+     * @param width the table's width (and half its length)
+     * @param ballRadius the balls' radii
+     * @param pocketMultiplier the pocket size multiplier
+     * @param jawMultiplier the jaw size multiplier
+     * @param friction the bed friction
+     * @param rack the balls, cue ball first
+     */
+    public TableDefinition( String name, int width, int ballRadius, double pocketMultiplier,
+        double jawMultiplier, double friction, List<RackBall> rack )
+    {
+        if ( rack.isEmpty() )
+        {
+            throw new IllegalArgumentException( "Table definition '" + name + "' has no cue ball" );
+
+        } // end if-then
+
+        this.name = name;
+        this.width = width;
+        this.ballRadius = ballRadius;
+        this.pocketMultiplier = pocketMultiplier;
+        this.jawMultiplier = jawMultiplier;
+        this.friction = friction;
+        this.rack = Collections.unmodifiableList( new ArrayList<>( rack ) );
+
+    } // end seven-argument constructor
+
+
+    public String getName()
+    {
+        return name;
+    }
+
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+
+    public int getBallRadius()
+    {
+        return ballRadius;
+    }
+
+
+    public double getPocketMultiplier()
+    {
+        return pocketMultiplier;
+    }
+
+
+    public double getJawMultiplier()
+    {
+        return jawMultiplier;
+    }
+
+
+    public double getFriction()
+    {
+        return friction;
+    }
+
+
+    /**
+     * @return the balls to rack, cue ball first
+     */
+    public List<RackBall> getRack()
+    {
+        return rack;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return name;
+
+    } // end method toString
+
+
+    /**
+     * One ball in a rack: its label, color, mass, and its
+     * position measured from the table's top-left corner.
+     */
+    public static final class RackBall
+    {
+        private final String id;
+        private final int color;                // 0xRRGGBB
+        private final double x;
+        private final double y;
+        private final double mass;
+
+
+        public RackBall( String id, int color, double x, double y, double mass )
+        {
+            this.id = id;
+            this.color = color;
+            this.x = x;
+            this.y = y;
+            this.mass = mass;
+
+        } // end five-argument constructor
+
+
+        public String getId()
+        {
+            return id;
+        }
+
+
+        /**
+         * @return the ball's color, packed as 0xRRGGBB
+         */
+        public int getColor()
+        {
+            return color;
+        }
+
+
+        public double getX()
+        {
+            return x;
+        }
+
+
+        public double getY()
+        {
+            return y;
+        }
+
+
+        public double getMass()
+        {
+            return mass;
+        }
+
+    } // end class RackBall
+
+} // end class TableDefinition
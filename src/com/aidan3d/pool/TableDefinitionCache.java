@@ -0,0 +1,262 @@
+package com.aidan3d.pool;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Loads <b>TableDefinition</b>s, keeping a compiled binary copy
+ * of each text file beside it (<i>eight-ball.pool</i> gets an
+ * <i>eight-ball.poolc</i>).
+ * <p>
+ * The first load parses the text and writes the binary copy;
+ * later loads memory-map the binary copy and read the numbers
+ * straight out of it, with no text parsing at all. The binary
+ * copy records the size and time-stamp of the text it came
+ * from, and is rebuilt as soon as the text changes.
+ * <p>
+ * Binary layout (big-endian): the magic number and format
+ * version; the source file's size and modification time; the
+ * table's width, ball radius, pocket, jaw and friction values;
+ * its name; then a count of balls, and for each one its label,
+ * RGB color, x, y and mass. Strings are a short length
+ * followed by UTF-8 bytes.
+ */
+public class TableDefinitionCache
+{
+    static final String SOURCE_SUFFIX = ".pool";
+    static final String COMPILED_SUFFIX = ".poolc";
+
+    private static final int MAGIC = 0x504F4F4C;        // "POOL"
+    private static final int VERSION = 1;
+
+    private final TableDefinitionParser parser;
+
+
+    /**
+     * The no-argument constructor.
+     */
+    public TableDefinitionCache()
+    {
+        parser = new TableDefinitionParser();
+
+    } // end no-argument constructor
+
+
+    /**
+     * Load a table definition, from its compiled copy if that
+     * is up to date, otherwise from the text (compiling it
+     * for next time).
+     * @param source the definition's text file
+     * @return the definition
+     * @throws IOException if neither form can be read
+     */
+    public TableDefinition load( Path source ) throws IOException
+    {
+        BasicFileAttributes attributes = Files.readAttributes( source, BasicFileAttributes.class );
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        Path compiled = compiledPathFor( source );
+
+        if ( Files.isRegularFile( compiled ) )
+        {
+            TableDefinition cached = readCompiled( compiled, size, modified );
+
+            if ( cached != null )
+                return cached;
+
+        } // end if-then
+
+        TableDefinition definition;
+
+        try ( Reader in = Files.newBufferedReader( source, StandardCharsets.UTF_8 ) )
+        {
+            definition = parser.parse( source.getFileName().toString(), in );
+
+        } // end try
+
+        // A read-only scenario directory is fine: we just
+        // parse again next time.
+        try
+        {
+            writeCompiled( compiled, definition, size, modified );
+        }
+        catch ( IOException ex )
+        {
+            Logger.getLogger( TableDefinitionCache.class.getName() ).log(
+                Level.FINE, "Could not compile " + source, ex );
+
+        } // end try-catch
+
+        return definition;
+
+    } // end method load
+
+
+    /**
+     * @return where the compiled copy of a text file lives
+     */
+    static Path compiledPathFor( Path source )
+    {
+        String name = source.getFileName().toString();
+
+        if ( name.endsWith( SOURCE_SUFFIX ) )
+            name = name.substring( 0, name.length() - SOURCE_SUFFIX.length() );
+
+        return source.resolveSibling( name + COMPILED_SUFFIX );
+
+    } // end method compiledPathFor
+
+
+    /**
+     * Map a compiled copy and decode it.
+     * @return the definition, or null if the copy is stale or
+     * not one of ours
+     */
+    private TableDefinition readCompiled( Path compiled, long size, long modified ) throws IOException
+    {
+        try ( FileChannel channel = FileChannel.open( compiled, StandardOpenOption.READ ) )
+        {
+            MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+
+            if ( buffer.remaining() < 24 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                || buffer.getLong() != size || buffer.getLong() != modified )
+            {
+                return null;
+
+            } // end if-then
+
+            int width = buffer.getInt();
+            int ballRadius = buffer.getInt();
+            double pocket = buffer.getDouble();
+            double jaw = buffer.getDouble();
+            double friction = buffer.getDouble();
+            String name = getString( buffer );
+            int count = buffer.getInt();
+
+            List<TableDefinition.RackBall> rack = new ArrayList<>( count );
+
+            for ( int i = 0; i < count; i++ )
+            {
+                String id = getString( buffer );
+                int color = buffer.getInt() & 0xFFFFFF;     // (Older files
+                                                            // carry alpha)
+                double x = buffer.getDouble();
+                double y = buffer.getDouble();
+                double mass = buffer.getDouble();
+
+                rack.add( new TableDefinition.RackBall( id, color, x, y, mass ) );
+
+            } // end for
+
+            return new TableDefinition( name, width, ballRadius, pocket, jaw, friction, rack );
+        }
+        catch ( RuntimeException ex )       // Truncated or corrupt:
+        {                                   // just parse the text again
+            return null;
+
+        } // end try-catch
+
+    } // end method readCompiled
+
+
+    /**
+     * Encode a definition and write it, atomically, beside
+     * its text.
+     */
+    private void writeCompiled( Path compiled, TableDefinition definition, long size, long modified )
+        throws IOException
+    {
+        byte[] name = definition.getName().getBytes( StandardCharsets.UTF_8 );
+        List<byte[]> ids = new ArrayList<>( definition.getRack().size() );
+        int length = 4 + 4 + 8 + 8 + 4 + 4 + 8 + 8 + 8 + 2 + name.length + 4;
+
+        for ( TableDefinition.RackBall ball : definition.getRack() )
+        {
+            byte[] id = ball.getId().getBytes( StandardCharsets.UTF_8 );
+            ids.add( id );
+            length += 2 + id.length + 4 + 8 + 8 + 8;
+
+        } // end for
+
+        ByteBuffer buffer = ByteBuffer.allocate( length );
+        buffer.putInt( MAGIC ).putInt( VERSION ).putLong( size ).putLong( modified );
+        buffer.putInt( definition.getWidth() ).putInt( definition.getBallRadius() );
+        buffer.putDouble( definition.getPocketMultiplier() ).putDouble( definition.getJawMultiplier() );
+        buffer.putDouble( definition.getFriction() );
+        buffer.putShort( ( short )name.length ).put( name );
+        buffer.putInt( definition.getRack().size() );
+
+        for ( int i = 0; i < ids.size(); i++ )
+        {
+            TableDefinition.RackBall ball = definition.getRack().get( i );
+
+            buffer.putShort( ( short )ids.get( i ).length ).put( ids.get( i ) );
+            buffer.putInt( ball.getColor() );
+            buffer.putDouble( ball.getX() ).putDouble( ball.getY() ).putDouble( ball.getMass() );
+
+        } // end for
+
+        buffer.flip();
+
+        // Write to the side, then swap in, so a reader never
+        // maps half a file.
+        Path temporary = Files.createTempFile( compiled.toAbsolutePath().getParent(),
+            compiled.getFileName().toString(), ".tmp" );
+
+        try
+        {
+            try ( FileChannel channel = FileChannel.open( temporary, StandardOpenOption.WRITE ) )
+            {
+                while ( buffer.hasRemaining() )
+                    channel.write( buffer );
+
+            } // end try
+
+            try
+            {
+                Files.move( temporary, compiled, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING );
+            }
+            catch ( AtomicMoveNotSupportedException ex )
+            {
+                Files.move( temporary, compiled, StandardCopyOption.REPLACE_EXISTING );
+
+            } // end try-catch
+        }
+        finally
+        {
+            Files.deleteIfExists( temporary );
+
+        } // end try-finally
+
+    } // end method writeCompiled
+
+
+    /**
+     * @return a short-length-prefixed UTF-8 string
+     */
+    private static String getString( ByteBuffer buffer )
+    {
+        byte[] bytes = new byte[ buffer.getShort() & 0xFFFF ];
+        buffer.get( bytes );
+
+        return new String( bytes, StandardCharsets.UTF_8 );
+
+    } // end method getString
+
+} // end class TableDefinitionCache
@@ -0,0 +1,193 @@
+package com.aidan3d.pool;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Reads a <b>TableDefinition</b> from its text form, one line
+ * at a time (the file is never held in memory whole, so a
+ * stress scene of thousands of balls is no trouble).
+ * <p>
+ * Each line is a keyword followed by its values; blank lines
+ * and anything after a '#' are ignored:
+ * <pre>
+ * name         eight-ball
+ * width        250                 # px; the table is twice as long
+ * ball-radius  6                   # px
+ * pocket       2.2                 # pocket multiplier
+ * jaw          0.7                 # jaw multiplier
+ * friction     0.1                 # bed friction
+ * ball         cue  white  125 100  10.0
+ * ball         1spot red   125 375
+ * </pre>
+ * A <i>ball</i> line gives a label, a color (a name such as
+ * <i>red</i>, or <i>0xrrggbb</i>), the ball's position measured
+ * from the table's top-left corner, and optionally its mass
+ * (1.0 if left out). The first ball is the cue ball.
+ */
+public class TableDefinitionParser
+{
+    private static final double DEFAULT_MASS = 1.0;
+
+
+    /**
+     * Parse a definition.
+     * @param source where the text comes from (for error messages)
+     * @param in the text
+     * @return the definition
+     * @throws IOException if the text cannot be read, or is not
+     * a valid definition
+     */
+    public TableDefinition parse( String source, Reader in ) throws IOException
+    {
+        BufferedReader reader = new BufferedReader( in );
+
+        String name = source;
+        int width = -1;
+        int ballRadius = -1;
+        double pocket = -1.0;
+        double jaw = -1.0;
+        double friction = -1.0;
+        List<TableDefinition.RackBall> rack = new ArrayList<>();
+
+        String line;
+        int lineNumber = 0;
+
+        while ( ( line = reader.readLine() ) != null )
+        {
+            lineNumber++;
+
+            // Drop comments, then skip anything left blank.
+            int hash = line.indexOf( '#' );
+
+            if ( hash >= 0 )
+                line = line.substring( 0, hash );
+
+            String[] words = line.trim().split( "\\s+" );
+
+            if ( words[ 0 ].isEmpty() )
+                continue;
+
+            try
+            {
+                switch ( words[ 0 ] )
+                {
+                    case "name":
+                        expect( words, 2, 2 );
+                        name = words[ 1 ];
+                        break;
+
+                    case "width":
+                        expect( words, 2, 2 );
+                        width = Integer.parseInt( words[ 1 ] );
+                        break;
+
+                    case "ball-radius":
+                        expect( words, 2, 2 );
+                        ballRadius = Integer.parseInt( words[ 1 ] );
+                        break;
+
+                    case "pocket":
+                        expect( words, 2, 2 );
+                        pocket = Double.parseDouble( words[ 1 ] );
+                        break;
+
+                    case "jaw":
+                        expect( words, 2, 2 );
+                        jaw = Double.parseDouble( words[ 1 ] );
+                        break;
+
+                    case "friction":
+                        expect( words, 2, 2 );
+                        friction = Double.parseDouble( words[ 1 ] );
+                        break;
+
+                    case "ball":
+                        expect( words, 5, 6 );
+                        rack.add( new TableDefinition.RackBall( words[ 1 ], parseColor( words[ 2 ] ),
+                            Double.parseDouble( words[ 3 ] ), Double.parseDouble( words[ 4 ] ),
+                            words.length > 5 ? Double.parseDouble( words[ 5 ] ) : DEFAULT_MASS ) );
+                        break;
+
+                    default:
+                        throw new IllegalArgumentException( "unknown keyword '" + words[ 0 ] + "'" );
+
+                } // end switch
+            }
+            catch ( IllegalArgumentException ex )       // Includes bad numbers
+            {
+                throw new IOException( source + ":" + lineNumber + ": " + ex.getMessage(), ex );
+
+            } // end try-catch
+
+        } // end while
+
+        if ( width <= 0 || ballRadius <= 0 || pocket <= 0.0 || jaw < 0.0 || friction < 0.0 )
+        {
+            throw new IOException( source + ": width, ball-radius, pocket, jaw and friction must all be given" );
+
+        } // end if-then
+
+        if ( rack.isEmpty() )
+        {
+            throw new IOException( source + ": no balls (the first ball is the cue ball)" );
+
+        } // end if-then
+
+        return new TableDefinition( name, width, ballRadius, pocket, jaw, friction, rack );
+
+    } // end method parse
+
+
+    /**
+     * Check a line has between min and max words (keyword
+     * included).
+     */
+    private static void expect( String[] words, int min, int max )
+    {
+        if ( words.length < min || words.length > max )
+        {
+            throw new IllegalArgumentException( "'" + words[ 0 ] + "' takes "
+                + ( min == max ? String.valueOf( min - 1 ) : ( min - 1 ) + " to " + ( max - 1 ) )
+                + " value(s)" );
+
+        } // end if-then
+
+    } // end method expect
+
+
+    /**
+     * @return the color named, or given as 0xrrggbb, packed as
+     * 0xRRGGBB (the named colors are java.awt.Color's)
+     */
+    static int parseColor( String word )
+    {
+        if ( word.startsWith( "0x" ) )
+            return Integer.parseUnsignedInt( word.substring( 2 ), 16 ) & 0xFFFFFF;
+
+        switch ( word.toLowerCase() )
+        {
+            case "white":   return 0xFFFFFF;
+            case "black":   return 0x000000;
+            case "red":     return 0xFF0000;
+            case "yellow":  return 0xFFFF00;
+            case "green":   return 0x00FF00;
+            case "blue":    return 0x0000FF;
+            case "orange":  return 0xFFC800;
+            case "pink":    return 0xFFAFAF;
+            case "magenta": return 0xFF00FF;
+            case "brown":   return 0x8B4513;
+            case "maroon":  return 0x800000;
+
+            default:
+                throw new IllegalArgumentException( "unknown color '" + word + "'" );
+
+        } // end switch
+
+    } // end method parseColor
+
+} // end class TableDefinitionParser
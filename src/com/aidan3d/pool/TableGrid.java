@@ -0,0 +1,263 @@
+package com.aidan3d.pool;
+
+import java.util.List;
+
+
+/**
+ * A <b>TableGrid</b> is a spatial index over the parts of a
+ * table that never move: the cushion rails, the jaws and the
+ * pockets. It lays a grid of square cells over them and, for
+ * each cell, lists the shapes a ball centered in that cell
+ * could be touching. A ball then tests only those shapes (none
+ * at all out in the middle of the table, one or two beside a
+ * rail or a pocket) rather than every shape on the table.
+ * <p>
+ * Each shape goes into every cell its bounding box, taken out
+ * by a margin, overlaps. The margin covers a ball's radius plus
+ * as far as it may travel in one step, so the index never
+ * misses a contact. Nothing about the table's outline is
+ * assumed, so L-shaped or round tables index just as well.
+ * <p>
+ * The grid is built once, in flat arrays, and is shared by a
+ * table and all its copies; a query allocates nothing.
+ */
+final class TableGrid
+{
+    private final double originX;           // Top-left of the grid
+    private final double originY;
+    private final double cell;              // Cell size, in pixels
+    private final int columns;
+    private final int rows;
+
+    private final Cells walls;              // Rail indices per cell
+    private final Cells jaws;               // Jaw indices per cell
+    private final Cells pockets;            // Pocket indices per cell
+
+
+    /**
+     * The four-argument constructor.
+     * @param walls the table's cushion rails
+     * @param jaws the table's jaws
+     * @param pockets the table's pockets
+     * @param margin how far from a rail or jaw a ball's center
+     * may be and still touch it this step (its radius, plus the
+     * most it moves in a step)
+     */
+    TableGrid( List<Line> walls, List<Circle> jaws, List<Circle> pockets, double margin )
+    {
+        double[] wallBoxes = new double[ walls.size() * 4 ];
+        double[] jawBoxes = new double[ jaws.size() * 4 ];
+        double[] pocketBoxes = new double[ pockets.size() * 4 ];
+
+        for ( int i = 0; i < walls.size(); i++ )
+        {
+            double[] r = walls.get( i ).getBounds();
+
+            setBox( wallBoxes, i, r[ 0 ] - margin, r[ 1 ] - margin, r[ 2 ] + margin, r[ 3 ] + margin );
+
+        } // end for
+
+        circleBoxes( jaws, jawBoxes, margin );
+
+        // A ball drops once its center is inside a pocket.
+        circleBoxes( pockets, pocketBoxes, 0.0 );
+
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+
+        for ( double[] boxes : new double[][] { wallBoxes, jawBoxes, pocketBoxes } )
+        {
+            for ( int b = 0; b < boxes.length; b += 4 )
+            {
+                minX = Math.min( minX, boxes[ b ] );
+                minY = Math.min( minY, boxes[ b + 1 ] );
+                maxX = Math.max( maxX, boxes[ b + 2 ] );
+                maxY = Math.max( maxY, boxes[ b + 3 ] );
+
+            } // end inner for
+
+        } // end outer for
+
+        if ( minX > maxX )
+        {
+            // Nothing to index.
+            minX = minY = maxX = maxY = 0.0;
+
+        } // end if-then
+
+        // Cells the size of the margin: a shape then sits in
+        // few cells, and a cell holds few shapes.
+        cell = Math.max( margin, 1.0 );
+        originX = minX;
+        originY = minY;
+        columns = ( int )Math.floor( ( maxX - minX ) / cell ) + 1;
+        rows = ( int )Math.floor( ( maxY - minY ) / cell ) + 1;
+
+        this.walls = index( wallBoxes );
+        this.jaws = index( jawBoxes );
+        this.pockets = index( pocketBoxes );
+
+    } // end four-argument constructor
+
+
+    /**
+     * @return the cell a point lies in, or -1 if it is outside
+     * the grid (and so clear of every shape)
+     */
+    int cellAt( double x, double y )
+    {
+        int column = ( int )Math.floor( ( x - originX ) / cell );
+        int row = ( int )Math.floor( ( y - originY ) / cell );
+
+        if ( column < 0 || row < 0 || column >= columns || row >= rows )
+            return -1;
+
+        return row * columns + column;
+
+    } // end method cellAt
+
+
+    Cells getWalls()
+    {
+        return walls;
+    }
+
+
+    Cells getJaws()
+    {
+        return jaws;
+    }
+
+
+    Cells getPockets()
+    {
+        return pockets;
+    }
+
+
+    private static void circleBoxes( List<Circle> circles, double[] boxes, double margin )
+    {
+        for ( int i = 0; i < circles.size(); i++ )
+        {
+            Vec2 c = circles.get( i ).getCenterVec();
+            double reach = circles.get( i ).getRadius() + margin;
+
+            setBox( boxes, i, c.x - reach, c.y - reach, c.x + reach, c.y + reach );
+
+        } // end for
+
+    } // end method circleBoxes
+
+
+    private static void setBox( double[] boxes, int i, double x0, double y0, double x1, double y1 )
+    {
+        boxes[ i * 4 ] = x0;
+        boxes[ i * 4 + 1 ] = y0;
+        boxes[ i * 4 + 2 ] = x1;
+        boxes[ i * 4 + 3 ] = y1;
+
+    } // end method setBox
+
+
+    /**
+     * List, for every cell, the shapes whose boxes overlap it:
+     * one pass to count, one to fill.
+     */
+    private Cells index( double[] boxes )
+    {
+        int[] start = new int[ columns * rows + 1 ];
+        int[] span = new int[ 4 ];
+
+        for ( int b = 0; b < boxes.length; b += 4 )
+        {
+            cellSpan( boxes, b, span );
+
+            for ( int r = span[ 1 ]; r <= span[ 3 ]; r++ )
+                for ( int c = span[ 0 ]; c <= span[ 2 ]; c++ )
+                    start[ r * columns + c + 1 ]++;
+
+        } // end counting for
+
+        for ( int i = 1; i < start.length; i++ )
+            start[ i ] += start[ i - 1 ];
+
+        int[] items = new int[ start[ start.length - 1 ] ];
+        int[] next = start.clone();
+
+        for ( int b = 0; b < boxes.length; b += 4 )
+        {
+            cellSpan( boxes, b, span );
+
+            for ( int r = span[ 1 ]; r <= span[ 3 ]; r++ )
+                for ( int c = span[ 0 ]; c <= span[ 2 ]; c++ )
+                    items[ next[ r * columns + c ]++ ] = b / 4;
+
+        } // end filling for
+
+        return new Cells( start, items );
+
+    } // end method index
+
+
+    /**
+     * The columns and rows (first and last) a box covers.
+     */
+    private void cellSpan( double[] boxes, int b, int[] span )
+    {
+        span[ 0 ] = clamp( ( int )Math.floor( ( boxes[ b ] - originX ) / cell ), columns );
+        span[ 1 ] = clamp( ( int )Math.floor( ( boxes[ b + 1 ] - originY ) / cell ), rows );
+        span[ 2 ] = clamp( ( int )Math.floor( ( boxes[ b + 2 ] - originX ) / cell ), columns );
+        span[ 3 ] = clamp( ( int )Math.floor( ( boxes[ b + 3 ] - originY ) / cell ), rows );
+
+    } // end method cellSpan
+
+
+    private static int clamp( int i, int count )
+    {
+        return Math.max( 0, Math.min( count - 1, i ) );
+    }
+
+
+    /**
+     * The shapes of one kind, listed cell by cell: cell c
+     * holds items <i>get( first( c ) )</i> up to (but not
+     * including) <i>get( end( c ) )</i>.
+     */
+    static final class Cells
+    {
+        private final int[] start;
+        private final int[] items;
+
+        private Cells( int[] start, int[] items )
+        {
+            this.start = start;
+            this.items = items;
+
+        } // end two-argument constructor
+
+
+        int first( int cell )
+        {
+            return start[ cell ];
+        }
+
+
+        int end( int cell )
+        {
+            return start[ cell + 1 ];
+        }
+
+
+        /**
+         * @return the index, in the table's list, of a shape
+         */
+        int get( int k )
+        {
+            return items[ k ];
+        }
+
+    } // end class Cells
+
+} // end class TableGrid
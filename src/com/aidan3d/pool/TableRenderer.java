@@ -0,0 +1,518 @@
+package com.aidan3d.pool;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A <b>TableRenderer</b> draws a <b>Table</b> quickly, frame
+ * after frame. All the drawing lives here, on the Swing side,
+ * so the table itself (and the rest of pool-core) never touches
+ * <b>java.awt</b>:<br>
+ * &nbsp&nbsp a) &nbsp the baize, rails, jaws and pockets never
+ * move, so they are drawn once into a <b>VolatileImage</b>
+ * (video memory, where the platform allows) and copied on to
+ * the frame in a single blit;<br>
+ * &nbsp&nbsp b) &nbsp each ball color and size is rasterized
+ * once, anti-aliased, into a "managed" sprite image, and the
+ * balls are stamped with <b>drawImage()</b> in color order, so
+ * the same sprite is drawn many times in a row.
+ * <p>
+ * If the platform cannot give us a volatile image, the static
+ * layer is simply drawn directly each frame.
+ */
+class TableRenderer
+{
+    private static final Color BAIZE = new Color( 0, 0.2f, 0 ); // The bed's
+                                                    // playing-surface:
+                                                    // baizeHSB = 120, 100, 20
+                                                    // baizeRGB = 0, 51, 0
+
+    private final Table table;
+    private final List<Ball> balls;             // The table's own lists,
+    private final List<Line> walls;             // looked up once
+    private final List<Circle> jaws;
+    private final List<Circle> pockets;
+
+    private final Map<Long, BufferedImage> sprites;     // Keyed by color
+                                                        // and radius
+
+    private Ball[] drawOrder;                   // The balls, sorted by color
+    private int[] drawIndex;                    // Each one's place in the
+                                                // table's list (and so in
+                                                // a BallFrame)
+    private BufferedImage[] drawSprites;        // Each one's sprite
+    private GraphicsConfiguration spriteConfig; // The configuration the
+                                                // sprites were made for
+
+    private VolatileImage layer;                // The static table, cached
+    private boolean layerUnsupported;           // No volatile images here
+
+    private final int layerX;                   // Where the layer sits on
+    private final int layerY;                   // the frame, and its size
+    private final int layerWidth;               // (it covers the jaws and
+    private final int layerHeight;              // pockets as well as the
+                                                // baize)
+
+
+    /**
+     * The one-argument constructor: work out the screen area
+     * covered by the table's static geometry. A renderer is not
+     * thread-safe, so each thread that draws needs its own.
+     * @param table the table to draw
+     */
+    TableRenderer( Table table )
+    {
+        this.table = table;
+
+        balls = table.getBalls();
+        walls = table.getWalls();
+        jaws = table.getJaws();
+        pockets = table.getPockets();
+        sprites = new HashMap<>();
+
+        double minX = table.getXOrigin();
+        double minY = table.getYOrigin();
+        double maxX = table.getXOrigin() + table.getTableSize();
+        double maxY = table.getYOrigin() + table.getTableSize() * 2;
+
+        // The jaws and pockets stick out past the baize.
+        List<Circle> outside = new ArrayList<>( jaws );
+        outside.addAll( pockets );
+
+        for ( Circle c : outside )
+        {
+            minX = Math.min( minX, c.getCenter().x() - c.getRadius() );
+            minY = Math.min( minY, c.getCenter().y() - c.getRadius() );
+            maxX = Math.max( maxX, c.getCenter().x() + c.getRadius() );
+            maxY = Math.max( maxY, c.getCenter().y() + c.getRadius() );
+
+        } // end for
+
+        // Pad by a pixel for drawOval()'s extra row and column.
+        layerX = ( int )Math.floor( minX ) - 1;
+        layerY = ( int )Math.floor( minY ) - 1;
+        layerWidth = ( int )Math.ceil( maxX ) + 1 - layerX + 1;
+        layerHeight = ( int )Math.ceil( maxY ) + 1 - layerY + 1;
+
+    } // end one-argument constructor
+
+
+    /**
+     * Draw the table surface, the six padded rails and the six
+     * pairs of pocket jaws, then the balls and the aim guide.
+     * @param dbg the buffer on to which we splash pixels
+     * @param frame the balls' positions, published by the
+     * simulation thread; or null to read the balls themselves
+     * (when this is the thread that moves them)
+     */
+    void draw( Graphics dbg, BallFrame frame )
+    {
+        // The baize, rails, jaws and pockets come from
+        // a cached layer...
+        drawStatic( dbg );
+
+        // ...and the balls are stamped from sprites.
+        drawBalls( dbg, frame );
+
+        drawAimGuide( dbg );
+
+    } // end method draw
+
+
+    /**
+     * Draw a recorded frame, with no aim guide.
+     * @param dbg the buffer on to which we splash pixels
+     * @param frame the balls' positions
+     */
+    void drawFrame( Graphics dbg, BallFrame frame )
+    {
+        drawStatic( dbg );
+        drawBalls( dbg, frame );
+
+    } // end method drawFrame
+
+
+    /**
+     * @return the left-most pixel the table covers
+     */
+    int getLeft()
+    {
+        return layerX;
+    }
+
+
+    int getTop()
+    {
+        return layerY;
+    }
+
+
+    int getWidth()
+    {
+        return layerWidth;
+    }
+
+
+    int getHeight()
+    {
+        return layerHeight;
+    }
+
+
+    /**
+     * Copy the cached static layer (baize, rails, jaws and
+     * pockets) on to the frame, re-rendering it if the
+     * platform has thrown its contents away.
+     * @param dbg the buffer on to which we splash pixels
+     */
+    private void drawStatic( Graphics dbg )
+    {
+        GraphicsConfiguration config = configurationOf( dbg );
+
+        if ( layerUnsupported || config == null )
+        {
+            drawGeometry( dbg );
+            return;
+
+        } // end if-then
+
+        do
+        {
+            int status = ( layer == null ) ? VolatileImage.IMAGE_INCOMPATIBLE
+                : layer.validate( config );
+
+            if ( status == VolatileImage.IMAGE_INCOMPATIBLE )
+            {
+                if ( !createLayer( config ) )
+                {
+                    drawGeometry( dbg );
+                    return;
+
+                } // end nested if-then
+
+                renderLayer();
+            }
+            else if ( status == VolatileImage.IMAGE_RESTORED )
+            {
+                // The surface came back, but empty.
+                renderLayer();
+
+            } // end if-then-else-if
+
+            dbg.drawImage( layer, layerX, layerY, null );
+
+        } while ( layer.contentsLost() );
+
+    } // end method drawStatic
+
+
+    /**
+     * Stamp every ball still in play on to the frame.
+     * @param dbg the buffer on to which we splash pixels
+     * @param positions where the balls are, published by the
+     * simulation thread; or null to read the balls themselves
+     */
+    private void drawBalls( Graphics dbg, BallFrame positions )
+    {
+        GraphicsConfiguration config = configurationOf( dbg );
+
+        // (Re)build the sprites and draw order the first time,
+        // or if we have been moved to another screen.
+        if ( drawOrder == null || drawOrder.length != balls.size() || config != spriteConfig )
+        {
+            prepareSprites( config );
+
+        } // end if-then
+
+        for ( int i = 0; i < drawOrder.length; i++ )
+        {
+            Ball ball = drawOrder[ i ];
+            int slot = drawIndex[ i ];
+            double x;
+            double y;
+
+            if ( positions != null && slot < positions.getCount() )
+            {
+                if ( positions.isPocketed( slot ) )
+                    continue;
+
+                x = positions.getX( slot );
+                y = positions.getY( slot );
+            }
+            else
+            {
+                if ( ball.isPocketed() )
+                    continue;
+
+                x = ball.getCenterVec().x;
+                y = ball.getCenterVec().y;
+
+            } // end if-then-else
+
+            // Sprites carry a one-pixel apron for the anti-aliasing.
+            dbg.drawImage( drawSprites[ i ],
+                ( int )( x - ball.getRadius() ) - 1,
+                ( int )( y - ball.getRadius() ) - 1, null );
+
+        } // end for
+
+    } // end method drawBalls
+
+
+    /**
+     * Sort the balls by color and look up (or rasterize) a
+     * sprite for each one.
+     */
+    private void prepareSprites( GraphicsConfiguration config )
+    {
+        if ( config != spriteConfig )
+        {
+            sprites.clear();
+            spriteConfig = config;
+
+        } // end if-then
+
+        final List<Ball> table = balls;
+        Integer[] order = new Integer[ balls.size() ];
+
+        for ( int i = 0; i < order.length; i++ )
+            order[ i ] = i;
+
+        Arrays.sort( order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare( Integer a, Integer b )
+            {
+                return Integer.compare( table.get( a ).getColor(), table.get( b ).getColor() );
+
+            } // end method compare
+        } );
+
+        drawOrder = new Ball[ order.length ];
+        drawIndex = new int[ order.length ];
+        drawSprites = new BufferedImage[ order.length ];
+
+        for ( int i = 0; i < order.length; i++ )
+        {
+            drawIndex[ i ] = order[ i ];
+            drawOrder[ i ] = balls.get( order[ i ] );
+            drawSprites[ i ] = spriteFor( config, drawOrder[ i ].getColor(),
+                ( int )drawOrder[ i ].getRadius() );
+
+        } // end for
+
+    } // end method prepareSprites
+
+
+    /**
+     * @return the sprite for a ball of this color and radius,
+     * rasterizing it the first time it is asked for
+     */
+    private BufferedImage spriteFor( GraphicsConfiguration config, int color, int radius )
+    {
+        Long key = ( ( long )color << 32 ) | radius;
+        BufferedImage sprite = sprites.get( key );
+
+        if ( sprite == null )
+        {
+            int size = 2 * radius + 3;              // The outline, plus
+                                                    // an apron each side
+
+            // A compatible image is "managed": Java2D keeps a
+            // copy in video memory once it has been drawn a
+            // few times.
+            sprite = config != null
+                ? config.createCompatibleImage( size, size, Transparency.TRANSLUCENT )
+                : new BufferedImage( size, size, BufferedImage.TYPE_INT_ARGB );
+
+            Graphics2D g = sprite.createGraphics();
+            g.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+            g.setRenderingHint( RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE );
+            g.setColor( new Color( color ) );
+            g.draw( new Ellipse2D.Double( 1.5, 1.5, 2 * radius, 2 * radius ) );
+            g.dispose();
+
+            sprites.put( key, sprite );
+
+        } // end if-then
+
+        return sprite;
+
+    } // end method spriteFor
+
+
+    /**
+     * @return true if a volatile image could be made
+     */
+    private boolean createLayer( GraphicsConfiguration config )
+    {
+        if ( layer != null )
+            layer.flush();
+
+        try
+        {
+            layer = config.createCompatibleVolatileImage( layerWidth, layerHeight, Transparency.TRANSLUCENT );
+        }
+        catch ( UnsupportedOperationException ex )
+        {
+            layer = null;
+
+        } // end try-catch
+
+        layerUnsupported = ( layer == null );
+
+        return !layerUnsupported;
+
+    } // end method createLayer
+
+
+    /**
+     * Draw the table's static geometry into the volatile layer.
+     */
+    private void renderLayer()
+    {
+        Graphics2D g = layer.createGraphics();
+
+        // Start from clear glass: the panel's own background
+        // shows around the table.
+        g.setComposite( AlphaComposite.Clear );
+        g.fillRect( 0, 0, layerWidth, layerHeight );
+        g.setComposite( AlphaComposite.SrcOver );
+
+        g.translate( -layerX, -layerY );
+        drawGeometry( g );
+        g.dispose();
+
+    } // end method renderLayer
+
+
+    /**
+     * Draw the parts of the table that never move: the
+     * baize, the cushioned rails, the jaws and the pockets.
+     * @param dbg the buffer on to which we splash pixels
+     */
+    private void drawGeometry( Graphics dbg )
+    {
+        // Draw the baize.
+        dbg.setColor( BAIZE );
+        dbg.fillRect( table.getXOrigin(), table.getYOrigin(), table.getTableSize(), table.getTableSize()*2 );
+
+        // Draw the cushioned rails.
+        dbg.setColor( Color.white );
+
+        // Run through the cushioned rails, drawing things.
+        for ( Line wall : walls )
+        {
+            if ( wall.isArc() )
+            {
+                // drawArc() turns the other way from
+                // atan2() on screen, and wants degrees.
+                dbg.drawArc( ( int )( wall.getArcCenterX() - wall.getArcRadius() ),
+                    ( int )( wall.getArcCenterY() - wall.getArcRadius() ),
+                    ( int )( 2.0 * wall.getArcRadius() ), ( int )( 2.0 * wall.getArcRadius() ),
+                    ( int )Math.round( -Math.toDegrees( wall.getArcFrom() ) ),
+                    ( int )Math.round( -Math.toDegrees( wall.getArcSweep() ) ) );
+            }
+            else
+            {
+                dbg.drawLine( ( int )wall.getStart().x(), ( int )wall.getStart().y(),
+                    ( int )wall.getEnd().x(), ( int )wall.getEnd().y() );
+
+            } // end if-then-else
+
+        } // end for
+
+        // Draw the bumpers, rounding up doubles to ints,
+        // where we can, for screen coordinates. We could
+        // do that in the Circle class and just return
+        // ints for code readability.
+        for ( Circle jaw : jaws )
+        {
+            dbg.drawOval( ( int )( jaw.getCenter().x()-jaw.getRadius() ),
+                ( int )(jaw.getCenter().y()-jaw.getRadius() ),
+                ( int )jaw.getRadius()*2, ( int )jaw.getRadius()*2 );
+            
+        }  // end for
+
+        // Draw the pockets.
+        for ( Circle pocket : pockets )
+        {
+            dbg.drawOval(
+                ( int )( pocket.getCenter().x()-pocket.getRadius() ),
+                ( int )( pocket.getCenter().y()-pocket.getRadius() ),
+                ( int ) pocket.getRadius()*2, ( int )pocket.getRadius()*2 ); // shift ovals
+
+        } // end for
+
+    }  // end method drawGeometry
+
+
+    /**
+     * Draw the latest completed aim guide (if any): the cue
+     * ball's path as a polyline, and a "ghost" ball where it
+     * first touches another ball.
+     * @param dbg the buffer on to which we splash pixels
+     */
+    private void drawAimGuide( Graphics dbg )
+    {
+        TrajectoryPredictor.Prediction guide = table.getAimGuide();
+
+        if ( guide == null )
+        {
+            return;
+
+        } // end if-then
+
+        int ballRadius = table.getBallRadius();
+
+        dbg.setColor( Color.lightGray );
+
+        for ( int i = 1; i < guide.getPointCount(); i++ )
+        {
+            dbg.drawLine( ( int )guide.getX( i - 1 ), ( int )guide.getY( i - 1 ),
+                ( int )guide.getX( i ), ( int )guide.getY( i ) );
+
+        } // end for
+
+        if ( guide.getContact() >= 0 )
+        {
+            int last = guide.getPointCount() - 1;
+
+            dbg.drawOval( ( int )( guide.getX( last ) - ballRadius ),
+                ( int )( guide.getY( last ) - ballRadius ),
+                2 * ballRadius, 2 * ballRadius );
+
+        } // end if-then
+
+    } // end method drawAimGuide
+
+
+    /**
+     * @return the graphics configuration behind a buffer, or
+     * null if it is not a Java2D buffer
+     */
+    private static GraphicsConfiguration configurationOf( Graphics dbg )
+    {
+        if ( dbg instanceof Graphics2D )
+            return ( ( Graphics2D )dbg ).getDeviceConfiguration();
+
+        return null;
+
+    } // end method configurationOf
+
+} // end class TableRenderer
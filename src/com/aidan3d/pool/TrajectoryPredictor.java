@@ -0,0 +1,462 @@
+package com.aidan3d.pool;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import math.geom2d.Vector2D;
+
+
+/**
+ * A <b>TrajectoryPredictor</b> works out the path the cue ball
+ * would take for a given cue velocity: its bounces off the
+ * cushion rails and its first contact with another ball.
+ * <p>
+ * The prediction is a truncated simulation run on a background
+ * (daemon) thread, so the game loop never waits for it. The
+ * game loop hands over an aim and a snapshot of the balls'
+ * centers with <b>aim()</b>, then simply draws whatever
+ * <b>getLatest()</b> returns. A new prediction is only started
+ * when the aim has moved past a threshold, or the balls have
+ * moved since the last one.
+ */
+class TrajectoryPredictor
+{
+    private static final int MAX_BOUNCES = 3;       // Cushion bounces
+                                                    // before we stop
+                                                    // predicting
+
+    private static final double MAX_FRAMES = 600.0; // Ten seconds of
+                                                    // travel at 60 FPS
+
+    private final double[] wallStartX;              // The cushion rails,
+    private final double[] wallStartY;              // flattened into
+    private final double[] wallEndX;                // primitive arrays
+    private final double[] wallEndY;                // once (they never
+    private final double[] wallNormalX;             // move)
+    private final double[] wallNormalY;
+
+    private final double angleThreshold;            // Radians the aim must
+                                                    // turn through before
+                                                    // we predict again
+
+    private final double speedThreshold;            // Ditto, in px/frame
+
+    private final ExecutorService worker;           // The background thread
+
+    private final AtomicLong generation;            // Bumped for each new
+                                                    // aim; stale jobs give
+                                                    // up when it moves on
+
+    private final AtomicReference<Prediction> latest; // The last completed
+                                                    // prediction (or null)
+
+    private double lastAngle;                       // The aim (and table
+    private double lastSpeed;                       // state) the running
+    private long lastVersion;                       // or latest prediction
+                                                    // was made for
+
+
+    /**
+     * The three-argument constructor.
+     * @param walls the cushion rails the cue ball bounces off
+     * @param angleThreshold how far (in radians) the aim must
+     * turn before a new prediction is started
+     * @param speedThreshold how far (in px per frame) the cue
+     * speed must change before a new prediction is started
+     */
+    TrajectoryPredictor( List<Line> walls, double angleThreshold, double speedThreshold )
+    {
+        int count = walls.size();
+
+        wallStartX = new double[ count ];
+        wallStartY = new double[ count ];
+        wallEndX = new double[ count ];
+        wallEndY = new double[ count ];
+        wallNormalX = new double[ count ];
+        wallNormalY = new double[ count ];
+
+        for ( int i = 0; i < count; i++ )
+        {
+            Line wall = walls.get( i );
+
+            wallStartX[ i ] = wall.getStart().x();
+            wallStartY[ i ] = wall.getStart().y();
+            wallEndX[ i ] = wall.getEnd().x();
+            wallEndY[ i ] = wall.getEnd().y();
+            wallNormalX[ i ] = wall.getNormalDirection().x();
+            wallNormalY[ i ] = wall.getNormalDirection().y();
+
+        } // end for
+
+        this.angleThreshold = angleThreshold;
+        this.speedThreshold = speedThreshold;
+
+        generation = new AtomicLong();
+        latest = new AtomicReference<>();
+        lastVersion = -1L;
+        lastSpeed = -1.0;
+
+        worker = Executors.newSingleThreadExecutor( new ThreadFactory()
+        {
+            @Override
+            public Thread newThread( Runnable r )
+            {
+                Thread t = new Thread( r, "pool-trajectory-predictor" );
+                t.setDaemon( true );
+                return t;
+
+            } // end method newThread
+        } );
+
+    } // end three-argument constructor
+
+
+    /**
+     * Ask for a prediction. Returns at once; if the aim is close
+     * enough to the last one (and the balls have not moved), the
+     * cached prediction stands and nothing is started.
+     * @param cueVelocity the velocity the cue ball would be given
+     * @param version a counter the caller bumps whenever any ball
+     * moves
+     * @param x the x-ordinates of the balls' centers (cue ball first)
+     * @param y the y-ordinates of the balls' centers
+     * @param r the balls' radii
+     * @param count how many entries of x, y and r are in use
+     */
+    void aim( Vector2D cueVelocity, long version, double[] x, double[] y, double[] r, int count )
+    {
+        double angle = cueVelocity.angle();
+        double speed = cueVelocity.norm();
+
+        // Wrap the difference into (-PI, PI] before comparing.
+        double turn = Math.abs( Math.IEEEremainder( angle - lastAngle, 2 * Math.PI ) );
+
+        if ( version == lastVersion && turn < angleThreshold
+            && Math.abs( speed - lastSpeed ) < speedThreshold )
+        {
+            return;
+
+        } // end if-then
+
+        lastAngle = angle;
+        lastSpeed = speed;
+        lastVersion = version;
+
+        // The caller keeps using its arrays, so take our own copy.
+        final double[] xs = Arrays.copyOf( x, count );
+        final double[] ys = Arrays.copyOf( y, count );
+        final double[] rs = Arrays.copyOf( r, count );
+        final double vx = cueVelocity.x();
+        final double vy = cueVelocity.y();
+        final long job = generation.incrementAndGet();
+
+        try
+        {
+            worker.execute( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    Prediction p = predict( job, vx, vy, xs, ys, rs );
+
+                    // Only publish if nobody has aimed (or
+                    // cleared) since. Publish first and check
+                    // after: a clear() that comes in between
+                    // would otherwise be overwritten. If the job
+                    // went stale meanwhile, take this prediction
+                    // back down (unless something newer is
+                    // already up).
+                    if ( p != null && generation.get() == job )
+                    {
+                        latest.set( p );
+
+                        if ( generation.get() != job )
+                            latest.compareAndSet( p, null );
+
+                    } // end if-then
+
+                } // end method run
+            } );
+        }
+        catch ( RejectedExecutionException ex )
+        {
+            // Shut down: the table is finished with, so no
+            // guide is wanted.
+
+        } // end try-catch
+
+    } // end method aim
+
+
+    /**
+     * Throw away the current prediction (e.g., once the shot
+     * has been played).
+     */
+    void clear()
+    {
+        generation.incrementAndGet();
+        lastVersion = -1L;
+        latest.set( null );
+
+    } // end method clear
+
+
+    /**
+     * @return the most recently completed prediction, or null
+     */
+    Prediction getLatest()
+    {
+        return latest.get();
+
+    } // end method getLatest
+
+
+    /**
+     * Stop the background thread (any aim after this is
+     * ignored).
+     */
+    void shutdown()
+    {
+        worker.shutdownNow();
+
+    } // end method shutdown
+
+
+    /**
+     * Trace the cue ball (ball 0) along straight "legs" from
+     * cushion to cushion until it touches another ball, runs
+     * out of bounces, or runs out of travel.
+     * @return the prediction, or null if the job went stale
+     */
+    private Prediction predict( long job, double vx, double vy,
+        double[] x, double[] y, double[] r )
+    {
+        double speed = Math.hypot( vx, vy );
+
+        if ( speed == 0.0 )
+        {
+            return new Prediction( new double[] { x[ 0 ] }, new double[] { y[ 0 ] }, 1, -1 );
+
+        } // end if-then
+
+        double[] pathX = new double[ MAX_BOUNCES + 2 ];
+        double[] pathY = new double[ MAX_BOUNCES + 2 ];
+        int points = 0;
+
+        double px = x[ 0 ];
+        double py = y[ 0 ];
+        double dx = vx / speed;                     // A unit direction;
+        double dy = vy / speed;                     // "t" below is in px
+        double travel = speed * MAX_FRAMES;
+        int contact = -1;
+
+        pathX[ points ] = px;
+        pathY[ points++ ] = py;
+
+        for ( int bounce = 0; bounce <= MAX_BOUNCES && travel > 0.0; bounce++ )
+        {
+            // Somebody has aimed again: this answer is not wanted.
+            if ( generation.get() != job )
+            {
+                return null;
+
+            } // end if-then
+
+            double best = travel;
+            int hitBall = -1;
+            int hitWall = -1;
+
+            // First contact with another ball: a ray against a
+            // circle of the two radii summed.
+            for ( int i = 1; i < x.length; i++ )
+            {
+                double t = rayCircle( px, py, dx, dy, x[ i ], y[ i ], r[ 0 ] + r[ i ] );
+
+                if ( t < best )
+                {
+                    best = t;
+                    hitBall = i;
+
+                } // end if-then
+
+            } // end for
+
+            // First contact with a cushion rail: a ray against
+            // the rail pushed out by the cue ball's radius.
+            for ( int w = 0; w < wallStartX.length; w++ )
+            {
+                double t = rayWall( px, py, dx, dy, w, r[ 0 ] );
+
+                if ( t < best )
+                {
+                    best = t;
+                    hitBall = -1;
+                    hitWall = w;
+
+                } // end if-then
+
+            } // end for
+
+            px += dx * best;
+            py += dy * best;
+            travel -= best;
+            pathX[ points ] = px;
+            pathY[ points++ ] = py;
+
+            if ( hitBall >= 0 )
+            {
+                contact = hitBall;
+                break;
+
+            } // end if-then
+
+            if ( hitWall < 0 )
+            {
+                break;                              // Out of travel
+
+            } // end if-then
+
+            // Reflect the direction about the rail's normal.
+            double nx = wallNormalX[ hitWall ];
+            double ny = wallNormalY[ hitWall ];
+            double dot = dx * nx + dy * ny;
+            dx -= 2 * dot * nx;
+            dy -= 2 * dot * ny;
+
+        } // end for
+
+        return new Prediction( pathX, pathY, points, contact );
+
+    } // end method predict
+
+
+    /**
+     * @return the distance along the ray at which it first meets
+     * the circle, or positive infinity if it never does
+     */
+    private static double rayCircle( double px, double py, double dx, double dy,
+        double cx, double cy, double radius )
+    {
+        double ox = px - cx;
+        double oy = py - cy;
+        double b = ox * dx + oy * dy;
+        double c = ox * ox + oy * oy - radius * radius;
+        double discriminant = b * b - c;
+
+        if ( b > 0.0 || discriminant < 0.0 )
+        {
+            return Double.POSITIVE_INFINITY;        // Heading away, or
+                                                    // a clean miss
+        } // end if-then
+
+        return Math.max( 0.0, -b - Math.sqrt( discriminant ) );
+
+    } // end method rayCircle
+
+
+    /**
+     * @return the distance along the ray at which a ball of the
+     * given radius would touch rail "w", or positive infinity
+     */
+    private double rayWall( double px, double py, double dx, double dy, int w, double radius )
+    {
+        double nx = wallNormalX[ w ];
+        double ny = wallNormalY[ w ];
+
+        // Signed distance from the rail's line, and how fast
+        // we close on it.
+        double distance = ( px - wallStartX[ w ] ) * nx + ( py - wallStartY[ w ] ) * ny;
+        double closing = dx * nx + dy * ny;
+
+        // Face the normal towards the ball.
+        if ( distance < 0.0 )
+        {
+            distance = -distance;
+            closing = -closing;
+
+        } // end if-then
+
+        if ( closing >= 0.0 )
+        {
+            return Double.POSITIVE_INFINITY;        // Moving away
+
+        } // end if-then
+
+        double t = Math.max( 0.0, ( distance - radius ) / -closing );
+
+        // Does the touching point fall within the rail's ends?
+        double hx = px + dx * t - wallStartX[ w ];
+        double hy = py + dy * t - wallStartY[ w ];
+        double ex = wallEndX[ w ] - wallStartX[ w ];
+        double ey = wallEndY[ w ] - wallStartY[ w ];
+        double along = ( hx * ex + hy * ey ) / ( ex * ex + ey * ey );
+
+        if ( along < 0.0 || along > 1.0 )
+        {
+            return Double.POSITIVE_INFINITY;
+
+        } // end if-then
+
+        return t;
+
+    } // end method rayWall
+
+
+    /**
+     * A finished, immutable prediction: a polyline traced by the
+     * cue ball's center, and the ball it first touches.
+     */
+    static final class Prediction
+    {
+        private final double[] x;
+        private final double[] y;
+        private final int points;
+        private final int contact;                  // Index into the
+                                                    // snapshot, or -1
+
+
+        Prediction( double[] x, double[] y, int points, int contact )
+        {
+            this.x = x;
+            this.y = y;
+            this.points = points;
+            this.contact = contact;
+
+        } // end four-argument constructor
+
+
+        int getPointCount()
+        {
+            return points;
+        }
+
+
+        double getX( int i )
+        {
+            return x[ i ];
+        }
+
+
+        double getY( int i )
+        {
+            return y[ i ];
+        }
+
+
+        /**
+         * @return the index of the first ball touched, or -1 if
+         * the cue ball touches nothing
+         */
+        int getContact()
+        {
+            return contact;
+        }
+
+    } // end class Prediction
+
+} // end class TrajectoryPredictor
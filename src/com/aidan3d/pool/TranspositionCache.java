@@ -0,0 +1,91 @@
+package com.aidan3d.pool;
+
+
+/**
+ * A <b>TranspositionCache</b> remembers the scores of shots
+ * already played out, keyed by a 64-bit hash of the table
+ * state and the shot (see <b>ZobristHash</b>), so an
+ * evaluation that has been done before becomes a lookup.
+ * <p>
+ * The cache is a fixed-size table of 2<sup>bits</sup> slots:
+ * each key has exactly one slot, and a new entry simply
+ * replaces whatever was there. It never grows, and never
+ * allocates after construction.
+ * <p>
+ * Any number of threads may use one cache without locking.
+ * Each slot stores the value and the key XORed with the value;
+ * if two threads write a slot at once and a reader sees half
+ * of each write, the check fails and it is treated as a miss.
+ */
+final class TranspositionCache
+{
+    private final long[] checks;                        // Key ^ value bits
+    private final long[] values;                        // Value bits
+    private final int mask;
+
+
+    /**
+     * The one-argument constructor.
+     * @param bits the cache holds 2<sup>bits</sup> entries (16
+     * bytes each)
+     */
+    TranspositionCache( int bits )
+    {
+        checks = new long[ 1 << bits ];
+        values = new long[ 1 << bits ];
+        mask = ( 1 << bits ) - 1;
+
+    } // end one-argument constructor
+
+
+    /**
+     * @return the score stored for this key, or NaN if there
+     * is none
+     */
+    double get( long key )
+    {
+        key = nonZero( key );
+
+        int slot = slot( key );
+        long value = values[ slot ];
+
+        if ( ( checks[ slot ] ^ value ) != key )
+            return Double.NaN;
+
+        return Double.longBitsToDouble( value );
+
+    } // end method get
+
+
+    /**
+     * Store a score, replacing whatever shared its slot.
+     */
+    void put( long key, double score )
+    {
+        key = nonZero( key );
+
+        int slot = slot( key );
+        long value = Double.doubleToRawLongBits( score );
+
+        values[ slot ] = value;
+        checks[ slot ] = key ^ value;
+
+    } // end method put
+
+
+    /**
+     * An empty slot reads as key 0, value 0.0; keep real keys
+     * clear of it.
+     */
+    private static long nonZero( long key )
+    {
+        return key == 0L ? 1L : key;
+    }
+
+
+    private int slot( long key )
+    {
+        return ( int )( key ^ ( key >>> 32 ) ) & mask;
+    }
+
+} // end class TranspositionCache
@@ -0,0 +1,236 @@
+package com.aidan3d.pool;
+
+import math.geom2d.Vector2D;
+
+
+/**
+ * A <b>Vec2</b> is a mutable 2d Euclidian vector.
+ * <p>
+ * javaGeom's <b>Vector2D</b> is immutable, so every
+ * <i>plus()</i>, <i>minus()</i> or "stop the ball" costs a new
+ * object; across sixteen balls, every tick, that is a great
+ * deal of garbage. A <b>Vec2</b> is updated in place instead.
+ * The simulation (<b>Circle</b>, <b>Ball</b>, <b>Table</b>)
+ * works in <b>Vec2</b>s, and converts to and from
+ * <b>Vector2D</b> only at its public edges.
+ * <p>
+ * Methods that change the vector return it, so calls can be
+ * chained: <i>v.set( a ).sub( b ).normalize()</i>. For
+ * temporaries inside a calculation, borrow one of the calling
+ * thread's <b>scratch()</b> vectors rather than making a new
+ * one.
+ */
+public final class Vec2
+{
+    private static final int SCRATCH_SLOTS = 8;
+
+    private static final ThreadLocal<Vec2[]> SCRATCH = new ThreadLocal<Vec2[]>()
+    {
+        @Override
+        protected Vec2[] initialValue()
+        {
+            Vec2[] slots = new Vec2[ SCRATCH_SLOTS ];
+
+            for ( int i = 0; i < SCRATCH_SLOTS; i++ )
+                slots[ i ] = new Vec2();
+
+            return slots;
+
+        } // end method initialValue
+    };
+
+    public double x;
+    public double y;
+
+
+    /**
+     * The no-argument constructor: the zero vector.
+     */
+    public Vec2()
+    {
+    }
+
+
+    /**
+     * The two-argument constructor.
+     * @param x the x-component
+     * @param y the y-component
+     */
+    public Vec2( double x, double y )
+    {
+        this.x = x;
+        this.y = y;
+
+    } // end two-argument constructor
+
+
+    /**
+     * Copy a javaGeom vector (for use at the API boundary).
+     * @param v the vector to copy
+     */
+    public Vec2( Vector2D v )
+    {
+        this( v.x(), v.y() );
+
+    } // end one-argument constructor
+
+
+    /**
+     * Borrow one of the calling thread's scratch vectors. Its
+     * contents are whatever the last borrower left, and it is
+     * only yours until somebody on the same thread borrows the
+     * same slot again: use it inside one calculation, never
+     * keep it.
+     * @param slot which scratch vector (0 to 7)
+     * @return the scratch vector
+     */
+    public static Vec2 scratch( int slot )
+    {
+        return SCRATCH.get()[ slot ];
+
+    } // end method scratch
+
+
+    public Vec2 set( double x, double y )
+    {
+        this.x = x;
+        this.y = y;
+        return this;
+    }
+
+
+    public Vec2 set( Vec2 v )
+    {
+        x = v.x;
+        y = v.y;
+        return this;
+    }
+
+
+    public Vec2 set( Vector2D v )
+    {
+        x = v.x();
+        y = v.y();
+        return this;
+    }
+
+
+    public Vec2 add( Vec2 v )
+    {
+        x += v.x;
+        y += v.y;
+        return this;
+    }
+
+
+    /**
+     * this += v * s
+     */
+    public Vec2 addScaled( Vec2 v, double s )
+    {
+        x += v.x * s;
+        y += v.y * s;
+        return this;
+    }
+
+
+    public Vec2 sub( Vec2 v )
+    {
+        x -= v.x;
+        y -= v.y;
+        return this;
+    }
+
+
+    public Vec2 scale( double s )
+    {
+        x *= s;
+        y *= s;
+        return this;
+    }
+
+
+    public Vec2 zero()
+    {
+        x = 0.0;
+        y = 0.0;
+        return this;
+    }
+
+
+    /**
+     * Scale to unit length (the zero vector is left alone).
+     */
+    public Vec2 normalize()
+    {
+        double length = length();
+
+        if ( length > 0.0 )
+        {
+            x /= length;
+            y /= length;
+
+        } // end if-then
+
+        return this;
+
+    } // end method normalize
+
+
+    public double dot( Vec2 v )
+    {
+        return x * v.x + y * v.y;
+    }
+
+
+    public double length()
+    {
+        return Math.sqrt( x * x + y * y );
+    }
+
+
+    public double lengthSq()
+    {
+        return x * x + y * y;
+    }
+
+
+    /**
+     * @return the squared distance between this point and v
+     * (cheaper than the distance, and fine for comparisons)
+     */
+    public double distanceSq( Vec2 v )
+    {
+        double dx = x - v.x;
+        double dy = y - v.y;
+
+        return dx * dx + dy * dy;
+
+    } // end method distanceSq
+
+
+    public boolean isZero()
+    {
+        return x == 0.0 && y == 0.0;
+    }
+
+
+    /**
+     * @return an immutable javaGeom copy (for use at the API
+     * boundary)
+     */
+    public Vector2D toVector2D()
+    {
+        return new Vector2D( x, y );
+
+    } // end method toVector2D
+
+
+    @Override
+    public String toString()
+    {
+        return "(" + x + ", " + y + ")";
+
+    } // end method toString
+
+} // end class Vec2
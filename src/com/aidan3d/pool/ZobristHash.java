@@ -0,0 +1,166 @@
+package com.aidan3d.pool;
+
+import java.util.List;
+
+
+/**
+ * A <b>ZobristHash</b> is a 64-bit fingerprint of where the
+ * balls on a table are: each ball's position, snapped to a grid
+ * of <i>cell</i>-sized squares, and whether it has been sunk.
+ * <p>
+ * Every (ball, grid square) pair, and every (ball, "sunk")
+ * pair, has its own pseudo-random 64-bit key, and the hash is
+ * the exclusive-or of the keys that currently apply. When a
+ * ball crosses into a new square, its old key is XORed out and
+ * the new one XORed in: an update costs the same however many
+ * balls there are. Two tables with the same balls in the same
+ * squares have the same hash, whatever path led there.
+ * <p>
+ * The keys come from a mixing function (splitmix64) rather
+ * than a stored table, since there are far too many squares to
+ * store a key for each.
+ */
+final class ZobristHash
+{
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final int SUNK = Integer.MIN_VALUE;  // "Square" of a
+                                                        // sunk ball
+
+    private final double cell;                          // Grid size, pixels
+    private long hash;
+    private int[] cellX;                                // Each ball's
+    private int[] cellY;                                // current square
+
+
+    /**
+     * The one-argument constructor.
+     * @param cell the grid size, in pixels: balls closer than
+     * this may (but need not) hash alike
+     */
+    ZobristHash( double cell )
+    {
+        this.cell = cell;
+
+        cellX = new int[ 0 ];
+        cellY = new int[ 0 ];
+
+    } // end one-argument constructor
+
+
+    /**
+     * The copy constructor.
+     */
+    ZobristHash( ZobristHash original )
+    {
+        cell = original.cell;
+        hash = original.hash;
+        cellX = original.cellX.clone();
+        cellY = original.cellY.clone();
+
+    } // end copy constructor
+
+
+    /**
+     * Hash a table from scratch.
+     * @param balls the table's balls
+     */
+    void reset( List<Ball> balls )
+    {
+        int n = balls.size();
+
+        cellX = new int[ n ];
+        cellY = new int[ n ];
+        hash = 0L;
+
+        for ( int i = 0; i < n; i++ )
+        {
+            Ball b = balls.get( i );
+
+            if ( b.isPocketed() )
+            {
+                cellX[ i ] = SUNK;
+                cellY[ i ] = SUNK;
+            }
+            else
+            {
+                cellX[ i ] = snap( b.getCenterVec().x );
+                cellY[ i ] = snap( b.getCenterVec().y );
+
+            } // end if-then-else
+
+            hash ^= key( i, cellX[ i ], cellY[ i ] );
+
+        } // end for
+
+    } // end method reset
+
+
+    /**
+     * Ball i has moved.
+     */
+    void moved( int i, Vec2 center )
+    {
+        int x = snap( center.x );
+        int y = snap( center.y );
+
+        if ( x != cellX[ i ] || y != cellY[ i ] )
+        {
+            hash ^= key( i, cellX[ i ], cellY[ i ] ) ^ key( i, x, y );
+            cellX[ i ] = x;
+            cellY[ i ] = y;
+
+        } // end if-then
+
+    } // end method moved
+
+
+    /**
+     * Ball i has dropped into a pocket.
+     */
+    void pocketed( int i )
+    {
+        hash ^= key( i, cellX[ i ], cellY[ i ] ) ^ key( i, SUNK, SUNK );
+        cellX[ i ] = SUNK;
+        cellY[ i ] = SUNK;
+
+    } // end method pocketed
+
+
+    long get()
+    {
+        return hash;
+    }
+
+
+    private int snap( double ordinate )
+    {
+        return ( int )Math.floor( ordinate / cell );
+
+    } // end method snap
+
+
+    /**
+     * @return the key for ball i in square (x, y)
+     */
+    private static long key( int i, int x, int y )
+    {
+        long z = SEED * ( i + 1 ) + ( ( long )x << 32 ^ ( y & 0xFFFFFFFFL ) );
+
+        return mix( z );
+
+    } // end method key
+
+
+    /**
+     * The splitmix64 finalizer: spreads every input bit over
+     * the whole output.
+     */
+    static long mix( long z )
+    {
+        z = ( z ^ ( z >>> 30 ) ) * 0xBF58476D1CE4E5B9L;
+        z = ( z ^ ( z >>> 27 ) ) * 0x94D049BB133111EBL;
+        return z ^ ( z >>> 31 );
+
+    } // end method mix
+
+} // end class ZobristHash